@@ -1,16 +1,27 @@
 package com.reactivespring.controller;
 
+import com.reactivespring.domain.EventType;
 import com.reactivespring.domain.MovieInfo;
+import com.reactivespring.domain.MovieInfoBatchItem;
+import com.reactivespring.domain.MovieInfoBulkResult;
+import com.reactivespring.domain.MovieInfoEvent;
+import com.reactivespring.exception.MovieInfoDataException;
+import com.reactivespring.exception.MovieInfoStreamLaggedException;
+import com.reactivespring.service.MovieInfoEventLog;
 import com.reactivespring.service.MoviesInfoService;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
+import org.springframework.http.codec.ServerSentEvent;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.util.UriComponentsBuilder;
 import reactor.core.publisher.Flux;
 import reactor.core.publisher.Mono;
-import reactor.core.publisher.Sinks;
 
 import javax.validation.Valid;
+import java.util.List;
 
 @RestController
 @RequestMapping("/v1")
@@ -18,18 +29,65 @@ public class MoviesInfoController {
 
     private MoviesInfoService moviesInfoService;
 
-    Sinks.Many<MovieInfo> moviesInfoSink = Sinks.many().replay().all();
+    private MovieInfoEventLog movieInfoEventLog;
 
-    public MoviesInfoController(MoviesInfoService moviesInfoService) {
+    @Value("${movieInfoBatch.maxIds}")
+    private int batchMaxIds;
+
+    @Value("${movieInfoPaging.maxLimit}")
+    private int maxLimit;
+
+    @Value("${movieInfoPaging.maxUnpagedResults}")
+    private int maxUnpagedResults;
+
+    @Value("${movieInfoStream.changeStream.enabled}")
+    private boolean changeStreamEnabled;
+
+    public MoviesInfoController(MoviesInfoService moviesInfoService, MovieInfoEventLog movieInfoEventLog) {
         this.moviesInfoService = moviesInfoService;
+        this.movieInfoEventLog = movieInfoEventLog;
     }
 
     @GetMapping("/movieinfos")
-    public Flux<MovieInfo> findAllMovieInfos(@RequestParam(value = "year", required = false) Integer year) {
-        if (year != null) {
-            return moviesInfoService.getAllMovieInfosByYear(year);
+    public Mono<ResponseEntity<List<MovieInfo>>> findAllMovieInfos(@RequestParam(value = "limit", required = false) Integer limit,
+                                                                   @RequestParam(value = "next", required = false) String next) {
+        if (limit == null && next == null) {
+            return findAllMovieInfosUnpaged();
         }
-        return moviesInfoService.getAllMovieInfos().log();
+        var pageSize = limit != null ? limit : maxLimit;
+        if (pageSize < 1 || pageSize > maxLimit) {
+            return Mono.error(new MovieInfoDataException("limit must be between 1 and " + maxLimit + ", received " + pageSize));
+        }
+        return moviesInfoService.getMovieInfosPage(next, pageSize)
+                .map(page -> {
+                    var response = ResponseEntity.ok();
+                    if (page.getNext() != null) {
+                        var nextUri = UriComponentsBuilder.fromPath("/v1/movieinfos")
+                                .queryParam("limit", pageSize)
+                                .queryParam("next", page.getNext())
+                                .build();
+                        response.header(HttpHeaders.LINK, "<" + nextUri + ">; rel=\"next\"");
+                    }
+                    return response.body(page.getMovieInfos());
+                })
+                .log();
+    }
+
+    @GetMapping(value = "/movieinfos", params = "year")
+    public Flux<MovieInfo> findMovieInfosByYear(@RequestParam("year") Integer year) {
+        return moviesInfoService.getAllMovieInfosByYear(year);
+    }
+
+    // reads one document past the threshold, so a large collection is refused without being streamed
+    private Mono<ResponseEntity<List<MovieInfo>>> findAllMovieInfosUnpaged() {
+        return moviesInfoService.getAllMovieInfos()
+                .take(maxUnpagedResults + 1)
+                .collectList()
+                .flatMap(movieInfos -> movieInfos.size() > maxUnpagedResults
+                        ? Mono.<ResponseEntity<List<MovieInfo>>>error(new MovieInfoDataException(
+                                "More than " + maxUnpagedResults + " movie infos, page through them with limit and next"))
+                        : Mono.just(ResponseEntity.ok(movieInfos)))
+                .log();
     }
 
     @GetMapping("/movieinfos/{id}")
@@ -40,9 +98,57 @@ public class MoviesInfoController {
                 .log();
     }
 
+    @PostMapping(value = "/movieinfos/batch", produces = MediaType.APPLICATION_NDJSON_VALUE)
+    public Flux<MovieInfoBatchItem> findMovieInfosByIds(@RequestBody List<String> ids) {
+        if (ids.size() > batchMaxIds) {
+            return Flux.error(new MovieInfoDataException(
+                    "At most " + batchMaxIds + " ids can be requested at once, received " + ids.size()));
+        }
+        return moviesInfoService.getMovieInfosByIds(ids).log();
+    }
+
+    /**
+     * A client resumes with the epoch and sequence of the last event it read, the sequence alone is only
+     * understood by the instance that numbered it as long as it has not restarted. With
+     * movieInfoStream.changeStream.enabled, a restarted instance logs again the changes since its last
+     * saved resume token: skip the events whose movieInfoId and version were already received.
+     */
     @GetMapping(value = "/movieinfos/stream", produces = MediaType.APPLICATION_NDJSON_VALUE)
-    public Flux<MovieInfo> getMoviesStream() {
-        return moviesInfoSink.asFlux().log();
+    public Flux<MovieInfoEvent> getMoviesStream(@RequestParam(value = "epoch", required = false) String epoch,
+                                                @RequestParam(value = "from", required = false) Long fromSequence) {
+        return movieInfoEventLog.events(epoch, fromSequence).log();
+    }
+
+    // event ids are epoch:sequence, a bare sequence is still accepted as Last-Event-ID
+    @GetMapping(value = "/movieinfos/events", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+    public Flux<ServerSentEvent<MovieInfoEvent>> getMoviesEvents(@RequestParam(value = "from", required = false) Long fromSequence,
+                                                            @RequestHeader(value = "Last-Event-ID", required = false) String lastEventId) {
+        Flux<MovieInfoEvent> events;
+        if (fromSequence != null || lastEventId == null) {
+            events = movieInfoEventLog.events(fromSequence);
+        } else {
+            var separator = lastEventId.lastIndexOf(':');
+            events = movieInfoEventLog.events(separator < 0 ? null : lastEventId.substring(0, separator),
+                    parseSequence(lastEventId.substring(separator + 1)) + 1);
+        }
+        return events
+                .map(event -> ServerSentEvent.builder(event)
+                        .id(event.getEpoch() + ":" + event.getSequence())
+                        .event(event.getType().name())
+                        .build())
+                .onErrorResume(MovieInfoStreamLaggedException.class, ex -> Mono.just(ServerSentEvent.<MovieInfoEvent>builder()
+                        .event("lagged")
+                        .comment(ex.getMessage())
+                        .build()))
+                .log();
+    }
+
+    private long parseSequence(String sequence) {
+        try {
+            return Long.parseLong(sequence);
+        } catch (NumberFormatException ex) {
+            throw new MovieInfoDataException("Last-Event-ID must be epoch:sequence, received " + sequence);
+        }
     }
 
     @PostMapping("/movieinfos")
@@ -50,22 +156,49 @@ public class MoviesInfoController {
     public Mono<MovieInfo> addMovieInfo(@RequestBody @Valid MovieInfo movieInfo) {
 //        return moviesInfoService.addMovieInfo(movieInfo).log();
         return moviesInfoService.addMovieInfo(movieInfo)
-                .doOnNext(savedMovieInfo -> moviesInfoSink.tryEmitNext(savedMovieInfo));
+                .doOnNext(savedMovieInfo -> publish(EventType.CREATED, savedMovieInfo.getMovieInfoId(), savedMovieInfo));
+    }
+
+    @PostMapping(value = "/movieinfos/bulk", consumes = MediaType.APPLICATION_NDJSON_VALUE,
+            produces = MediaType.APPLICATION_NDJSON_VALUE)
+    public Flux<MovieInfoBulkResult> addMovieInfos(@RequestBody Flux<String> lines) {
+        return moviesInfoService.addMovieInfos(lines)
+                .doOnNext(result -> {
+                    if (result.isAccepted()) {
+                        publish(result.getType(), result.getMovieInfoId(), result.getMovieInfo());
+                    }
+                });
     }
 
     @PutMapping("/movieinfos/{id}")
     @ResponseStatus(HttpStatus.CREATED)
     public Mono<ResponseEntity<MovieInfo>> updateMovieInfo(@PathVariable String id, @RequestBody MovieInfo updatedMovieInfo) {
         return moviesInfoService.updateMovieInfo(updatedMovieInfo, id)
+                .doOnNext(savedMovieInfo -> publish(EventType.UPDATED, id, savedMovieInfo))
                 .map(ResponseEntity.ok()::body)
                 .switchIfEmpty(Mono.just(ResponseEntity.notFound().build()))
                 .log();
     }
 
     @DeleteMapping("/movieinfos/{id}")
-    @ResponseStatus(HttpStatus.NO_CONTENT)
-    public Mono<Void> deleteMovieInfo(@PathVariable String id) {
-        return moviesInfoService.deleteMovieInfo(id).log();
+    public Mono<ResponseEntity<Void>> deleteMovieInfo(@PathVariable String id) {
+        return moviesInfoService.deleteMovieInfo(id)
+                // the event keeps the version of the removed document, not its content
+                .doOnNext(deletedMovieInfo -> publish(EventType.DELETED, id, deletedMovieInfo.getVersion(), null))
+                .map(deletedMovieInfo -> ResponseEntity.noContent().<Void>build())
+                .defaultIfEmpty(ResponseEntity.notFound().build())
+                .log();
+    }
+
+    private void publish(EventType type, String movieInfoId, MovieInfo movieInfo) {
+        publish(type, movieInfoId, movieInfo.getVersion(), movieInfo);
+    }
+
+    private void publish(EventType type, String movieInfoId, Long version, MovieInfo movieInfo) {
+        // with the change stream every write reaches the event log from MongoDB, on every instance
+        if (!changeStreamEnabled) {
+            movieInfoEventLog.append(type, movieInfoId, version, movieInfo);
+        }
     }
 
 }
@@ -0,0 +1,7 @@
+package com.reactivespring.domain;
+
+public enum EventType {
+    CREATED,
+    UPDATED,
+    DELETED
+}
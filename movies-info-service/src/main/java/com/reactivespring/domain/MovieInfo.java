@@ -4,6 +4,8 @@ import lombok.AllArgsConstructor;
 import lombok.Data;
 import lombok.NoArgsConstructor;
 import org.springframework.data.annotation.Id;
+import org.springframework.data.annotation.Version;
+import org.springframework.data.mongodb.core.index.Indexed;
 import org.springframework.data.mongodb.core.mapping.Document;
 
 import javax.validation.constraints.NotBlank;
@@ -22,14 +24,26 @@ public class MovieInfo {
     private String movieInfoId;
 
     @NotBlank(message = "movieInfo.name must be present")
+    @Indexed
     private String name;
 
     @NotNull
     @Positive(message = "movieInfo.year must be a positive value")
+    @Indexed
     private Integer year;
 
+    // multikey index, one entry per cast member
+    @Indexed
     private List<@NotBlank(message = "movieInfo.cast must be present") String> cast;
 
     private LocalDate release_date;
 
+    // incremented on every write, carried by the stream events
+    @Version
+    private Long version;
+
+    public MovieInfo(String movieInfoId, String name, Integer year, List<String> cast, LocalDate release_date) {
+        this(movieInfoId, name, year, cast, release_date, null);
+    }
+
 }
@@ -0,0 +1,19 @@
+package com.reactivespring.domain;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class MovieInfoBatchItem {
+
+    private String movieInfoId;
+
+    private boolean found;
+
+    // null when found is false
+    private MovieInfo movieInfo;
+
+}
@@ -0,0 +1,34 @@
+package com.reactivespring.domain;
+
+import com.fasterxml.jackson.annotation.JsonIgnore;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * Outcome of one line of a POST /v1/movieinfos/bulk upload.
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class MovieInfoBulkResult {
+
+    // 1-based line of the record in the uploaded body
+    private long line;
+
+    // null when the line could not be parsed or carried no id and was rejected
+    private String movieInfoId;
+
+    private boolean accepted;
+
+    // CREATED or UPDATED, null when rejected
+    private EventType type;
+
+    // parse, validation or write error, null when accepted
+    private String error;
+
+    // the written document, kept for the event log
+    @JsonIgnore
+    private MovieInfo movieInfo;
+
+}
@@ -0,0 +1,37 @@
+package com.reactivespring.domain;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.time.Instant;
+
+/**
+ * Envelope of a movie info write, as sent by the stream endpoints.
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class MovieInfoEvent {
+
+    // identifies the event log that numbered the event. Logs live in memory, each instance and each restart
+    // has its own and counts from 1 again, so sequences only compare within the same epoch
+    private String epoch;
+
+    // position in the movie info event log, starting at 1
+    private long sequence;
+
+    private EventType type;
+
+    private String movieInfoId;
+
+    // the version to send back on PUT /v1/movieinfos/{id}. Missing after a bulk upload replaced an existing
+    // movie info, the upsert only reports the ids it created, GET the movie info for its version
+    private Long version;
+
+    private Instant timestamp;
+
+    // null for DELETED events
+    private MovieInfo movieInfo;
+
+}
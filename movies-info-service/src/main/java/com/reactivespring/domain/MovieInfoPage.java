@@ -0,0 +1,22 @@
+package com.reactivespring.domain;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.List;
+
+/**
+ * One page of GET /v1/movieinfos?limit=, in {@code _id} order.
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class MovieInfoPage {
+
+    private List<MovieInfo> movieInfos;
+
+    // opaque token for the following page, null on the last page
+    private String next;
+
+}
@@ -0,0 +1,26 @@
+package com.reactivespring.domain;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import org.springframework.data.annotation.Id;
+import org.springframework.data.mongodb.core.mapping.Document;
+
+import java.time.Instant;
+
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+@Document
+public class StreamResumeToken {
+
+    // application, followed change stream and instance, each instance resumes from its own token
+    @Id
+    private String streamName;
+
+    // resume token of the last processed change, as extended JSON
+    private String token;
+
+    private Instant updatedAt;
+
+}
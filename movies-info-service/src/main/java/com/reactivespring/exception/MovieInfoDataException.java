@@ -0,0 +1,15 @@
+package com.reactivespring.exception;
+
+import lombok.Data;
+
+@Data
+public class MovieInfoDataException extends RuntimeException {
+
+    private String message;
+
+    public MovieInfoDataException(String message) {
+        super(message);
+        this.message = message;
+    }
+
+}
@@ -0,0 +1,17 @@
+package com.reactivespring.exception;
+
+import lombok.Data;
+
+@Data
+public class MovieInfoStreamLaggedException extends RuntimeException {
+
+    private String message;
+    private long oldestSequence;
+
+    public MovieInfoStreamLaggedException(String message, long oldestSequence) {
+        super(message);
+        this.message = message;
+        this.oldestSequence = oldestSequence;
+    }
+
+}
@@ -0,0 +1,15 @@
+package com.reactivespring.exception;
+
+import lombok.Data;
+
+@Data
+public class MovieInfoVersionConflictException extends RuntimeException {
+
+    private String message;
+
+    public MovieInfoVersionConflictException(String message) {
+        super(message);
+        this.message = message;
+    }
+
+}
@@ -1,7 +1,11 @@
 package com.reactivespring.exceptionhandler;
 
+import com.reactivespring.exception.MovieInfoDataException;
+import com.reactivespring.exception.MovieInfoStreamLaggedException;
+import com.reactivespring.exception.MovieInfoVersionConflictException;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.context.support.DefaultMessageSourceResolvable;
+import org.springframework.dao.DuplicateKeyException;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.ControllerAdvice;
@@ -24,4 +28,31 @@ public class GlobalErrorHandler {
         log.error("Error message is: {} ", error);
         return ResponseEntity.status(HttpStatus.BAD_REQUEST).body(error);
     }
+
+    @ExceptionHandler(MovieInfoDataException.class)
+    public ResponseEntity<String> handleDataException(MovieInfoDataException e) {
+        log.error("Exception caught in handleDataException: {} ", e.getMessage(), e);
+        return ResponseEntity.status(HttpStatus.BAD_REQUEST).body(e.getMessage());
+    }
+
+    @ExceptionHandler(MovieInfoStreamLaggedException.class)
+    public ResponseEntity<String> handleStreamLaggedException(MovieInfoStreamLaggedException e) {
+        log.error("Exception caught in handleStreamLaggedException: {} ", e.getMessage());
+        return ResponseEntity.status(HttpStatus.GONE).body(e.getMessage());
+    }
+
+    @ExceptionHandler(MovieInfoVersionConflictException.class)
+    public ResponseEntity<String> handleVersionConflictException(MovieInfoVersionConflictException e) {
+        log.error("Exception caught in handleVersionConflictException: {} ", e.getMessage());
+        return ResponseEntity.status(HttpStatus.CONFLICT).body(e.getMessage());
+    }
+
+    // POST with the id of an existing movie info: the versioned save inserts, it does not replace
+    @ExceptionHandler(DuplicateKeyException.class)
+    public ResponseEntity<String> handleDuplicateKeyException(DuplicateKeyException e) {
+        log.error("Exception caught in handleDuplicateKeyException: {} ", e.getMessage());
+        return ResponseEntity.status(HttpStatus.CONFLICT)
+                .body("MovieInfo already exists, update it with PUT /v1/movieinfos/{id}");
+    }
+
 }
@@ -0,0 +1,38 @@
+package com.reactivespring.repository;
+
+import com.mongodb.bulk.BulkWriteResult;
+import com.reactivespring.domain.MovieInfo;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.util.Collection;
+import java.util.List;
+
+public interface MovieInfoRepositoryCustom {
+
+    Flux<MovieInfo> findAllByIdIn(Collection<String> ids, int cursorBatchSize);
+
+    /**
+     * Movie infos in {@code _id} order, starting after {@code afterId} (from the first one when null).
+     */
+    Flux<MovieInfo> findAllAfterId(String afterId, int limit);
+
+    /**
+     * Overwrites the editable fields and bumps the version in one findAndModify, returning the new document.
+     * A non null {@code changes.version} must match the stored one, otherwise nothing is updated.
+     */
+    Mono<MovieInfo> findAndUpdate(String id, MovieInfo changes);
+
+    /**
+     * Removes the movie info in one findAndRemove, returning the deleted document or empty when there was none.
+     */
+    Mono<MovieInfo> findAndDelete(String id);
+
+    /**
+     * Writes the movie infos with one unordered bulkWrite. The ones without an id get a new one and are inserted
+     * with version 0, the others are upserted and their version is bumped. Failed writes surface as a
+     * {@link com.mongodb.MongoBulkWriteException} whose indexes refer to {@code movieInfos}.
+     */
+    Mono<BulkWriteResult> bulkWrite(List<MovieInfo> movieInfos);
+
+}
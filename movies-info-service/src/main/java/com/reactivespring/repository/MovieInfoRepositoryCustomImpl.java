@@ -0,0 +1,120 @@
+package com.reactivespring.repository;
+
+import com.mongodb.MongoBulkWriteException;
+import com.mongodb.bulk.BulkWriteResult;
+import com.mongodb.client.model.BulkWriteOptions;
+import com.mongodb.client.model.InsertOneModel;
+import com.mongodb.client.model.UpdateOneModel;
+import com.mongodb.client.model.UpdateOptions;
+import com.mongodb.client.model.WriteModel;
+import com.reactivespring.domain.MovieInfo;
+import org.bson.Document;
+import org.bson.types.ObjectId;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.mongodb.core.FindAndModifyOptions;
+import org.springframework.data.mongodb.core.ReactiveMongoTemplate;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+import org.springframework.data.mongodb.core.schema.JsonSchemaObject;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.util.Collection;
+import java.util.List;
+import java.util.stream.Collectors;
+
+import static org.springframework.data.mongodb.core.query.Criteria.where;
+import static org.springframework.data.mongodb.core.query.Query.query;
+
+public class MovieInfoRepositoryCustomImpl implements MovieInfoRepositoryCustom {
+
+    private ReactiveMongoTemplate reactiveMongoTemplate;
+
+    public MovieInfoRepositoryCustomImpl(ReactiveMongoTemplate reactiveMongoTemplate) {
+        this.reactiveMongoTemplate = reactiveMongoTemplate;
+    }
+
+    @Override
+    public Flux<MovieInfo> findAllByIdIn(Collection<String> ids, int cursorBatchSize) {
+        var query = query(where("_id").in(ids))
+                .cursorBatchSize(cursorBatchSize);
+        return reactiveMongoTemplate.find(query, MovieInfo.class);
+    }
+
+    @Override
+    public Flux<MovieInfo> findAllAfterId(String afterId, int limit) {
+        var query = afterId == null ? new Query() : query(afterIdCriteria(afterId));
+        query.with(Sort.by("_id")).limit(limit);
+        return reactiveMongoTemplate.find(query, MovieInfo.class);
+    }
+
+    @Override
+    public Mono<MovieInfo> findAndUpdate(String id, MovieInfo changes) {
+        var criteria = where("_id").is(id);
+        if (changes.getVersion() != null) {
+            criteria.and("version").is(changes.getVersion());
+        }
+        var update = new Update()
+                .set("name", changes.getName())
+                .set("year", changes.getYear())
+                .set("cast", changes.getCast())
+                .set("release_date", changes.getRelease_date())
+                .inc("version", 1);
+        return reactiveMongoTemplate.findAndModify(query(criteria), update,
+                FindAndModifyOptions.options().returnNew(true), MovieInfo.class);
+    }
+
+    @Override
+    public Mono<MovieInfo> findAndDelete(String id) {
+        return reactiveMongoTemplate.findAndRemove(query(where("_id").is(id)), MovieInfo.class);
+    }
+
+    @Override
+    public Mono<BulkWriteResult> bulkWrite(List<MovieInfo> movieInfos) {
+        var writeModels = movieInfos.stream()
+                .map(this::writeModel)
+                .collect(Collectors.toList());
+        return reactiveMongoTemplate.execute(MovieInfo.class,
+                        collection -> collection.bulkWrite(writeModels, new BulkWriteOptions().ordered(false)))
+                .next()
+                // the template wraps it into a DataAccessException, callers need the per index write errors
+                .onErrorMap(ex -> ex.getCause() instanceof MongoBulkWriteException, Throwable::getCause);
+    }
+
+    private WriteModel<Document> writeModel(MovieInfo movieInfo) {
+        if (movieInfo.getMovieInfoId() == null) {
+            movieInfo.setMovieInfoId(new ObjectId().toHexString());
+            movieInfo.setVersion(0L);
+            return new InsertOneModel<>(toDocument(movieInfo));
+        }
+        var fields = toDocument(movieInfo);
+        var id = fields.remove("_id");
+        fields.remove("version");
+        // the line is the whole movie info, a missing cast or release_date clears the stored one as PUT does,
+        // so the UPDATED event built from the line carries what is stored
+        fields.putIfAbsent("cast", null);
+        fields.putIfAbsent("release_date", null);
+        var update = new Document("$set", fields)
+                .append("$inc", new Document("version", 1));
+        return new UpdateOneModel<>(new Document("_id", id), update, new UpdateOptions().upsert(true));
+    }
+
+    private Document toDocument(MovieInfo movieInfo) {
+        var document = new Document();
+        reactiveMongoTemplate.getConverter().write(movieInfo, document);
+        return document;
+    }
+
+    // Generated ids are stored as ObjectIds and client supplied ones as strings. MongoDB sorts strings
+    // before ObjectIds and $gt only compares within a type, so after a string id the ObjectIds still follow.
+    private Criteria afterIdCriteria(String afterId) {
+        if (ObjectId.isValid(afterId)) {
+            return where("_id").gt(new ObjectId(afterId));
+        }
+        return new Criteria().orOperator(
+                where("_id").gt(afterId),
+                where("_id").type(JsonSchemaObject.Type.OBJECT_ID));
+    }
+
+}
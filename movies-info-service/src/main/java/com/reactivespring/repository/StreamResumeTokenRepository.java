@@ -0,0 +1,7 @@
+package com.reactivespring.repository;
+
+import com.reactivespring.domain.StreamResumeToken;
+import org.springframework.data.mongodb.repository.ReactiveMongoRepository;
+
+public interface StreamResumeTokenRepository extends ReactiveMongoRepository<StreamResumeToken, String> {
+}
@@ -0,0 +1,121 @@
+package com.reactivespring.service;
+
+import com.reactivespring.domain.EventType;
+import com.reactivespring.domain.MovieInfo;
+import com.reactivespring.domain.MovieInfoEvent;
+import com.reactivespring.exception.MovieInfoStreamLaggedException;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.Sinks;
+
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Bounded ring buffer of the movie info events, each event numbered with its sequence.
+ * Subscribers read from their own cursor, so they can resume from any sequence still retained
+ * and fail with {@link MovieInfoStreamLaggedException} once the buffer has moved past them.
+ * Sequences are only meaningful within the log's epoch, a random id picked when the log is created.
+ */
+@Component
+public class MovieInfoEventLog {
+
+    private String epoch = UUID.randomUUID().toString();
+    private MovieInfoEvent[] ring;
+    private long nextSequence = 1;
+
+    // wakes up the subscribers, the events themselves are read from the ring
+    private Sinks.Many<Long> appended = Sinks.many().multicast().directBestEffort();
+
+    private Counter lagged;
+
+    public MovieInfoEventLog(@Value("${movieInfoStream.capacity}") int capacity, MeterRegistry meterRegistry) {
+        this.ring = new MovieInfoEvent[capacity];
+        this.lagged = Counter.builder("movieinfo.stream.lagged")
+                .register(meterRegistry);
+        meterRegistry.gauge("movieinfo.stream.buffer.size", this, MovieInfoEventLog::size);
+        meterRegistry.gauge("movieinfo.stream.buffer.capacity", ring, r -> r.length);
+    }
+
+    public MovieInfoEvent append(MovieInfo movieInfo) {
+        return append(EventType.CREATED, movieInfo.getMovieInfoId(), movieInfo);
+    }
+
+    public MovieInfoEvent append(EventType type, String movieInfoId, MovieInfo movieInfo) {
+        return append(type, movieInfoId, movieInfo != null ? movieInfo.getVersion() : null, movieInfo);
+    }
+
+    public MovieInfoEvent append(EventType type, String movieInfoId, Long version, MovieInfo movieInfo) {
+        MovieInfoEvent event;
+        synchronized (this) {
+            event = new MovieInfoEvent(epoch, nextSequence++, type, movieInfoId, version, Instant.now(), movieInfo);
+            ring[index(event.getSequence())] = event;
+        }
+        appended.emitNext(event.getSequence(), (signalType, emitResult) -> emitResult == Sinks.EmitResult.FAIL_NON_SERIALIZED);
+        return event;
+    }
+
+    /**
+     * Events from the given sequence on, followed by the live events.
+     * Without a sequence all the retained events are replayed.
+     */
+    public Flux<MovieInfoEvent> events(Long fromSequence) {
+        return events(null, fromSequence);
+    }
+
+    /**
+     * As {@link #events(Long)}, with the epoch the sequence was read in. A sequence of another epoch, numbered by
+     * another instance or before a restart, says nothing about this log, all the retained events are replayed.
+     */
+    public Flux<MovieInfoEvent> events(String fromEpoch, Long fromSequence) {
+        if (fromEpoch != null && !fromEpoch.equals(epoch)) {
+            return events(null, null);
+        }
+        return Flux.defer(() -> {
+            var cursor = new AtomicLong(fromSequence != null ? fromSequence : oldestSequence());
+            // subscribed to the wake ups before the first read, so no event falls in between
+            return Flux.merge(appended.asFlux().onBackpressureLatest(), Mono.just(0L))
+                    .concatMapIterable(tick -> read(cursor));
+        });
+    }
+
+    public String getEpoch() {
+        return epoch;
+    }
+
+    public synchronized long size() {
+        return nextSequence - oldestSequence();
+    }
+
+    private synchronized List<MovieInfoEvent> read(AtomicLong cursor) {
+        var from = cursor.get();
+        var oldest = oldestSequence();
+        if (from < oldest) {
+            lagged.increment();
+            throw new MovieInfoStreamLaggedException(
+                    "Events before sequence " + oldest + " are no longer retained, requested " + from, oldest);
+        }
+        var events = new ArrayList<MovieInfoEvent>((int) Math.max(0, nextSequence - from));
+        for (long sequence = from; sequence < nextSequence; sequence++) {
+            events.add(ring[index(sequence)]);
+        }
+        cursor.set(Math.max(from, nextSequence));
+        return events;
+    }
+
+    private long oldestSequence() {
+        return Math.max(1, nextSequence - ring.length);
+    }
+
+    private int index(long sequence) {
+        return (int) (sequence % ring.length);
+    }
+
+}
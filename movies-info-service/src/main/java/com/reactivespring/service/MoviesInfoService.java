@@ -1,45 +1,187 @@
 package com.reactivespring.service;
 
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.mongodb.MongoBulkWriteException;
+import com.mongodb.bulk.BulkWriteError;
+import com.mongodb.bulk.BulkWriteUpsert;
+import com.reactivespring.domain.EventType;
 import com.reactivespring.domain.MovieInfo;
+import com.reactivespring.domain.MovieInfoBatchItem;
+import com.reactivespring.domain.MovieInfoBulkResult;
+import com.reactivespring.domain.MovieInfoPage;
+import com.reactivespring.exception.MovieInfoDataException;
+import com.reactivespring.exception.MovieInfoVersionConflictException;
 import com.reactivespring.repository.MovieInfoRepository;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
 import reactor.core.publisher.Flux;
 import reactor.core.publisher.Mono;
 
+import javax.validation.ConstraintViolation;
+import javax.validation.Validator;
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.stream.Collectors;
+
 @Service
 public class MoviesInfoService {
 
     private MovieInfoRepository movieInfoRepository;
 
-    public MoviesInfoService(MovieInfoRepository movieInfoRepository) {
+    private Validator validator;
+
+    private ObjectMapper objectMapper;
+
+    @Value("${movieInfoBatch.cursorBatchSize}")
+    private int cursorBatchSize;
+
+    @Value("${movieInfoBulk.batchSize}")
+    private int bulkBatchSize;
+
+    public MoviesInfoService(MovieInfoRepository movieInfoRepository, Validator validator, ObjectMapper objectMapper) {
         this.movieInfoRepository = movieInfoRepository;
+        this.validator = validator;
+        this.objectMapper = objectMapper;
     }
 
     public Mono<MovieInfo> addMovieInfo(MovieInfo movieInfo) {
         return movieInfoRepository.save(movieInfo);
     }
 
+    /**
+     * Parses and validates one movie info per line and writes the valid ones in bulk, one batch at a time.
+     * Only the batch being written and the one being read are held in memory, the upload is read as
+     * fast as the batches are written. Results come back in line order.
+     */
+    public Flux<MovieInfoBulkResult> addMovieInfos(Flux<String> lines) {
+        return lines.index()
+                .filter(line -> !line.getT2().isBlank())
+                .map(line -> parseBulkLine(line.getT1() + 1, line.getT2()))
+                .buffer(bulkBatchSize)
+                .concatMap(this::writeBulkBatch, 1);
+    }
+
+    private MovieInfoBulkResult parseBulkLine(long line, String json) {
+        MovieInfo movieInfo;
+        try {
+            movieInfo = objectMapper.readValue(json, MovieInfo.class);
+        } catch (JsonProcessingException e) {
+            return new MovieInfoBulkResult(line, null, false, null, "Malformed movie info: " + e.getOriginalMessage(), null);
+        }
+        var violations = validator.validate(movieInfo);
+        if (!violations.isEmpty()) {
+            var error = violations.stream()
+                    .map(ConstraintViolation::getMessage)
+                    .sorted()
+                    .collect(Collectors.joining(","));
+            return new MovieInfoBulkResult(line, movieInfo.getMovieInfoId(), false, null, error, null);
+        }
+        return new MovieInfoBulkResult(line, movieInfo.getMovieInfoId(), true, null, null, movieInfo);
+    }
+
+    private Flux<MovieInfoBulkResult> writeBulkBatch(List<MovieInfoBulkResult> batch) {
+        var accepted = batch.stream()
+                .filter(MovieInfoBulkResult::isAccepted)
+                .collect(Collectors.toList());
+        if (accepted.isEmpty()) {
+            return Flux.fromIterable(batch);
+        }
+        // the repository assigns the missing ids, remember which records are plain inserts
+        var inserted = accepted.stream()
+                .map(result -> result.getMovieInfo().getMovieInfoId() == null)
+                .collect(Collectors.toList());
+        var movieInfos = accepted.stream()
+                .map(MovieInfoBulkResult::getMovieInfo)
+                .collect(Collectors.toList());
+        return movieInfoRepository.bulkWrite(movieInfos)
+                .doOnNext(writeResult -> completeBulkResults(accepted, inserted, writeResult.getUpserts(), List.of()))
+                .onErrorResume(MongoBulkWriteException.class, ex -> {
+                    completeBulkResults(accepted, inserted, ex.getWriteResult().getUpserts(), ex.getWriteErrors());
+                    return Mono.empty();
+                })
+                .thenMany(Flux.fromIterable(batch));
+    }
+
+    private void completeBulkResults(List<MovieInfoBulkResult> written, List<Boolean> inserted,
+                                     List<BulkWriteUpsert> upserts, List<BulkWriteError> writeErrors) {
+        var upserted = upserts.stream()
+                .map(BulkWriteUpsert::getIndex)
+                .collect(Collectors.toSet());
+        var errors = writeErrors.stream()
+                .collect(Collectors.toMap(BulkWriteError::getIndex, BulkWriteError::getMessage));
+        for (int i = 0; i < written.size(); i++) {
+            var result = written.get(i);
+            var movieInfo = result.getMovieInfo();
+            result.setMovieInfoId(movieInfo.getMovieInfoId());
+            if (errors.containsKey(i)) {
+                result.setAccepted(false);
+                result.setError(errors.get(i));
+                result.setMovieInfo(null);
+            } else if (inserted.get(i)) {
+                result.setType(EventType.CREATED);
+            } else if (upserted.contains(i)) {
+                result.setType(EventType.CREATED);
+                movieInfo.setVersion(1L);
+            } else {
+                // the stored version is not returned by an update
+                result.setType(EventType.UPDATED);
+                movieInfo.setVersion(null);
+            }
+        }
+    }
+
     public Flux<MovieInfo> getAllMovieInfos() {
         return movieInfoRepository.findAll();
     }
 
+    public Mono<MovieInfoPage> getMovieInfosPage(String next, int limit) {
+        return Flux.defer(() -> movieInfoRepository.findAllAfterId(next == null ? null : decodePageToken(next), limit + 1))
+                .collectList()
+                .map(movieInfos -> {
+                    // the extra document only tells whether another page follows
+                    if (movieInfos.size() <= limit) {
+                        return new MovieInfoPage(movieInfos, null);
+                    }
+                    var page = movieInfos.subList(0, limit);
+                    return new MovieInfoPage(List.copyOf(page), encodePageToken(page.get(limit - 1).getMovieInfoId()));
+                });
+    }
+
     public Mono<MovieInfo> getMovieInfoById(String id) {
         return movieInfoRepository.findById(id);
     }
 
+    public Flux<MovieInfoBatchItem> getMovieInfosByIds(List<String> ids) {
+        return Flux.defer(() -> {
+            var missingIds = new LinkedHashSet<>(ids);
+            return movieInfoRepository.findAllByIdIn(List.copyOf(missingIds), cursorBatchSize)
+                    .doOnNext(movieInfo -> missingIds.remove(movieInfo.getMovieInfoId()))
+                    .map(movieInfo -> new MovieInfoBatchItem(movieInfo.getMovieInfoId(), true, movieInfo))
+                    .concatWith(Flux.defer(() -> Flux.fromIterable(missingIds))
+                            .map(id -> new MovieInfoBatchItem(id, false, null)));
+        });
+    }
+
     public Mono<MovieInfo> updateMovieInfo(MovieInfo updatedMovieInfo, String id) {
-        return movieInfoRepository.findById(id)
-                .flatMap(movieInfo -> {
-                    movieInfo.setCast(updatedMovieInfo.getCast());
-                    movieInfo.setName(updatedMovieInfo.getName());
-                    movieInfo.setRelease_date(updatedMovieInfo.getRelease_date());
-                    movieInfo.setYear(updatedMovieInfo.getYear());
-                    return movieInfoRepository.save(movieInfo);
-                });
+        var expectedVersion = updatedMovieInfo.getVersion();
+        return movieInfoRepository.findAndUpdate(id, updatedMovieInfo)
+                .switchIfEmpty(Mono.defer(() -> expectedVersion == null ? Mono.empty() : versionConflict(id, expectedVersion)));
     }
 
-    public Mono<Void> deleteMovieInfo(String id) {
-        return movieInfoRepository.deleteById(id);
+    // only reached when the conditional update matched nothing, a missing movie info stays empty (404)
+    private Mono<MovieInfo> versionConflict(String id, Long expectedVersion) {
+        return movieInfoRepository.existsById(id)
+                .flatMap(exists -> exists
+                        ? Mono.error(new MovieInfoVersionConflictException("MovieInfo " + id
+                                + " was modified concurrently, version " + expectedVersion + " is stale"))
+                        : Mono.empty());
+    }
+
+    public Mono<MovieInfo> deleteMovieInfo(String id) {
+        return movieInfoRepository.findAndDelete(id);
     }
 
     public Flux<MovieInfo> getAllMovieInfosByYear(Integer year) {
@@ -49,4 +191,17 @@ public class MoviesInfoService {
     public Flux<MovieInfo> getAllMovieInfosByName(String name) {
         return movieInfoRepository.findAllByName(name);
     }
+
+    private static String encodePageToken(String lastId) {
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(lastId.getBytes(StandardCharsets.UTF_8));
+    }
+
+    private static String decodePageToken(String next) {
+        try {
+            return new String(Base64.getUrlDecoder().decode(next), StandardCharsets.UTF_8);
+        } catch (IllegalArgumentException e) {
+            throw new MovieInfoDataException("Invalid next token: " + next);
+        }
+    }
+
 }
@@ -1,6 +1,10 @@
 package com.reactivespring.controller;
 
+import com.reactivespring.domain.EventType;
 import com.reactivespring.domain.MovieInfo;
+import com.reactivespring.domain.MovieInfoBatchItem;
+import com.reactivespring.domain.MovieInfoBulkResult;
+import com.reactivespring.domain.MovieInfoEvent;
 import com.reactivespring.repository.MovieInfoRepository;
 import org.junit.jupiter.api.AfterEach;
 import org.junit.jupiter.api.BeforeEach;
@@ -8,19 +12,28 @@ import org.junit.jupiter.api.Test;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.autoconfigure.web.reactive.AutoConfigureWebTestClient;
 import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.core.ParameterizedTypeReference;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.codec.ServerSentEvent;
 import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.context.TestPropertySource;
 import org.springframework.test.web.reactive.server.WebTestClient;
 import org.springframework.web.util.UriComponentsBuilder;
 import reactor.test.StepVerifier;
 
+import java.time.Duration;
 import java.time.LocalDate;
 import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
 
 import static org.junit.jupiter.api.Assertions.*;
 
 @SpringBootTest(webEnvironment = SpringBootTest.WebEnvironment.RANDOM_PORT)
 @ActiveProfiles("test")
 @AutoConfigureWebTestClient
+@TestPropertySource(properties = "movieInfoStream.capacity=2")
 class MoviesInfoControllerIntgTest {
 
     @Autowired
@@ -69,6 +82,61 @@ class MoviesInfoControllerIntgTest {
                 });
     }
 
+    @Test
+    void addMovieInfo_existingId() {
+        var movieInfo = new MovieInfo("abc", "Dark Knight Rises Again",
+                2012, List.of("Christian Bale", "Tom Hardy"), LocalDate.parse("2012-07-20"));
+
+        webTestClient
+                .post()
+                .uri(MOVIES_INFO_URL)
+                .bodyValue(movieInfo)
+                .exchange()
+                .expectStatus()
+                .isEqualTo(HttpStatus.CONFLICT);
+
+        StepVerifier.create(movieInfoRepository.findById("abc"))
+                .assertNext(saved -> assertEquals("Dark Knight Rises", saved.getName()))
+                .verifyComplete();
+    }
+
+    @Test
+    void addMovieInfos_bulk() {
+        var body = String.join("\n",
+                "{\"name\": \"Bulk Begins\", \"year\": 2005, \"cast\": [\"Christian Bale\"], \"release_date\": \"2005-06-15\"}",
+                "{\"movieInfoId\": \"abc\", \"name\": \"Dark Knight Rises Bulk\", \"year\": 2012, \"cast\": [\"Tom Hardy\"]}",
+                "{\"name\": \"\", \"year\": 2008, \"cast\": [\"Heath Ledger\"]}") + "\n";
+
+        webTestClient.post()
+                .uri(MOVIES_INFO_URL + "/bulk")
+                .contentType(MediaType.APPLICATION_NDJSON)
+                .accept(MediaType.APPLICATION_NDJSON)
+                .bodyValue(body)
+                .exchange()
+                .expectStatus()
+                .isOk()
+                .expectBodyList(MovieInfoBulkResult.class)
+                .value(results -> {
+                    assertEquals(3, results.size());
+                    assertEquals(EventType.CREATED, results.get(0).getType());
+                    assertEquals(EventType.UPDATED, results.get(1).getType());
+                    assertFalse(results.get(2).isAccepted());
+                    assertEquals("movieInfo.name must be present", results.get(2).getError());
+                });
+
+        StepVerifier.create(movieInfoRepository.findById("abc"))
+                .assertNext(movieInfo -> {
+                    assertEquals("Dark Knight Rises Bulk", movieInfo.getName());
+                    // absent from the line, cleared as the UPDATED event has it
+                    assertNull(movieInfo.getRelease_date());
+                    assertEquals(1L, movieInfo.getVersion());
+                })
+                .verifyComplete();
+        StepVerifier.create(movieInfoRepository.count())
+                .expectNext(4L)
+                .verifyComplete();
+    }
+
     @Test
     void getAllMovieInfos() {
         webTestClient.get()
@@ -80,6 +148,38 @@ class MoviesInfoControllerIntgTest {
                 .hasSize(3);
     }
 
+    @Test
+    void getAllMovieInfos_pagedAcrossStringAndObjectIds() {
+        var firstPage = webTestClient.get()
+                .uri(MOVIES_INFO_URL + "?limit={limit}", 2)
+                .exchange()
+                .expectStatus()
+                .isOk()
+                .expectBodyList(MovieInfo.class)
+                .returnResult();
+
+        // the client supplied string id sorts before the generated ObjectIds
+        var firstIds = firstPage.getResponseBody().stream().map(MovieInfo::getMovieInfoId).collect(Collectors.toList());
+        assertEquals(2, firstIds.size());
+        assertEquals("abc", firstIds.get(0));
+        var link = firstPage.getResponseHeaders().getFirst("Link");
+        assertNotNull(link);
+        var nextUri = link.substring(link.indexOf('<') + 1, link.indexOf('>'));
+
+        webTestClient.get()
+                .uri(nextUri)
+                .exchange()
+                .expectStatus()
+                .isOk()
+                .expectHeader()
+                .doesNotExist("Link")
+                .expectBodyList(MovieInfo.class)
+                .value(movieInfos -> {
+                    assertEquals(1, movieInfos.size());
+                    assertFalse(firstIds.contains(movieInfos.get(0).getMovieInfoId()));
+                });
+    }
+
     @Test
     void getAllMovieInfosStream() {
         var movieInfo = new MovieInfo(null, "Batman Begins ControllerTest",
@@ -104,17 +204,123 @@ class MoviesInfoControllerIntgTest {
                 .exchange()
                 .expectStatus()
                 .is2xxSuccessful()
-                .returnResult(MovieInfo.class)
+                .returnResult(MovieInfoEvent.class)
                 .getResponseBody();
 
         StepVerifier.create(moviesStreamFlux)
-                .assertNext(movieInfo1 -> {
-                    assert movieInfo1.getMovieInfoId() != null;
+                .assertNext(movieInfoEvent -> {
+                    assertEquals(EventType.CREATED, movieInfoEvent.getType());
+                    assertNotNull(movieInfoEvent.getMovieInfoId());
+                    assertEquals(0L, movieInfoEvent.getVersion());
+                    assertNotNull(movieInfoEvent.getMovieInfo());
                 })
                 .thenCancel()
                 .verify();
     }
 
+    @Test
+    void getMovieInfoEvents_resumesAfterLastEventId() {
+        var movieInfo = new MovieInfo(null, "Batman Begins EventsTest",
+                2005, List.of("Christian Bale", "Michael Cane"), LocalDate.parse("2005-06-15"));
+
+        webTestClient
+                .post()
+                .uri(MOVIES_INFO_URL)
+                .bodyValue(movieInfo)
+                .exchange()
+                .expectStatus()
+                .isCreated();
+
+        var events = webTestClient.get()
+                .uri(MOVIES_INFO_URL + "/events")
+                .accept(MediaType.TEXT_EVENT_STREAM)
+                .exchange()
+                .expectStatus()
+                .is2xxSuccessful()
+                .returnResult(new ParameterizedTypeReference<ServerSentEvent<MovieInfoEvent>>() {})
+                .getResponseBody();
+
+        var lastEvent = events.takeUntil(event -> "Batman Begins EventsTest".equals(event.data().getMovieInfo().getName()))
+                .blockLast(Duration.ofSeconds(5));
+        assertNotNull(lastEvent);
+
+        var resumed = webTestClient.get()
+                .uri(MOVIES_INFO_URL + "/events")
+                .accept(MediaType.TEXT_EVENT_STREAM)
+                .header("Last-Event-ID", lastEvent.id())
+                .exchange()
+                .expectStatus()
+                .is2xxSuccessful()
+                .returnResult(new ParameterizedTypeReference<ServerSentEvent<MovieInfoEvent>>() {})
+                .getResponseBody();
+
+        // nothing after the last seen event until the next one is posted
+        StepVerifier.create(resumed)
+                .expectSubscription()
+                .expectNoEvent(Duration.ofMillis(200))
+                .thenCancel()
+                .verify();
+    }
+
+    @Test
+    void getAllMovieInfosStream_fromSequenceNoLongerRetained() {
+        var movieInfo = new MovieInfo(null, "Batman Begins", 2005, List.of("Christian Bale"), LocalDate.parse("2005-06-15"));
+        IntStream.rangeClosed(1, 3).forEach(i -> webTestClient.post()
+                .uri(MOVIES_INFO_URL)
+                .bodyValue(movieInfo)
+                .exchange()
+                .expectStatus()
+                .isCreated());
+
+        webTestClient.get()
+                .uri(MOVIES_INFO_URL + "/stream?from=1")
+                .exchange()
+                .expectStatus()
+                .isEqualTo(HttpStatus.GONE);
+    }
+
+    @Test
+    void updateAndDeleteMovieInfo_publishEvents() {
+        movieInfoRepository.save(new MovieInfo("evt1", "Dark Knight Rises",
+                2012, List.of("Christian Bale", "Tom Hardy"), LocalDate.parse("2012-07-20"))).block();
+        var updatedMovieInfo = new MovieInfo(null, "Dark Knight Rises 1",
+                2012, List.of("Christian Bale", "Tom Hardy"), LocalDate.parse("2012-07-20"));
+
+        var events = webTestClient.get()
+                .uri(MOVIES_INFO_URL + "/stream")
+                .exchange()
+                .expectStatus()
+                .is2xxSuccessful()
+                .returnResult(MovieInfoEvent.class)
+                .getResponseBody()
+                .filter(event -> "evt1".equals(event.getMovieInfoId()));
+
+        StepVerifier.create(events)
+                .then(() -> webTestClient.put()
+                        .uri(MOVIES_INFO_URL + "/{id}", "evt1")
+                        .bodyValue(updatedMovieInfo)
+                        .exchange()
+                        .expectStatus()
+                        .isOk())
+                .assertNext(event -> {
+                    assertEquals(EventType.UPDATED, event.getType());
+                    assertEquals(1L, event.getVersion());
+                    assertEquals("Dark Knight Rises 1", event.getMovieInfo().getName());
+                })
+                .then(() -> webTestClient.delete()
+                        .uri(MOVIES_INFO_URL + "/{id}", "evt1")
+                        .exchange()
+                        .expectStatus()
+                        .isNoContent())
+                .assertNext(event -> {
+                    assertEquals(EventType.DELETED, event.getType());
+                    assertEquals(1L, event.getVersion());
+                    assertNull(event.getMovieInfo());
+                })
+                .thenCancel()
+                .verify(Duration.ofSeconds(5));
+    }
+
     @Test
     void getAllMovieInfosByYear() {
         var uri = UriComponentsBuilder.fromUriString(MOVIES_INFO_URL)
@@ -174,6 +380,42 @@ class MoviesInfoControllerIntgTest {
                 });
     }
 
+    @Test
+    void updateMovieInfo_currentVersion() {
+        var movieInfo = new MovieInfo("abc", "Dark Knight Rises ControllerTest Update",
+                2022, List.of("Christian Bale", "Tom Hardy"), LocalDate.parse("2012-07-20"), 0L);
+
+        webTestClient
+                .put()
+                .uri(MOVIES_INFO_URL + "/{id}", "abc")
+                .bodyValue(movieInfo)
+                .exchange()
+                .expectStatus()
+                .isOk()
+                .expectBody(MovieInfo.class)
+                .value(updatedMovieInfo -> assertEquals(1L, updatedMovieInfo.getVersion()));
+    }
+
+    @Test
+    void updateMovieInfo_staleVersion() {
+        var movieInfo = new MovieInfo("abc", "Dark Knight Rises ControllerTest Update",
+                2022, List.of("Christian Bale", "Tom Hardy"), LocalDate.parse("2012-07-20"), 5L);
+
+        webTestClient
+                .put()
+                .uri(MOVIES_INFO_URL + "/{id}", "abc")
+                .bodyValue(movieInfo)
+                .exchange()
+                .expectStatus()
+                .isEqualTo(HttpStatus.CONFLICT);
+
+        webTestClient.get()
+                .uri(MOVIES_INFO_URL + "/{id}", "abc")
+                .exchange()
+                .expectBody(MovieInfo.class)
+                .value(storedMovieInfo -> assertEquals("Dark Knight Rises", storedMovieInfo.getName()));
+    }
+
     @Test
     void updateMovieInfo_notFound() {
         var movieInfoId = "def";
@@ -201,4 +443,34 @@ class MoviesInfoControllerIntgTest {
                 .isNoContent();
     }
 
+    @Test
+    void deleteMovieInfo_notFound() {
+        webTestClient
+                .delete()
+                .uri(MOVIES_INFO_URL + "/{id}", "def")
+                .exchange()
+                .expectStatus()
+                .isNotFound();
+    }
+
+    @Test
+    void findMovieInfosByIds() {
+        webTestClient.post()
+                .uri(MOVIES_INFO_URL + "/batch")
+                .bodyValue(List.of("abc", "notExistentMovieInfoId"))
+                .exchange()
+                .expectStatus()
+                .is2xxSuccessful()
+                .expectBodyList(MovieInfoBatchItem.class)
+                .consumeWith(listEntityExchangeResult -> {
+                    var items = listEntityExchangeResult.getResponseBody();
+                    assertNotNull(items);
+                    assertEquals(2, items.size());
+                    assertTrue(items.get(0).isFound());
+                    assertEquals("Dark Knight Rises", items.get(0).getMovieInfo().getName());
+                    assertEquals("notExistentMovieInfoId", items.get(1).getMovieInfoId());
+                    assertFalse(items.get(1).isFound());
+                });
+    }
+
 }
@@ -0,0 +1,121 @@
+package com.reactivespring.repository;
+
+import com.mongodb.event.CommandListener;
+import com.mongodb.event.CommandStartedEvent;
+import com.reactivespring.domain.MovieInfo;
+import org.bson.BsonDocument;
+import org.bson.BsonString;
+import org.bson.Document;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.autoconfigure.mongo.MongoClientSettingsBuilderCustomizer;
+import org.springframework.boot.test.autoconfigure.data.mongo.DataMongoTest;
+import org.springframework.boot.test.context.TestConfiguration;
+import org.springframework.context.annotation.Bean;
+import org.springframework.data.mongodb.core.ReactiveMongoTemplate;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.test.context.ActiveProfiles;
+import reactor.core.publisher.Flux;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.springframework.data.mongodb.core.query.Criteria.where;
+import static org.springframework.data.mongodb.core.query.Query.query;
+
+/**
+ * Runs each repository finder, captures the find command it sent and fails when explain shows
+ * a collection scan for it.
+ */
+@DataMongoTest(properties = "spring.data.mongodb.auto-index-creation=true")
+@ActiveProfiles("test")
+class MovieInfoRepositoryIndexIntgTest {
+
+    static List<BsonDocument> findCommands = new CopyOnWriteArrayList<>();
+
+    @TestConfiguration
+    static class FindCommandCapture {
+
+        @Bean
+        MongoClientSettingsBuilderCustomizer findCommandListener() {
+            return builder -> builder.addCommandListener(new CommandListener() {
+                @Override
+                public void commandStarted(CommandStartedEvent event) {
+                    if ("find".equals(event.getCommandName())) {
+                        findCommands.add(event.getCommand().clone());
+                    }
+                }
+            });
+        }
+
+    }
+
+    @Autowired
+    MovieInfoRepository movieInfoRepository;
+
+    @Autowired
+    ReactiveMongoTemplate reactiveMongoTemplate;
+
+    @BeforeEach
+    void setUp() {
+        // the collection and its indexes must exist for the planner to consider them
+        movieInfoRepository.save(new MovieInfo(null, "Batman Begins", 2005,
+                List.of("Christian Bale"), null)).block();
+        findCommands.clear();
+    }
+
+    @AfterEach
+    void tearDown() {
+        reactiveMongoTemplate.remove(new Query(), MovieInfo.class).block();
+    }
+
+    @Test
+    void findAllByYear_usesIndex() {
+        assertNoCollectionScan(movieInfoRepository.findAllByYear(2005));
+    }
+
+    @Test
+    void findAllByName_usesIndex() {
+        assertNoCollectionScan(movieInfoRepository.findAllByName("Batman Begins"));
+    }
+
+    @Test
+    void findByCast_usesMultikeyIndex() {
+        // no finder reads cast yet, the index serves ad hoc queries on it
+        assertNoCollectionScan(reactiveMongoTemplate.find(query(where("cast").is("Christian Bale")), MovieInfo.class));
+    }
+
+    @Test
+    void findAllByIdIn_usesIndex() {
+        assertNoCollectionScan(movieInfoRepository.findAllByIdIn(List.of("abc", "def"), 100));
+    }
+
+    @Test
+    void findAllAfterId_usesIndex() {
+        assertNoCollectionScan(movieInfoRepository.findAllAfterId("abc", 10));
+    }
+
+    private void assertNoCollectionScan(Flux<MovieInfo> finder) {
+        finder.blockLast();
+        assertEquals(1, findCommands.size(), "find commands sent : " + findCommands);
+        var find = findCommands.get(0);
+
+        // explain the command as sent, without the session and routing fields the driver added
+        var explained = new BsonDocument();
+        List.of("find", "filter", "sort", "projection", "skip", "limit", "hint").stream()
+                .filter(find::containsKey)
+                .forEach(key -> explained.append(key, find.get(key)));
+        var explain = reactiveMongoTemplate.execute(database -> database.runCommand(
+                        new BsonDocument("explain", explained).append("verbosity", new BsonString("queryPlanner"))))
+                .blockFirst();
+
+        var winningPlan = explain.get("queryPlanner", Document.class).get("winningPlan", Document.class);
+        assertFalse(winningPlan.toJson().contains("\"COLLSCAN\""),
+                "COLLSCAN for " + explained.toJson() + " : " + winningPlan.toJson());
+    }
+
+}
@@ -0,0 +1,167 @@
+package com.reactivespring.service;
+
+import com.mongodb.reactivestreams.client.MongoClients;
+import com.reactivespring.domain.EventType;
+import com.reactivespring.domain.MovieInfo;
+import com.reactivespring.domain.StreamResumeToken;
+import com.reactivespring.repository.MovieInfoRepository;
+import com.reactivespring.repository.StreamResumeTokenRepository;
+import de.flapdoodle.embed.mongo.MongodExecutable;
+import org.bson.Document;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.config.BeanPostProcessor;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.context.TestConfiguration;
+import org.springframework.context.annotation.Bean;
+import org.springframework.core.env.Environment;
+import org.springframework.test.context.ActiveProfiles;
+import reactor.core.publisher.Mono;
+import reactor.test.StepVerifier;
+
+import java.time.Duration;
+import java.time.LocalDate;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+/**
+ * Change streams need a replica set, the embedded mongod runs as a single node one.
+ */
+@SpringBootTest(properties = {
+        "spring.mongodb.embedded.version=4.0.12",
+        "spring.mongodb.embedded.storage.repl-set-name=rs0",
+        "movieInfoStream.changeStream.enabled=true",
+        "movieInfoStream.changeStream.resumeTokenSaveInterval=100ms"})
+@ActiveProfiles("test")
+class MovieInfoChangeStreamIntgTest {
+
+    @Autowired
+    MovieInfoRepository movieInfoRepository;
+
+    @Autowired
+    StreamResumeTokenRepository streamResumeTokenRepository;
+
+    @Autowired
+    MovieInfoEventLog movieInfoEventLog;
+
+    @Autowired
+    MovieInfoChangeStreamListener movieInfoChangeStreamListener;
+
+    @AfterEach
+    void tearDown() {
+        movieInfoRepository.deleteAll().block();
+    }
+
+    @Test
+    void writesOfAnyInstanceReachTheEventLog() {
+        var movieInfo = new MovieInfo("cs1", "Batman Begins",
+                2005, List.of("Christian Bale", "Michael Cane"), LocalDate.parse("2005-06-15"));
+
+        var events = movieInfoEventLog.events(null)
+                .filter(event -> "cs1".equals(event.getMovieInfoId()));
+
+        StepVerifier.create(events)
+                // lets the listener open its change stream cursor
+                .thenAwait(Duration.ofMillis(500))
+                .then(() -> movieInfoRepository.save(movieInfo).block())
+                .assertNext(event -> assertEquals(EventType.CREATED, event.getType()))
+                .then(() -> {
+                    var saved = movieInfoRepository.findById("cs1").block();
+                    saved.setYear(2006);
+                    movieInfoRepository.save(saved).block();
+                })
+                .assertNext(event -> {
+                    assertEquals(EventType.UPDATED, event.getType());
+                    assertEquals(2006, event.getMovieInfo().getYear());
+                    assertEquals(1L, event.getVersion());
+                })
+                .then(() -> movieInfoRepository.deleteById("cs1").block())
+                .assertNext(event -> {
+                    assertEquals(EventType.DELETED, event.getType());
+                    assertNull(event.getMovieInfo());
+                })
+                .thenCancel()
+                .verify(Duration.ofSeconds(10));
+
+        StepVerifier.create(streamResumeTokenRepository.findById(movieInfoChangeStreamListener.resumeTokenId())
+                        .delaySubscription(Duration.ofMillis(500)))
+                .expectNextCount(1)
+                .verifyComplete();
+    }
+
+    @Test
+    void resumeSkipsTheChangesAlreadyPublished() {
+        var events = movieInfoEventLog.events(null)
+                .filter(event -> Set.of("cs2", "cs3").contains(event.getMovieInfoId()));
+        var resumeTokenId = movieInfoChangeStreamListener.resumeTokenId();
+        var tokenBefore = new AtomicReference<StreamResumeToken>();
+
+        StepVerifier.create(events)
+                .thenAwait(Duration.ofMillis(500))
+                .then(() -> {
+                    movieInfoRepository.save(movieInfo("cs4")).block();
+                    tokenBefore.set(streamResumeTokenRepository.findById(resumeTokenId)
+                            .delaySubscription(Duration.ofMillis(500)).block());
+                    var saved = movieInfoRepository.save(movieInfo("cs2")).block();
+                    saved.setYear(2006);
+                    movieInfoRepository.save(saved).block();
+                })
+                .assertNext(event -> assertEquals(EventType.CREATED, event.getType()))
+                .assertNext(event -> assertEquals(EventType.UPDATED, event.getType()))
+                .then(() -> {
+                    // resumed from before cs2, as after a failure of the stream
+                    movieInfoChangeStreamListener.dispose();
+                    streamResumeTokenRepository.save(tokenBefore.get()).block();
+                    movieInfoChangeStreamListener.subscribe();
+                })
+                .thenAwait(Duration.ofMillis(500))
+                .then(() -> movieInfoRepository.save(movieInfo("cs3")).block())
+                .assertNext(event -> assertEquals("cs3", event.getMovieInfoId()))
+                .thenCancel()
+                .verify(Duration.ofSeconds(10));
+    }
+
+    private MovieInfo movieInfo(String movieInfoId) {
+        return new MovieInfo(movieInfoId, "Batman Begins",
+                2005, List.of("Christian Bale", "Michael Cane"), LocalDate.parse("2005-06-15"));
+    }
+
+    /**
+     * The embedded mongod is started with a replica set name, the set still has to be initiated before
+     * the application's client connects, so it is done as soon as the server bean has started.
+     */
+    @TestConfiguration
+    static class EmbeddedReplicaSet {
+
+        @Bean
+        static BeanPostProcessor replicaSetInitiator(Environment environment) {
+            return new BeanPostProcessor() {
+                @Override
+                public Object postProcessAfterInitialization(Object bean, String beanName) {
+                    if (bean instanceof MongodExecutable) {
+                        initiate(environment.getProperty("local.mongo.port"));
+                    }
+                    return bean;
+                }
+            };
+        }
+
+        private static void initiate(String port) {
+            try (var mongoClient = MongoClients.create("mongodb://localhost:" + port)) {
+                var admin = mongoClient.getDatabase("admin");
+                Mono.from(admin.runCommand(new Document("replSetInitiate", new Document())))
+                        .then(Mono.defer(() -> Mono.from(admin.runCommand(new Document("isMaster", 1))))
+                                .filter(isMaster -> isMaster.getBoolean("ismaster", false))
+                                .repeatWhenEmpty(attempts -> attempts.take(100).delayElements(Duration.ofMillis(100))))
+                        .block(Duration.ofSeconds(30));
+            }
+        }
+
+    }
+
+}
@@ -1,12 +1,21 @@
 package com.reactivespring.controller;
 
+import com.reactivespring.domain.EventType;
 import com.reactivespring.domain.MovieInfo;
+import com.reactivespring.domain.MovieInfoBatchItem;
+import com.reactivespring.domain.MovieInfoBulkResult;
+import com.reactivespring.domain.MovieInfoPage;
+import com.reactivespring.exception.MovieInfoVersionConflictException;
+import com.reactivespring.service.MovieInfoEventLog;
 import com.reactivespring.service.MoviesInfoService;
 import org.junit.jupiter.api.Test;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.autoconfigure.web.reactive.AutoConfigureWebTestClient;
 import org.springframework.boot.test.autoconfigure.web.reactive.WebFluxTest;
 import org.springframework.boot.test.mock.mockito.MockBean;
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
 import org.springframework.test.context.ActiveProfiles;
 import org.springframework.test.web.reactive.server.WebTestClient;
 import reactor.core.publisher.Flux;
@@ -14,10 +23,16 @@ import reactor.core.publisher.Mono;
 
 import java.time.LocalDate;
 import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
 import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.mockito.ArgumentMatchers.any;
 import static org.mockito.ArgumentMatchers.isA;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.verifyNoInteractions;
 import static org.mockito.Mockito.when;
 
 @WebFluxTest(controllers = MoviesInfoController.class)
@@ -31,6 +46,9 @@ public class MoviesInfoControllerUnitTest {
     @MockBean
     private MoviesInfoService moviesInfoServiceMock;
 
+    @MockBean
+    private MovieInfoEventLog movieInfoEventLogMock;
+
     static String MOVIES_INFO_URL = "/v1/movieinfos";
 
     @Test
@@ -53,6 +71,72 @@ public class MoviesInfoControllerUnitTest {
                 .hasSize(3);
     }
 
+    @Test
+    void getAllMoviesInfo_tooManyWithoutLimit() {
+        var movieInfos = Flux.range(0, 1001)
+                .map(i -> new MovieInfo(String.valueOf(i), "Batman Begins",
+                        2005, List.of("Christian Bale", "Michael Cane"), LocalDate.parse("2005-06-15")));
+
+        when(moviesInfoServiceMock.getAllMovieInfos()).thenReturn(movieInfos);
+
+        webTestClient.get()
+                .uri(MOVIES_INFO_URL)
+                .exchange()
+                .expectStatus()
+                .isBadRequest()
+                .expectBody(String.class)
+                .isEqualTo("More than 1000 movie infos, page through them with limit and next");
+    }
+
+    @Test
+    void getMovieInfosPage() {
+        var movieInfos = List.of(new MovieInfo("abc", "Batman Begins",
+                        2005, List.of("Christian Bale", "Michael Cane"), LocalDate.parse("2005-06-15")),
+                new MovieInfo("def", "The Dark Knight",
+                        2008, List.of("Christian Bale", "HeathLedger"), LocalDate.parse("2008-07-18")));
+
+        when(moviesInfoServiceMock.getMovieInfosPage("YWJj", 2)).thenReturn(Mono.just(new MovieInfoPage(movieInfos, "ZGVm")));
+
+        webTestClient.get()
+                .uri(MOVIES_INFO_URL + "?limit={limit}&next={next}", 2, "YWJj")
+                .exchange()
+                .expectStatus()
+                .isOk()
+                .expectHeader()
+                .valueEquals("Link", "</v1/movieinfos?limit=2&next=ZGVm>; rel=\"next\"")
+                .expectBodyList(MovieInfo.class)
+                .hasSize(2);
+    }
+
+    @Test
+    void getMovieInfosPage_lastPage() {
+        var movieInfos = List.of(new MovieInfo("abc", "Batman Begins",
+                2005, List.of("Christian Bale", "Michael Cane"), LocalDate.parse("2005-06-15")));
+
+        when(moviesInfoServiceMock.getMovieInfosPage(null, 2)).thenReturn(Mono.just(new MovieInfoPage(movieInfos, null)));
+
+        webTestClient.get()
+                .uri(MOVIES_INFO_URL + "?limit={limit}", 2)
+                .exchange()
+                .expectStatus()
+                .isOk()
+                .expectHeader()
+                .doesNotExist("Link")
+                .expectBodyList(MovieInfo.class)
+                .hasSize(1);
+    }
+
+    @Test
+    void getMovieInfosPage_limitTooLarge() {
+        webTestClient.get()
+                .uri(MOVIES_INFO_URL + "?limit={limit}", 501)
+                .exchange()
+                .expectStatus()
+                .isBadRequest()
+                .expectBody(String.class)
+                .isEqualTo("limit must be between 1 and 500, received 501");
+    }
+
     @Test
     void getMovieInfoById() {
         var movieInfo = new MovieInfo("abc", "Dark Knight Rises",
@@ -99,6 +183,55 @@ public class MoviesInfoControllerUnitTest {
                 });
     }
 
+    @Test
+    void addMovieInfo_existingId() {
+        var movieInfo = new MovieInfo("abc", "Dark Knight Rises",
+                2012, List.of("Christian Bale", "Tom Hardy"), LocalDate.parse("2012-07-20"));
+
+        when(moviesInfoServiceMock.addMovieInfo(isA(MovieInfo.class)))
+                .thenReturn(Mono.error(new DuplicateKeyException("E11000 duplicate key error collection: movieInfo")));
+
+        webTestClient.post()
+                .uri(MOVIES_INFO_URL)
+                .bodyValue(movieInfo)
+                .exchange()
+                .expectStatus()
+                .isEqualTo(HttpStatus.CONFLICT)
+                .expectBody(String.class)
+                .isEqualTo("MovieInfo already exists, update it with PUT /v1/movieinfos/{id}");
+    }
+
+    @Test
+    void addMovieInfos_bulk() {
+        var movieInfo = new MovieInfo("abc", "Dark Knight Rises",
+                2012, List.of("Christian Bale", "Tom Hardy"), LocalDate.parse("2012-07-20"), 0L);
+
+        when(moviesInfoServiceMock.addMovieInfos(any())).thenAnswer(invocation -> {
+            Flux<String> lines = invocation.getArgument(0);
+            return lines.collectList().flatMapMany(received -> {
+                assertEquals(2, received.size());
+                return Flux.just(new MovieInfoBulkResult(1, "abc", true, EventType.CREATED, null, movieInfo),
+                        new MovieInfoBulkResult(2, null, false, null, "movieInfo.name must be present", null));
+            });
+        });
+
+        webTestClient.post()
+                .uri(MOVIES_INFO_URL + "/bulk")
+                .contentType(MediaType.APPLICATION_NDJSON)
+                .bodyValue("{\"name\": \"Dark Knight Rises\"}\n{\"name\": \"\"}\n")
+                .exchange()
+                .expectStatus()
+                .isOk()
+                .expectBodyList(MovieInfoBulkResult.class)
+                .value(results -> {
+                    assertEquals(2, results.size());
+                    assertEquals("abc", results.get(0).getMovieInfoId());
+                    assertEquals("movieInfo.name must be present", results.get(1).getError());
+                });
+
+        verify(movieInfoEventLogMock).append(EventType.CREATED, "abc", 0L, movieInfo);
+    }
+
     @Test
     void addMovieInfo_validation() {
         var movieInfo = new MovieInfo(null, "",
@@ -145,17 +278,95 @@ public class MoviesInfoControllerUnitTest {
                 });
     }
 
+    @Test
+    void updateMovieInfo_versionConflict() {
+        var movieInfo = new MovieInfo("abc", "Dark Knight Rises",
+                2012, List.of("Christian Bale", "Tom Hardy"), LocalDate.parse("2012-07-20"), 3L);
+
+        when(moviesInfoServiceMock.updateMovieInfo(isA(MovieInfo.class), isA(String.class)))
+                .thenReturn(Mono.error(new MovieInfoVersionConflictException("MovieInfo abc was modified concurrently, version 3 is stale")));
+
+        webTestClient
+                .put()
+                .uri(MOVIES_INFO_URL + "/{id}", "abc")
+                .bodyValue(movieInfo)
+                .exchange()
+                .expectStatus()
+                .isEqualTo(HttpStatus.CONFLICT)
+                .expectBody(String.class)
+                .isEqualTo("MovieInfo abc was modified concurrently, version 3 is stale");
+    }
+
     @Test
     void deleteMovieInfo() {
         var movieId = "1a2b";
 
-        when(moviesInfoServiceMock.deleteMovieInfo(isA(String.class))).thenReturn(Mono.empty());
+        var deletedMovieInfo = new MovieInfo(movieId, "Dark Knight Rises",
+                2012, List.of("Christian Bale", "Tom Hardy"), LocalDate.parse("2012-07-20"), 2L);
+
+        when(moviesInfoServiceMock.deleteMovieInfo(isA(String.class))).thenReturn(Mono.just(deletedMovieInfo));
 
         webTestClient.delete()
                 .uri(MOVIES_INFO_URL + "/{id}", movieId)
                 .exchange()
                 .expectStatus()
                 .isNoContent();
+
+        verify(movieInfoEventLogMock).append(EventType.DELETED, movieId, 2L, null);
+    }
+
+    @Test
+    void deleteMovieInfo_notFound() {
+        when(moviesInfoServiceMock.deleteMovieInfo(isA(String.class))).thenReturn(Mono.empty());
+
+        webTestClient.delete()
+                .uri(MOVIES_INFO_URL + "/{id}", "1a2b")
+                .exchange()
+                .expectStatus()
+                .isNotFound();
+
+        verifyNoInteractions(movieInfoEventLogMock);
+    }
+
+    @Test
+    void findMovieInfosByIds() {
+        var movieInfo = new MovieInfo("abc", "Dark Knight Rises",
+                2012, List.of("Christian Bale", "Tom Hardy"), LocalDate.parse("2012-07-20"));
+
+        when(moviesInfoServiceMock.getMovieInfosByIds(List.of("abc", "def"))).thenReturn(Flux.just(
+                new MovieInfoBatchItem("abc", true, movieInfo),
+                new MovieInfoBatchItem("def", false, null)));
+
+        webTestClient.post()
+                .uri(MOVIES_INFO_URL + "/batch")
+                .bodyValue(List.of("abc", "def"))
+                .exchange()
+                .expectStatus()
+                .isOk()
+                .expectBodyList(MovieInfoBatchItem.class)
+                .consumeWith(listEntityExchangeResult -> {
+                    var items = listEntityExchangeResult.getResponseBody();
+                    assertNotNull(items);
+                    assertEquals(2, items.size());
+                    assertEquals("Dark Knight Rises", items.get(0).getMovieInfo().getName());
+                    assertFalse(items.get(1).isFound());
+                });
+    }
+
+    @Test
+    void findMovieInfosByIds_tooManyIds() {
+        var ids = IntStream.rangeClosed(1, 501)
+                .mapToObj(String::valueOf)
+                .collect(Collectors.toList());
+
+        webTestClient.post()
+                .uri(MOVIES_INFO_URL + "/batch")
+                .bodyValue(ids)
+                .exchange()
+                .expectStatus()
+                .isBadRequest()
+                .expectBody(String.class)
+                .isEqualTo("At most 500 ids can be requested at once, received 501");
     }
 
 }
@@ -0,0 +1,104 @@
+package com.reactivespring.service;
+
+import com.reactivespring.domain.MovieInfo;
+import com.reactivespring.domain.MovieInfoEvent;
+import com.reactivespring.exception.MovieInfoStreamLaggedException;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import reactor.test.StepVerifier;
+
+import java.time.LocalDate;
+import java.util.List;
+import java.util.stream.IntStream;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class MovieInfoEventLogUnitTest {
+
+    SimpleMeterRegistry meterRegistry;
+
+    MovieInfoEventLog movieInfoEventLog;
+
+    @BeforeEach
+    void setUp() {
+        meterRegistry = new SimpleMeterRegistry();
+        movieInfoEventLog = new MovieInfoEventLog(3, meterRegistry);
+    }
+
+    @Test
+    void events_replaysRetainedThenLive() {
+        IntStream.rangeClosed(1, 5).forEach(i -> movieInfoEventLog.append(movieInfo("id" + i)));
+
+        StepVerifier.create(movieInfoEventLog.events(null).map(MovieInfoEvent::getSequence))
+                .expectNext(3L, 4L, 5L)
+                .then(() -> movieInfoEventLog.append(movieInfo("id6")))
+                .expectNext(6L)
+                .thenCancel()
+                .verify();
+
+        assertEquals(3.0, meterRegistry.get("movieinfo.stream.buffer.size").gauge().value());
+    }
+
+    @Test
+    void events_resumesFromSequence() {
+        IntStream.rangeClosed(1, 3).forEach(i -> movieInfoEventLog.append(movieInfo("id" + i)));
+
+        StepVerifier.create(movieInfoEventLog.events(3L))
+                .assertNext(event -> {
+                    assertEquals(3L, event.getSequence());
+                    assertEquals("id3", event.getMovieInfo().getMovieInfoId());
+                })
+                .thenCancel()
+                .verify();
+    }
+
+    @Test
+    void events_sequenceOfAnotherEpochReplaysRetained() {
+        IntStream.rangeClosed(1, 5).forEach(i -> movieInfoEventLog.append(movieInfo("id" + i)));
+
+        // a sequence numbered by a restarted or other instance, ahead of this log
+        StepVerifier.create(movieInfoEventLog.events("other-epoch", 42L).map(MovieInfoEvent::getSequence))
+                .expectNext(3L, 4L, 5L)
+                .thenCancel()
+                .verify();
+
+        StepVerifier.create(movieInfoEventLog.events(movieInfoEventLog.getEpoch(), 5L))
+                .assertNext(event -> {
+                    assertEquals(5L, event.getSequence());
+                    assertEquals(movieInfoEventLog.getEpoch(), event.getEpoch());
+                })
+                .thenCancel()
+                .verify();
+    }
+
+    @Test
+    void events_fromSequenceNoLongerRetained() {
+        IntStream.rangeClosed(1, 5).forEach(i -> movieInfoEventLog.append(movieInfo("id" + i)));
+
+        StepVerifier.create(movieInfoEventLog.events(1L))
+                .expectErrorSatisfies(ex -> assertEquals(3L, ((MovieInfoStreamLaggedException) ex).getOldestSequence()))
+                .verify();
+
+        assertEquals(1.0, meterRegistry.get("movieinfo.stream.lagged").counter().count());
+    }
+
+    @Test
+    void events_slowSubscriberLags() {
+        movieInfoEventLog.append(movieInfo("id1"));
+
+        StepVerifier.create(movieInfoEventLog.events(null), 1)
+                .expectNextCount(1)
+                .then(() -> IntStream.rangeClosed(2, 6).forEach(i -> movieInfoEventLog.append(movieInfo("id" + i))))
+                .thenRequest(2)
+                // the batch read before falling behind is still delivered
+                .expectNextMatches(event -> event.getSequence() == 2L)
+                .expectError(MovieInfoStreamLaggedException.class)
+                .verify();
+    }
+
+    private MovieInfo movieInfo(String movieInfoId) {
+        return new MovieInfo(movieInfoId, "Batman Begins", 2005, List.of("Christian Bale"), LocalDate.parse("2005-06-15"));
+    }
+
+}
@@ -0,0 +1,148 @@
+package com.reactivespring.service;
+
+import com.mongodb.MongoBulkWriteException;
+import com.mongodb.ServerAddress;
+import com.mongodb.bulk.BulkWriteError;
+import com.mongodb.bulk.BulkWriteResult;
+import com.mongodb.bulk.BulkWriteUpsert;
+import com.reactivespring.domain.EventType;
+import com.reactivespring.domain.MovieInfo;
+import com.reactivespring.domain.MovieInfoBulkResult;
+import com.reactivespring.repository.MovieInfoRepository;
+import org.bson.BsonDocument;
+import org.bson.BsonString;
+import org.bson.types.ObjectId;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.http.converter.json.Jackson2ObjectMapperBuilder;
+import org.springframework.test.util.ReflectionTestUtils;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.test.StepVerifier;
+
+import javax.validation.Validation;
+import java.util.List;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.Mockito.*;
+
+class MoviesInfoServiceBulkUnitTest {
+
+    MovieInfoRepository movieInfoRepositoryMock;
+
+    MoviesInfoService moviesInfoService;
+
+    @BeforeEach
+    void setUp() {
+        movieInfoRepositoryMock = mock(MovieInfoRepository.class);
+        moviesInfoService = new MoviesInfoService(movieInfoRepositoryMock,
+                Validation.buildDefaultValidatorFactory().getValidator(),
+                Jackson2ObjectMapperBuilder.json().build());
+        ReflectionTestUtils.setField(moviesInfoService, "bulkBatchSize", 2);
+    }
+
+    @Test
+    void addMovieInfos_reportsEveryLineInOrder() {
+        when(movieInfoRepositoryMock.bulkWrite(anyList())).thenAnswer(invocation -> {
+            List<MovieInfo> movieInfos = invocation.getArgument(0);
+            assignIds(movieInfos);
+            // "abc" did not exist yet and was upserted
+            return Mono.just(BulkWriteResult.acknowledged(1, 0, 0, 0,
+                    List.of(new BulkWriteUpsert(1, new BsonString("abc"))), List.of()));
+        });
+        var lines = Flux.just(
+                movieInfoJson(null, "Batman Begins"),
+                movieInfoJson("abc", "The Dark Knight"),
+                "",
+                "{\"name\": \"\", \"year\": -1, \"cast\": [\"Christian Bale\"]}",
+                "{not json");
+
+        StepVerifier.create(moviesInfoService.addMovieInfos(lines))
+                .assertNext(result -> {
+                    assertEquals(1, result.getLine());
+                    assertTrue(result.isAccepted());
+                    assertEquals(EventType.CREATED, result.getType());
+                    assertNotNull(result.getMovieInfoId());
+                    assertEquals(0L, result.getMovieInfo().getVersion());
+                })
+                .assertNext(result -> {
+                    assertEquals(2, result.getLine());
+                    assertEquals("abc", result.getMovieInfoId());
+                    assertEquals(EventType.CREATED, result.getType());
+                    assertEquals(1L, result.getMovieInfo().getVersion());
+                })
+                .assertNext(result -> {
+                    assertEquals(4, result.getLine());
+                    assertFalse(result.isAccepted());
+                    assertEquals("movieInfo.name must be present,movieInfo.year must be a positive value", result.getError());
+                })
+                .assertNext(result -> {
+                    assertEquals(5, result.getLine());
+                    assertFalse(result.isAccepted());
+                    assertTrue(result.getError().startsWith("Malformed movie info"));
+                })
+                .verifyComplete();
+
+        // the rejected lines fill the second batch on their own, nothing to write for it
+        verify(movieInfoRepositoryMock, times(1)).bulkWrite(anyList());
+    }
+
+    @Test
+    void addMovieInfos_writesInBatches() {
+        when(movieInfoRepositoryMock.bulkWrite(anyList())).thenAnswer(invocation -> {
+            List<MovieInfo> movieInfos = invocation.getArgument(0);
+            assignIds(movieInfos);
+            return Mono.just(BulkWriteResult.acknowledged(movieInfos.size(), 0, 0, 0, List.of(), List.of()));
+        });
+        var lines = Flux.range(1, 5).map(i -> movieInfoJson(null, "Batman Begins " + i));
+
+        StepVerifier.create(moviesInfoService.addMovieInfos(lines).map(MovieInfoBulkResult::getLine))
+                .expectNext(1L, 2L, 3L, 4L, 5L)
+                .verifyComplete();
+
+        verify(movieInfoRepositoryMock, times(3)).bulkWrite(anyList());
+    }
+
+    @Test
+    void addMovieInfos_rejectsFailedWrites() {
+        when(movieInfoRepositoryMock.bulkWrite(anyList())).thenAnswer(invocation -> {
+            List<MovieInfo> movieInfos = invocation.getArgument(0);
+            assignIds(movieInfos);
+            var writeResult = BulkWriteResult.acknowledged(0, 1, 0, 1, List.of(), List.of());
+            var writeError = new BulkWriteError(11000, "E11000 duplicate key error", new BsonDocument(), 0);
+            return Mono.error(new MongoBulkWriteException(writeResult, List.of(writeError), null, new ServerAddress(), Set.of()));
+        });
+        var lines = Flux.just(movieInfoJson("abc", "Batman Begins"), movieInfoJson("def", "The Dark Knight"));
+
+        StepVerifier.create(moviesInfoService.addMovieInfos(lines))
+                .assertNext(result -> {
+                    assertFalse(result.isAccepted());
+                    assertEquals("abc", result.getMovieInfoId());
+                    assertEquals("E11000 duplicate key error", result.getError());
+                })
+                .assertNext(result -> {
+                    assertTrue(result.isAccepted());
+                    assertEquals(EventType.UPDATED, result.getType());
+                    assertNull(result.getMovieInfo().getVersion());
+                })
+                .verifyComplete();
+    }
+
+    private void assignIds(List<MovieInfo> movieInfos) {
+        movieInfos.stream()
+                .filter(movieInfo -> movieInfo.getMovieInfoId() == null)
+                .forEach(movieInfo -> {
+                    movieInfo.setMovieInfoId(new ObjectId().toHexString());
+                    movieInfo.setVersion(0L);
+                });
+    }
+
+    private String movieInfoJson(String id, String name) {
+        var idField = id == null ? "" : "\"movieInfoId\": \"" + id + "\", ";
+        return "{" + idField + "\"name\": \"" + name + "\", \"year\": 2005, \"cast\": [\"Christian Bale\"], "
+                + "\"release_date\": \"2005-06-15\"}";
+    }
+
+}
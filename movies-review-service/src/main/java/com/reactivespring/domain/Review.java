@@ -4,6 +4,8 @@ import lombok.AllArgsConstructor;
 import lombok.Data;
 import lombok.NoArgsConstructor;
 import org.springframework.data.annotation.Id;
+import org.springframework.data.annotation.Version;
+import org.springframework.data.mongodb.core.index.CompoundIndex;
 import org.springframework.data.mongodb.core.mapping.Document;
 
 import javax.validation.constraints.Min;
@@ -13,6 +15,8 @@ import javax.validation.constraints.NotNull;
 @NoArgsConstructor
 @AllArgsConstructor
 @Document
+// serves the movieInfoId lookups through its prefix and the rating ordered grouped query
+@CompoundIndex(name = "movieInfoId_rating", def = "{'movieInfoId': 1, 'rating': -1}")
 public class Review {
 
     @Id
@@ -26,4 +30,12 @@ public class Review {
     @Min(value = 0L, message = "rating.negative : please pass a non-negative value")
     private Double rating;
 
+    // incremented on every write, carried by the stream events
+    @Version
+    private Long version;
+
+    public Review(String reviewId, Long movieInfoId, String comment, Double rating) {
+        this(reviewId, movieInfoId, comment, rating, null);
+    }
+
 }
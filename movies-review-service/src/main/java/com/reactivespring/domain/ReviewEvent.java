@@ -0,0 +1,38 @@
+package com.reactivespring.domain;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.time.Instant;
+
+/**
+ * Envelope of a review write, as sent by the stream endpoint.
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class ReviewEvent {
+
+    private EventType type;
+
+    private String reviewId;
+
+    // null for deletes seen by the change stream, which only carry the review id
+    private Long movieInfoId;
+
+    // version the review has after the write. A bulk review upload publishes each batch from the uploaded
+    // lines without reading the reviews back, so its UPDATED events have none
+    private Long version;
+
+    private Instant timestamp;
+
+    // null for DELETED events
+    private Review review;
+
+    public static ReviewEvent of(EventType type, Review review) {
+        return new ReviewEvent(type, review.getReviewId(), review.getMovieInfoId(), review.getVersion(),
+                Instant.now(), type == EventType.DELETED ? null : review);
+    }
+
+}
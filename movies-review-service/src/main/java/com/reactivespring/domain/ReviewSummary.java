@@ -0,0 +1,68 @@
+package com.reactivespring.domain;
+
+import com.fasterxml.jackson.annotation.JsonIgnore;
+import com.fasterxml.jackson.annotation.JsonInclude;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import org.springframework.data.annotation.Id;
+import org.springframework.data.annotation.Transient;
+import org.springframework.data.mongodb.core.mapping.Document;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Rating aggregates of one movie, kept up to date by every review write. The review and the summary are
+ * written one after the other, a failure in between leaves the summary off until it is rebuilt from the
+ * reviews, which POST /v1/reviews/summary/{movieInfoId}/rebuild does.
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+@Document
+public class ReviewSummary {
+
+    @Id
+    private Long movieInfoId;
+
+    private long count;
+
+    // reviews with a rating, the others only add to count
+    private long ratingCount;
+
+    private double ratingSum;
+
+    // null while no review is rated
+    private Double minRating;
+
+    private Double maxRating;
+
+    // rated reviews per whole rating, "0" to "10", higher ratings are counted in "10"
+    private Map<String, Long> histogram = new HashMap<>();
+
+    // incremented by every write, the writes computed from a read of the summary only apply while it is unchanged
+    @JsonIgnore
+    private long revision;
+
+    // best rated reviews, only sent when GET /v1/reviews/summary/{movieInfoId} asks for them with topReviews
+    @Transient
+    @JsonInclude(JsonInclude.Include.NON_NULL)
+    private List<Review> topReviews;
+
+    public ReviewSummary(Long movieInfoId) {
+        this.movieInfoId = movieInfoId;
+    }
+
+    public ReviewSummary(Long movieInfoId, long count, long ratingCount, double ratingSum,
+                         Double minRating, Double maxRating, Map<String, Long> histogram) {
+        this(movieInfoId, count, ratingCount, ratingSum, minRating, maxRating, histogram, 0L, null);
+    }
+
+    @Transient
+    public Double getAverageRating() {
+        return ratingCount == 0 ? null : ratingSum / ratingCount;
+    }
+
+}
@@ -0,0 +1,76 @@
+package com.reactivespring.domain;
+
+import lombok.Getter;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Reviews added to and removed from one movie's {@link ReviewSummary}, applied as a single atomic update.
+ */
+@Getter
+public class ReviewSummaryChange {
+
+    private Long movieInfoId;
+
+    private long count;
+
+    private long ratingCount;
+
+    private double ratingSum;
+
+    private Map<String, Long> histogram = new HashMap<>();
+
+    private Double addedMin;
+
+    private Double addedMax;
+
+    private Double removedMin;
+
+    private Double removedMax;
+
+    public ReviewSummaryChange(Long movieInfoId) {
+        this.movieInfoId = movieInfoId;
+    }
+
+    public static String bucket(double rating) {
+        return String.valueOf((int) Math.min(Math.floor(rating), 10));
+    }
+
+    public ReviewSummaryChange add(Double rating) {
+        count++;
+        if (rating != null) {
+            ratingCount++;
+            ratingSum += rating;
+            histogram.merge(bucket(rating), 1L, Long::sum);
+            addedMin = addedMin == null ? rating : Math.min(addedMin, rating);
+            addedMax = addedMax == null ? rating : Math.max(addedMax, rating);
+        }
+        return this;
+    }
+
+    public ReviewSummaryChange remove(Double rating) {
+        count--;
+        if (rating != null) {
+            ratingCount--;
+            ratingSum -= rating;
+            histogram.merge(bucket(rating), -1L, Long::sum);
+            removedMin = removedMin == null ? rating : Math.min(removedMin, rating);
+            removedMax = removedMax == null ? rating : Math.max(removedMax, rating);
+        }
+        return this;
+    }
+
+    /**
+     * Whether a removed rating was one of the summary's bounds, which $min and $max cannot take back.
+     */
+    public boolean removesBound(ReviewSummary summary) {
+        if (removedMin == null) {
+            return false;
+        }
+        return summary.getRatingCount() == 0
+                || summary.getMinRating() == null || removedMin <= summary.getMinRating()
+                || removedMax >= summary.getMaxRating();
+    }
+
+}
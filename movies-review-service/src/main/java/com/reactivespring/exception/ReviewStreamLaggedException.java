@@ -0,0 +1,15 @@
+package com.reactivespring.exception;
+
+import lombok.Data;
+
+@Data
+public class ReviewStreamLaggedException extends RuntimeException {
+
+    private String message;
+
+    public ReviewStreamLaggedException(String message) {
+        super(message);
+        this.message = message;
+    }
+
+}
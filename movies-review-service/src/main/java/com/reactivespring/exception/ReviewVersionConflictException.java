@@ -0,0 +1,15 @@
+package com.reactivespring.exception;
+
+import lombok.Data;
+
+@Data
+public class ReviewVersionConflictException extends RuntimeException {
+
+    private String message;
+
+    public ReviewVersionConflictException(String message) {
+        super(message);
+        this.message = message;
+    }
+
+}
@@ -1,68 +1,459 @@
 package com.reactivespring.handler;
 
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.mongodb.MongoBulkWriteException;
+import com.mongodb.bulk.BulkWriteError;
+import com.mongodb.bulk.BulkWriteUpsert;
+import com.reactivespring.domain.EventType;
+import com.reactivespring.domain.MovieReviews;
 import com.reactivespring.domain.Review;
+import com.reactivespring.domain.ReviewBulkResult;
+import com.reactivespring.domain.ReviewEvent;
+import com.reactivespring.domain.ReviewSummary;
+import com.reactivespring.domain.ReviewSummaryChange;
 import com.reactivespring.exception.ReviewDataException;
 import com.reactivespring.exception.ReviewNotFoundException;
+import com.reactivespring.exception.ReviewVersionConflictException;
 import com.reactivespring.repository.ReviewReactiveRepository;
+import com.reactivespring.repository.ReviewSummaryRepository;
+import com.reactivespring.stream.ReviewStream;
+import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Sort;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.MediaType;
 import org.springframework.stereotype.Component;
 import org.springframework.web.reactive.function.server.ServerRequest;
 import org.springframework.web.reactive.function.server.ServerResponse;
+import org.springframework.web.util.UriComponentsBuilder;
 import reactor.core.publisher.Flux;
 import reactor.core.publisher.Mono;
-import reactor.core.publisher.Sinks;
 
 import javax.validation.ConstraintViolation;
 import javax.validation.Validator;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.stream.Collectors;
 
 @Component
+@Slf4j
 public class ReviewHandler {
 
-    Sinks.Many<Review> reviewsInfoSink = Sinks.many().replay().all();
-
     @Autowired
     private Validator validator;
 
+    @Autowired
+    private ObjectMapper objectMapper;
+
+    @Value("${reviewsBulk.batchSize}")
+    private int bulkBatchSize;
+
+    @Value("${reviewsBulk.batchWindow}")
+    private Duration bulkBatchWindow;
+
+    @Value("${reviewsBatch.maxMovieInfoIds}")
+    private int batchMaxMovieInfoIds;
+
+    @Value("${reviewsBatch.maxLimitPerMovie}")
+    private int batchMaxLimitPerMovie;
+
+    @Value("${reviewsPaging.maxLimit}")
+    private int maxLimit;
+
+    @Value("${reviewsPaging.maxUnpagedResults}")
+    private int maxUnpagedResults;
+
+    @Value("${reviewsSummary.maxTopReviews}")
+    private int maxTopReviews;
+
+    @Value("${reviewsStream.changeStream.enabled}")
+    private boolean changeStreamEnabled;
+
     private ReviewReactiveRepository reviewReactiveRepository;
 
-    public ReviewHandler(ReviewReactiveRepository reviewReactiveRepository) {
+    private ReviewStream reviewStream;
+
+    private ReviewSummaryRepository reviewSummaryRepository;
+
+    public ReviewHandler(ReviewReactiveRepository reviewReactiveRepository, ReviewStream reviewStream,
+                         ReviewSummaryRepository reviewSummaryRepository) {
         this.reviewReactiveRepository = reviewReactiveRepository;
+        this.reviewStream = reviewStream;
+        this.reviewSummaryRepository = reviewSummaryRepository;
     }
 
     public Mono<ServerResponse> addReview(ServerRequest request) {
         return request.bodyToMono(Review.class)
                 .doOnNext(this::validate)
                 .flatMap(reviewReactiveRepository::save)
-                .doOnNext(review -> reviewsInfoSink.tryEmitNext(review))
+                .flatMap(savedReview -> applySummaryChange(new ReviewSummaryChange(savedReview.getMovieInfoId())
+                        .add(savedReview.getRating()))
+                        .thenReturn(savedReview))
+                .doOnNext(savedReview -> publish(EventType.CREATED, savedReview))
                 .flatMap(ServerResponse.status(HttpStatus.CREATED)::bodyValue);
     }
 
     private void validate(Review review) {
-        var constraintViolations = validator.validate(review);
-        if (constraintViolations.size() > 0) {
-            var errorMessage = constraintViolations
-                    .stream()
-                    .map(ConstraintViolation::getMessage)
-                    .sorted()
-                    .collect(Collectors.joining(","));
+        var errorMessage = violations(review);
+        if (errorMessage != null) {
             throw new ReviewDataException(errorMessage);
         }
     }
 
+    private String violations(Review review) {
+        var constraintViolations = validator.validate(review);
+        if (constraintViolations.isEmpty()) {
+            return null;
+        }
+        return constraintViolations
+                .stream()
+                .map(ConstraintViolation::getMessage)
+                .sorted()
+                .collect(Collectors.joining(","));
+    }
+
+    /**
+     * One review per NDJSON line, answered with one {@link ReviewBulkResult} per line in the same order.
+     * Valid reviews are group committed: written with one bulkWrite per batch and published to the
+     * review stream as a batch.
+     */
+    public Mono<ServerResponse> addReviews(ServerRequest request) {
+        var records = request.bodyToFlux(String.class)
+                .index()
+                .filter(line -> !line.getT2().isBlank())
+                .map(line -> parseBulkLine(line.getT1() + 1, line.getT2()));
+        var results = groupCommitBatches(records)
+                .concatMap(this::writeBulkBatch, 1);
+
+        return ServerResponse.ok()
+                .contentType(MediaType.APPLICATION_NDJSON)
+                .body(results, ReviewBulkResult.class);
+    }
+
+    // A batch closes once it holds bulkBatchSize reviews or at the next bulkBatchWindow tick. Ticks arriving
+    // while a write holds back demand are dropped, so a slow database slows the upload down instead of failing it.
+    private Flux<List<ReviewBulkResult>> groupCommitBatches(Flux<ReviewBulkResult> records) {
+        return records.publish(shared -> {
+            var ticks = Flux.interval(bulkBatchWindow)
+                    .onBackpressureDrop()
+                    .map(tick -> Optional.<ReviewBulkResult>empty())
+                    .takeUntilOther(shared.ignoreElements());
+            var batchCount = new AtomicInteger();
+            return Flux.merge(shared.map(Optional::of), ticks)
+                    .bufferUntil(item -> {
+                        if (item.isEmpty() || batchCount.incrementAndGet() == bulkBatchSize) {
+                            batchCount.set(0);
+                            return true;
+                        }
+                        return false;
+                    });
+        })
+                .map(items -> items.stream().flatMap(Optional::stream).collect(Collectors.toList()))
+                .filter(batch -> !batch.isEmpty());
+    }
+
+    private ReviewBulkResult parseBulkLine(long line, String json) {
+        Review review;
+        try {
+            review = objectMapper.readValue(json, Review.class);
+        } catch (JsonProcessingException e) {
+            return new ReviewBulkResult(line, null, false, null, "Malformed review: " + e.getOriginalMessage(), null);
+        }
+        var errorMessage = violations(review);
+        if (errorMessage != null) {
+            return new ReviewBulkResult(line, review.getReviewId(), false, null, errorMessage, null);
+        }
+        return new ReviewBulkResult(line, review.getReviewId(), true, null, null, review);
+    }
+
+    private Flux<ReviewBulkResult> writeBulkBatch(List<ReviewBulkResult> batch) {
+        var accepted = batch.stream()
+                .filter(ReviewBulkResult::isAccepted)
+                .collect(Collectors.toList());
+        if (accepted.isEmpty()) {
+            return Flux.fromIterable(batch);
+        }
+        // the repository assigns the missing ids, remember which reviews are plain inserts
+        var inserted = accepted.stream()
+                .map(result -> result.getReview().getReviewId() == null)
+                .collect(Collectors.toList());
+        var reviews = accepted.stream()
+                .map(ReviewBulkResult::getReview)
+                .collect(Collectors.toList());
+        // upserts may replace stored reviews, the summaries of the movies they leave are rebuilt too
+        var upsertIds = reviews.stream()
+                .map(Review::getReviewId)
+                .filter(Objects::nonNull)
+                .collect(Collectors.toList());
+        var previousReviews = upsertIds.isEmpty()
+                ? Mono.just(Map.<String, Review>of())
+                : reviewReactiveRepository.findAllById(upsertIds).collectMap(Review::getReviewId);
+        return previousReviews.flatMapMany(previousById -> reviewReactiveRepository.bulkWrite(reviews)
+                .doOnNext(writeResult -> completeBulkResults(accepted, inserted, writeResult.getUpserts(), List.of()))
+                .onErrorResume(MongoBulkWriteException.class, ex -> {
+                    completeBulkResults(accepted, inserted, ex.getWriteResult().getUpserts(), ex.getWriteErrors());
+                    return Mono.empty();
+                })
+                .then(Mono.defer(() -> applySummaryChanges(accepted, previousById)))
+                .then(Mono.fromRunnable(() -> publishAll(accepted)))
+                .thenMany(Flux.fromIterable(batch)));
+    }
+
+    // One summary update per movie of the batch for the inserted reviews. A replaced review was read before
+    // the bulkWrite and may have changed since, so the movies with one are rebuilt from the reviews instead.
+    private Mono<Void> applySummaryChanges(List<ReviewBulkResult> written, Map<String, Review> previousById) {
+        Set<Long> rebuilt = new LinkedHashSet<>();
+        written.stream()
+                .filter(result -> result.isAccepted() && result.getType() == EventType.UPDATED)
+                .forEach(result -> {
+                    rebuilt.add(result.getReview().getMovieInfoId());
+                    var previousReview = previousById.get(result.getReviewId());
+                    if (previousReview != null) {
+                        rebuilt.add(previousReview.getMovieInfoId());
+                    }
+                });
+        Map<Long, ReviewSummaryChange> changes = new LinkedHashMap<>();
+        written.stream()
+                .filter(result -> result.isAccepted() && !rebuilt.contains(result.getReview().getMovieInfoId()))
+                .forEach(result -> changes.computeIfAbsent(result.getReview().getMovieInfoId(), ReviewSummaryChange::new)
+                        .add(result.getReview().getRating()));
+        return Flux.fromIterable(changes.values())
+                .concatMap(this::applySummaryChange)
+                .thenMany(Flux.fromIterable(rebuilt).concatMap(this::rebuildSummary))
+                .then();
+    }
+
+    // The review is written first, a failed summary update is rebuilt from the reviews rather than failing
+    // a write that already happened. A summary still off after that is fixed by rebuildReviewSummary.
+    private Mono<Void> applySummaryChange(ReviewSummaryChange change) {
+        return reviewSummaryRepository.apply(change)
+                .then()
+                .onErrorResume(ex -> {
+                    log.warn("Summary of movie {} not updated, rebuilding it : {}", change.getMovieInfoId(), ex.getMessage());
+                    return rebuildSummary(change.getMovieInfoId());
+                });
+    }
+
+    private Mono<Void> rebuildSummary(Long movieInfoId) {
+        return reviewSummaryRepository.rebuild(movieInfoId)
+                .then()
+                .onErrorResume(ex -> {
+                    log.error("Summary of movie {} not rebuilt, it is off until POST /v1/reviews/summary/{}/rebuild : {}",
+                            movieInfoId, movieInfoId, ex.getMessage());
+                    return Mono.empty();
+                });
+    }
+
+    private void completeBulkResults(List<ReviewBulkResult> written, List<Boolean> inserted,
+                                     List<BulkWriteUpsert> upserts, List<BulkWriteError> writeErrors) {
+        var upserted = upserts.stream()
+                .map(BulkWriteUpsert::getIndex)
+                .collect(Collectors.toSet());
+        var errors = writeErrors.stream()
+                .collect(Collectors.toMap(BulkWriteError::getIndex, BulkWriteError::getMessage));
+        for (int i = 0; i < written.size(); i++) {
+            var result = written.get(i);
+            var review = result.getReview();
+            result.setReviewId(review.getReviewId());
+            if (errors.containsKey(i)) {
+                result.setAccepted(false);
+                result.setError(errors.get(i));
+                result.setReview(null);
+            } else if (inserted.get(i)) {
+                result.setType(EventType.CREATED);
+            } else if (upserted.contains(i)) {
+                result.setType(EventType.CREATED);
+                review.setVersion(1L);
+            } else {
+                // the stored version is not returned by an update
+                result.setType(EventType.UPDATED);
+                review.setVersion(null);
+            }
+        }
+    }
+
     public Mono<ServerResponse> getReviews(ServerRequest request) {
         var movieInfoId = request.queryParam("movieInfoId");
 
         if (movieInfoId.isPresent()) {
             var reviewsFlux = reviewReactiveRepository.findReviewsByMovieInfoId(Long.valueOf(movieInfoId.get()));
             return buildReviewsResponse(reviewsFlux);
-        } else {
-            var reviewsFlux = reviewReactiveRepository.findAll();
-            return buildReviewsResponse(reviewsFlux);
         }
+        var limit = request.queryParam("limit");
+        var next = request.queryParam("next");
+        if (limit.isPresent() || next.isPresent()) {
+            return getReviewsPage(limit.map(this::parseLimit).orElse(maxLimit), next.orElse(null));
+        }
+        return getAllReviewsUnpaged();
+
+    }
+
+    private Mono<ServerResponse> getReviewsPage(int limit, String next) {
+        if (limit < 1 || limit > maxLimit) {
+            return Mono.error(new ReviewDataException("limit must be between 1 and " + maxLimit + ", received " + limit));
+        }
+        // the extra review only tells whether another page follows
+        return Flux.defer(() -> reviewReactiveRepository.findAllAfterId(next == null ? null : decodePageToken(next), limit + 1))
+                .collectList()
+                .flatMap(reviews -> {
+                    var response = ServerResponse.ok();
+                    if (reviews.size() <= limit) {
+                        return response.bodyValue(reviews);
+                    }
+                    var page = reviews.subList(0, limit);
+                    var nextUri = UriComponentsBuilder.fromPath("/v1/reviews")
+                            .queryParam("limit", limit)
+                            .queryParam("next", encodePageToken(page.get(limit - 1).getReviewId()))
+                            .build();
+                    return response.header(HttpHeaders.LINK, "<" + nextUri + ">; rel=\"next\"")
+                            .bodyValue(List.copyOf(page));
+                });
+    }
+
+    // reads one review past the threshold, so a large collection is refused without being streamed
+    private Mono<ServerResponse> getAllReviewsUnpaged() {
+        return reviewReactiveRepository.findAll()
+                .take(maxUnpagedResults + 1)
+                .collectList()
+                .flatMap(reviews -> reviews.size() > maxUnpagedResults
+                        ? Mono.error(new ReviewDataException(
+                                "More than " + maxUnpagedResults + " reviews, page through them with limit and next"))
+                        : ServerResponse.ok().bodyValue(reviews));
+    }
+
+    public Mono<ServerResponse> getReviewSummary(ServerRequest request) {
+        var movieInfoId = parseMovieInfoId(request.pathVariable("movieInfoId"));
+        var topReviews = request.queryParam("topReviews")
+                .map(this::parseTopReviews)
+                .orElse(0);
+        var summaryMono = reviewSummaryRepository.findById(movieInfoId)
+                .defaultIfEmpty(new ReviewSummary(movieInfoId));
+        if (topReviews == 0) {
+            return ServerResponse.ok().body(summaryMono, ReviewSummary.class);
+        }
+
+        // best rating first, served by the movieInfoId_rating index
+        var pageable = PageRequest.of(0, topReviews, Sort.by(Sort.Order.desc("rating")));
+        var topReviewsMono = reviewReactiveRepository.findReviewsByMovieInfoId(movieInfoId, pageable)
+                .collectList();
+        var summaryWithTopReviews = Mono.zip(summaryMono, topReviewsMono)
+                .map(tuple -> {
+                    tuple.getT1().setTopReviews(tuple.getT2());
+                    return tuple.getT1();
+                });
+        return ServerResponse.ok().body(summaryWithTopReviews, ReviewSummary.class);
+    }
+
+    public Mono<ServerResponse> rebuildReviewSummary(ServerRequest request) {
+        var movieInfoId = parseMovieInfoId(request.pathVariable("movieInfoId"));
+        return ServerResponse.ok().body(reviewSummaryRepository.rebuild(movieInfoId), ReviewSummary.class);
+    }
+
+    private int parseTopReviews(String topReviews) {
+        int top;
+        try {
+            top = Integer.parseInt(topReviews);
+        } catch (NumberFormatException ex) {
+            throw new ReviewDataException("topReviews must be numeric, received " + topReviews);
+        }
+        if (top < 0 || top > maxTopReviews) {
+            throw new ReviewDataException("topReviews must be between 0 and " + maxTopReviews + ", received " + top);
+        }
+        return top;
+    }
+
+    public Mono<ServerResponse> getReviewsGroupedByMovie(ServerRequest request) {
+        var movieInfoIds = request.queryParam("movieInfoIds")
+                .map(this::parseMovieInfoIds)
+                .orElseThrow(() -> new ReviewDataException("movieInfoIds must be present"));
+        var limitPerMovie = request.queryParam("limitPerMovie")
+                .map(this::parseLimitPerMovie);
+
+        // one $in query sorted by movie and best rating first, so each movie's reviews arrive contiguously
+        var groupsFlux = limitPerMovie
+                .map(limit -> reviewReactiveRepository.findTopReviewsGroupedByMovie(movieInfoIds, limit))
+                .orElseGet(() -> reviewReactiveRepository.findReviewsByMovieInfoIdIn(movieInfoIds,
+                                Sort.by(Sort.Order.asc("movieInfoId"), Sort.Order.desc("rating")))
+                        .bufferUntilChanged(Review::getMovieInfoId)
+                        .map(reviews -> new MovieReviews(reviews.get(0).getMovieInfoId(), reviews)));
+
+        return ServerResponse.ok().body(groupsFlux, MovieReviews.class);
+    }
+
+    private int parseLimitPerMovie(String limitPerMovie) {
+        int limit;
+        try {
+            limit = Integer.parseInt(limitPerMovie);
+        } catch (NumberFormatException ex) {
+            throw new ReviewDataException("limitPerMovie must be numeric, received " + limitPerMovie);
+        }
+        if (limit < 1 || limit > batchMaxLimitPerMovie) {
+            throw new ReviewDataException("limitPerMovie must be between 1 and " + batchMaxLimitPerMovie
+                    + ", received " + limit);
+        }
+        return limit;
+    }
 
+    private LinkedHashSet<Long> parseMovieInfoIds(String ids) {
+        var movieInfoIds = Arrays.stream(ids.split(","))
+                .map(String::trim)
+                .map(this::parseMovieInfoId)
+                .collect(Collectors.toCollection(LinkedHashSet::new));
+        if (movieInfoIds.size() > batchMaxMovieInfoIds) {
+            throw new ReviewDataException("At most " + batchMaxMovieInfoIds
+                    + " movieInfoIds can be requested at once, received " + movieInfoIds.size());
+        }
+        return movieInfoIds;
+    }
+
+    private Double parseMinRating(String minRating) {
+        try {
+            return Double.valueOf(minRating);
+        } catch (NumberFormatException ex) {
+            throw new ReviewDataException("minRating must be numeric, received " + minRating);
+        }
+    }
+
+    private int parseLimit(String limit) {
+        try {
+            return Integer.parseInt(limit);
+        } catch (NumberFormatException ex) {
+            throw new ReviewDataException("limit must be numeric, received " + limit);
+        }
+    }
+
+    private String encodePageToken(String lastReviewId) {
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(lastReviewId.getBytes(StandardCharsets.UTF_8));
+    }
+
+    private String decodePageToken(String next) {
+        try {
+            return new String(Base64.getUrlDecoder().decode(next), StandardCharsets.UTF_8);
+        } catch (IllegalArgumentException ex) {
+            throw new ReviewDataException("Invalid next token: " + next);
+        }
+    }
+
+    private Long parseMovieInfoId(String movieInfoId) {
+        try {
+            return Long.valueOf(movieInfoId);
+        } catch (NumberFormatException ex) {
+            throw new ReviewDataException("movieInfoIds must be numeric, received " + movieInfoId);
+        }
     }
 
     private Mono<ServerResponse> buildReviewsResponse(Flux<Review> reviewsFlux) {
@@ -71,37 +462,84 @@ public class ReviewHandler {
 
     public Mono<ServerResponse> updateReview(ServerRequest request) {
         var reviewId = request.pathVariable("id");
-        var existingReview = reviewReactiveRepository.findById(reviewId)
-                .switchIfEmpty(Mono.error(new ReviewNotFoundException("Review not found for the given id " + reviewId)));
-
-        return existingReview
-                .flatMap(review -> request.bodyToMono(Review.class)
-                        .map(reqReview -> {
-                            review.setComment(reqReview.getComment());
-                            review.setRating(reqReview.getRating());
-                            return review;
-                        })
-                        .flatMap(reviewReactiveRepository::save)
-                        .flatMap(savedReview -> ServerResponse.ok().bodyValue(savedReview))
-                );
-//                .switchIfEmpty(ServerResponse.notFound().build());
+
+        return request.bodyToMono(Review.class)
+                .flatMap(reqReview -> reviewReactiveRepository.findAndUpdate(reviewId, reqReview)
+                        .switchIfEmpty(Mono.defer(() -> notUpdated(reviewId, reqReview.getVersion())))
+                        .flatMap(previousReview -> {
+                            var version = previousReview.getVersion() == null ? 1L : previousReview.getVersion() + 1;
+                            var savedReview = new Review(reviewId, previousReview.getMovieInfoId(),
+                                    reqReview.getComment(), reqReview.getRating(), version);
+                            var change = new ReviewSummaryChange(previousReview.getMovieInfoId())
+                                    .remove(previousReview.getRating())
+                                    .add(savedReview.getRating());
+                            return applySummaryChange(change).thenReturn(savedReview);
+                        }))
+                .doOnNext(savedReview -> publish(EventType.UPDATED, savedReview))
+                .flatMap(savedReview -> ServerResponse.ok().bodyValue(savedReview));
+    }
+
+    // the conditional update matched nothing, tells a stale version apart from a missing review
+    private Mono<Review> notUpdated(String reviewId, Long expectedVersion) {
+        var notFound = new ReviewNotFoundException("Review not found for the given id " + reviewId);
+        if (expectedVersion == null) {
+            return Mono.error(notFound);
+        }
+        return reviewReactiveRepository.existsById(reviewId)
+                .flatMap(exists -> Mono.error(exists
+                        ? new ReviewVersionConflictException("Review " + reviewId
+                                + " was modified concurrently, version " + expectedVersion + " is stale")
+                        : notFound));
     }
 
     public Mono<ServerResponse> deleteReview(ServerRequest request) {
         var reviewId = request.pathVariable("id");
-        var existingReview = reviewReactiveRepository.findById(reviewId);
 
-        return existingReview
-                .flatMap(review -> reviewReactiveRepository.deleteById(reviewId)
-                        .then(ServerResponse.noContent().build()));
+        // the removed document gives the event its movieInfoId and version
+        return reviewReactiveRepository.findAndDelete(reviewId)
+                .switchIfEmpty(Mono.error(new ReviewNotFoundException("Review not found for the given id " + reviewId)))
+                .flatMap(deletedReview -> applySummaryChange(new ReviewSummaryChange(deletedReview.getMovieInfoId())
+                        .remove(deletedReview.getRating()))
+                        .thenReturn(deletedReview))
+                .doOnNext(deletedReview -> publish(EventType.DELETED, deletedReview))
+                .flatMap(deletedReview -> ServerResponse.noContent().build());
     }
 
+    /**
+     * Only the reviews of the watched movies are sent, all movies when movieInfoId is absent.
+     * With reviewsStream.changeStream.enabled, a delete only carries the review id (MongoDB change
+     * streams have no pre-image before 6.0), so DELETED events only reach the subscribers of all movies.
+     * Delivery is then at least once: after a restart the changes since the last saved resume token
+     * are sent again, skip the events whose reviewId and version were already received.
+     */
     public Mono<ServerResponse> getReviewsStream(ServerRequest request) {
+        var movieInfoIds = request.queryParam("movieInfoId")
+                .map(this::parseMovieInfoIds)
+                .orElseGet(LinkedHashSet::new);
+        var minRating = request.queryParam("minRating")
+                .map(this::parseMinRating)
+                .orElse(null);
 
         return ServerResponse.ok()
                 .contentType(MediaType.APPLICATION_NDJSON)
-                .body(reviewsInfoSink.asFlux(), Review.class)
+                .body(reviewStream.subscribe(movieInfoIds, minRating), ReviewEvent.class)
                 .log();
     }
 
+    private void publish(EventType type, Review review) {
+        // with the change stream every write reaches the review stream from MongoDB, on every instance
+        if (!changeStreamEnabled) {
+            reviewStream.publish(ReviewEvent.of(type, review));
+        }
+    }
+
+    private void publishAll(List<ReviewBulkResult> results) {
+        if (!changeStreamEnabled) {
+            reviewStream.publishAll(results.stream()
+                    .filter(ReviewBulkResult::isAccepted)
+                    .map(result -> ReviewEvent.of(result.getType(), result.getReview()))
+                    .collect(Collectors.toList()));
+        }
+    }
+
 }
@@ -0,0 +1,44 @@
+package com.reactivespring.repository;
+
+import com.mongodb.bulk.BulkWriteResult;
+import com.reactivespring.domain.MovieReviews;
+import com.reactivespring.domain.Review;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.util.Collection;
+import java.util.List;
+
+public interface ReviewReactiveRepositoryCustom {
+
+    /**
+     * Reviews in {@code _id} order, starting after {@code afterId} (from the first one when null).
+     */
+    Flux<Review> findAllAfterId(String afterId, int limit);
+
+    /**
+     * The {@code limitPerMovie} best rated reviews of each of the movies that have reviews, in movieInfoId order,
+     * from a single aggregation. Every review of the matched movies is grouped before the cap is applied.
+     */
+    Flux<MovieReviews> findTopReviewsGroupedByMovie(Collection<Long> movieInfoIds, int limitPerMovie);
+
+    /**
+     * Overwrites comment and rating and bumps the version in one findAndModify, returning the document as it was
+     * before the update so callers can tell what changed. A non null {@code changes.version} must match the
+     * stored one, otherwise nothing is updated.
+     */
+    Mono<Review> findAndUpdate(String id, Review changes);
+
+    /**
+     * Removes the review in one findAndRemove, returning the deleted document or empty when there was none.
+     */
+    Mono<Review> findAndDelete(String id);
+
+    /**
+     * Writes the reviews with one unordered bulkWrite. The ones without an id get a new one and are inserted
+     * with version 0, the others are upserted and their version is bumped. Failed writes surface as a
+     * {@link com.mongodb.MongoBulkWriteException} whose indexes refer to {@code reviews}.
+     */
+    Mono<BulkWriteResult> bulkWrite(List<Review> reviews);
+
+}
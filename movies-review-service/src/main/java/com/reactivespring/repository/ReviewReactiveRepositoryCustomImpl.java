@@ -0,0 +1,131 @@
+package com.reactivespring.repository;
+
+import com.mongodb.MongoBulkWriteException;
+import com.mongodb.bulk.BulkWriteResult;
+import com.mongodb.client.model.BulkWriteOptions;
+import com.mongodb.client.model.InsertOneModel;
+import com.mongodb.client.model.UpdateOneModel;
+import com.mongodb.client.model.UpdateOptions;
+import com.mongodb.client.model.WriteModel;
+import com.reactivespring.domain.MovieReviews;
+import com.reactivespring.domain.Review;
+import org.bson.Document;
+import org.bson.types.ObjectId;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.mongodb.core.FindAndModifyOptions;
+import org.springframework.data.mongodb.core.ReactiveMongoTemplate;
+import org.springframework.data.mongodb.core.aggregation.Aggregation;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+import org.springframework.data.mongodb.core.schema.JsonSchemaObject;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.util.Collection;
+import java.util.List;
+import java.util.stream.Collectors;
+
+import static org.springframework.data.mongodb.core.aggregation.Aggregation.group;
+import static org.springframework.data.mongodb.core.aggregation.Aggregation.match;
+import static org.springframework.data.mongodb.core.aggregation.Aggregation.newAggregation;
+import static org.springframework.data.mongodb.core.aggregation.Aggregation.newAggregationOptions;
+import static org.springframework.data.mongodb.core.aggregation.Aggregation.project;
+import static org.springframework.data.mongodb.core.aggregation.Aggregation.sort;
+import static org.springframework.data.mongodb.core.query.Criteria.where;
+import static org.springframework.data.mongodb.core.query.Query.query;
+
+public class ReviewReactiveRepositoryCustomImpl implements ReviewReactiveRepositoryCustom {
+
+    private ReactiveMongoTemplate reactiveMongoTemplate;
+
+    public ReviewReactiveRepositoryCustomImpl(ReactiveMongoTemplate reactiveMongoTemplate) {
+        this.reactiveMongoTemplate = reactiveMongoTemplate;
+    }
+
+    @Override
+    public Flux<Review> findAllAfterId(String afterId, int limit) {
+        var query = afterId == null ? new Query() : query(afterIdCriteria(afterId));
+        query.with(Sort.by("_id")).limit(limit);
+        return reactiveMongoTemplate.find(query, Review.class);
+    }
+
+    @Override
+    public Flux<MovieReviews> findTopReviewsGroupedByMovie(Collection<Long> movieInfoIds, int limitPerMovie) {
+        var aggregation = newAggregation(Review.class,
+                match(where("movieInfoId").in(movieInfoIds)),
+                // served by the movieInfoId_rating index, $push keeps each movie's reviews best rated first
+                sort(Sort.by(Sort.Order.asc("movieInfoId"), Sort.Order.desc("rating"))),
+                group("movieInfoId").push(Aggregation.ROOT).as("reviews"),
+                project().and("reviews").slice(limitPerMovie).as("reviews").and("movieInfoId").previousOperation(),
+                sort(Sort.by("movieInfoId")))
+                .withOptions(newAggregationOptions().allowDiskUse(true).build());
+        return reactiveMongoTemplate.aggregate(aggregation, MovieReviews.class);
+    }
+
+    @Override
+    public Mono<Review> findAndUpdate(String id, Review changes) {
+        var criteria = where("_id").is(id);
+        if (changes.getVersion() != null) {
+            criteria.and("version").is(changes.getVersion());
+        }
+        var update = new Update()
+                .set("comment", changes.getComment())
+                .set("rating", changes.getRating())
+                .inc("version", 1);
+        return reactiveMongoTemplate.findAndModify(query(criteria), update,
+                FindAndModifyOptions.options().returnNew(false), Review.class);
+    }
+
+    @Override
+    public Mono<Review> findAndDelete(String id) {
+        return reactiveMongoTemplate.findAndRemove(query(where("_id").is(id)), Review.class);
+    }
+
+    @Override
+    public Mono<BulkWriteResult> bulkWrite(List<Review> reviews) {
+        var writeModels = reviews.stream()
+                .map(this::writeModel)
+                .collect(Collectors.toList());
+        return reactiveMongoTemplate.execute(Review.class,
+                        collection -> collection.bulkWrite(writeModels, new BulkWriteOptions().ordered(false)))
+                .next()
+                // the template wraps it into a DataAccessException, callers need the per index write errors
+                .onErrorMap(ex -> ex.getCause() instanceof MongoBulkWriteException, Throwable::getCause);
+    }
+
+    private WriteModel<Document> writeModel(Review review) {
+        if (review.getReviewId() == null) {
+            review.setReviewId(new ObjectId().toHexString());
+            review.setVersion(0L);
+            return new InsertOneModel<>(toDocument(review));
+        }
+        var fields = toDocument(review);
+        var id = fields.remove("_id");
+        fields.remove("version");
+        // the line is the whole review, a missing comment or rating clears the stored one as PUT does
+        fields.putIfAbsent("comment", null);
+        fields.putIfAbsent("rating", null);
+        var update = new Document("$set", fields)
+                .append("$inc", new Document("version", 1));
+        return new UpdateOneModel<>(new Document("_id", id), update, new UpdateOptions().upsert(true));
+    }
+
+    private Document toDocument(Review review) {
+        var document = new Document();
+        reactiveMongoTemplate.getConverter().write(review, document);
+        return document;
+    }
+
+    // Generated ids are stored as ObjectIds and client supplied ones as strings. MongoDB sorts strings
+    // before ObjectIds and $gt only compares within a type, so after a string id the ObjectIds still follow.
+    private Criteria afterIdCriteria(String afterId) {
+        if (ObjectId.isValid(afterId)) {
+            return where("_id").gt(new ObjectId(afterId));
+        }
+        return new Criteria().orOperator(
+                where("_id").gt(afterId),
+                where("_id").type(JsonSchemaObject.Type.OBJECT_ID));
+    }
+
+}
@@ -0,0 +1,30 @@
+package com.reactivespring.repository;
+
+import com.reactivespring.domain.ReviewSummary;
+import com.reactivespring.domain.ReviewSummaryChange;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+public interface ReviewSummaryRepositoryCustom {
+
+    /**
+     * Applies the change with one findAndModify. A summary it has to create is rebuilt from the reviews
+     * right away, the movie may have reviews written before summaries existed.
+     * Must run after the reviews collection reflects the change, a removed bound is read back from it
+     * and only written while no other write changed the summary.
+     */
+    Mono<ReviewSummary> apply(ReviewSummaryChange change);
+
+    /**
+     * Recomputes the summary from the reviews of the movie, for the changes that could not be applied
+     * incrementally. Only written if no other write changed the summary in the meantime, otherwise it
+     * is recomputed.
+     */
+    Mono<ReviewSummary> rebuild(Long movieInfoId);
+
+    /**
+     * Rebuilds the summaries of the movies that have reviews but no summary, one movie at a time.
+     */
+    Flux<ReviewSummary> rebuildMissing();
+
+}
@@ -0,0 +1,152 @@
+package com.reactivespring.repository;
+
+import com.reactivespring.domain.Review;
+import com.reactivespring.domain.ReviewSummary;
+import com.reactivespring.domain.ReviewSummaryChange;
+import lombok.extern.slf4j.Slf4j;
+import org.bson.Document;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.mongodb.core.FindAndModifyOptions;
+import org.springframework.data.mongodb.core.ReactiveMongoTemplate;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Function;
+
+import static org.springframework.data.mongodb.core.query.Criteria.where;
+import static org.springframework.data.mongodb.core.query.Query.query;
+
+@Slf4j
+public class ReviewSummaryRepositoryCustomImpl implements ReviewSummaryRepositoryCustom {
+
+    // reads of a summary that another write keeps changing, before giving up on the update
+    private static final int MAX_ATTEMPTS = 5;
+
+    private ReactiveMongoTemplate reactiveMongoTemplate;
+
+    public ReviewSummaryRepositoryCustomImpl(ReactiveMongoTemplate reactiveMongoTemplate) {
+        this.reactiveMongoTemplate = reactiveMongoTemplate;
+    }
+
+    @Override
+    public Mono<ReviewSummary> apply(ReviewSummaryChange change) {
+        return increment(change)
+                .flatMap(summary -> {
+                    // created by this write, the reviews written before the summary existed are not in it yet
+                    if (summary.getRevision() == 1) {
+                        return rebuild(summary, MAX_ATTEMPTS);
+                    }
+                    return change.removesBound(summary) ? refreshBounds(summary, MAX_ATTEMPTS) : Mono.just(summary);
+                });
+    }
+
+    @Override
+    public Mono<ReviewSummary> rebuild(Long movieInfoId) {
+        // the empty change creates a missing summary and gives the revision to write against
+        return increment(new ReviewSummaryChange(movieInfoId))
+                .flatMap(summary -> rebuild(summary, MAX_ATTEMPTS));
+    }
+
+    @Override
+    public Flux<ReviewSummary> rebuildMissing() {
+        return reactiveMongoTemplate.findDistinct(new Query(), "movieInfoId", Review.class, Long.class)
+                .filterWhen(movieInfoId -> reactiveMongoTemplate.exists(query(where("_id").is(movieInfoId)), ReviewSummary.class)
+                        .map(exists -> !exists))
+                .concatMap(this::rebuild);
+    }
+
+    private Mono<ReviewSummary> increment(ReviewSummaryChange change) {
+        var update = new Update()
+                .inc("count", change.getCount())
+                .inc("ratingCount", change.getRatingCount())
+                .inc("ratingSum", change.getRatingSum())
+                .inc("revision", 1);
+        change.getHistogram().forEach((bucket, delta) -> {
+            if (delta != 0) {
+                update.inc("histogram." + bucket, delta);
+            }
+        });
+        if (change.getAddedMin() != null) {
+            update.min("minRating", change.getAddedMin())
+                    .max("maxRating", change.getAddedMax());
+        }
+        return reactiveMongoTemplate.findAndModify(query(where("_id").is(change.getMovieInfoId())), update,
+                FindAndModifyOptions.options().returnNew(true).upsert(true), ReviewSummary.class);
+    }
+
+    // both ends of the movieInfoId_rating index, a couple of index entries whatever the number of reviews
+    private Mono<ReviewSummary> refreshBounds(ReviewSummary summary, int attempts) {
+        var rated = where("movieInfoId").is(summary.getMovieInfoId()).and("rating").ne(null);
+        var lowest = reactiveMongoTemplate.findOne(query(rated).with(Sort.by(Sort.Direction.ASC, "rating")), Review.class);
+        var highest = reactiveMongoTemplate.findOne(query(rated).with(Sort.by(Sort.Direction.DESC, "rating")), Review.class);
+        return Mono.zip(lowest, highest)
+                .map(bounds -> new Update().set("minRating", bounds.getT1().getRating()).set("maxRating", bounds.getT2().getRating()))
+                .defaultIfEmpty(new Update().unset("minRating").unset("maxRating"))
+                .flatMap(update -> updateIfUnchanged(summary, update))
+                .switchIfEmpty(Mono.defer(() -> changedMeanwhile(summary, attempts, latest -> refreshBounds(latest, attempts - 1))));
+    }
+
+    // one group per distinct rating, reviews without a rating in the null group
+    private Mono<ReviewSummary> rebuild(ReviewSummary summary, int attempts) {
+        var pipeline = List.of(
+                new Document("$match", new Document("movieInfoId", summary.getMovieInfoId())),
+                new Document("$group", new Document("_id", "$rating").append("count", new Document("$sum", 1))));
+        return reactiveMongoTemplate.execute(Review.class, collection -> collection.aggregate(pipeline))
+                .collectList()
+                .flatMap(ratings -> updateIfUnchanged(summary, fullUpdate(ratings)))
+                .switchIfEmpty(Mono.defer(() -> changedMeanwhile(summary, attempts, latest -> rebuild(latest, attempts - 1))));
+    }
+
+    private Update fullUpdate(List<Document> ratings) {
+        long count = 0;
+        long ratingCount = 0;
+        double ratingSum = 0;
+        Double minRating = null;
+        Double maxRating = null;
+        Map<String, Long> histogram = new HashMap<>();
+        for (var group : ratings) {
+            var reviews = ((Number) group.get("count")).longValue();
+            count += reviews;
+            if (group.get("_id") instanceof Number) {
+                var rating = ((Number) group.get("_id")).doubleValue();
+                ratingCount += reviews;
+                ratingSum += rating * reviews;
+                minRating = minRating == null ? rating : Math.min(minRating, rating);
+                maxRating = maxRating == null ? rating : Math.max(maxRating, rating);
+                histogram.merge(ReviewSummaryChange.bucket(rating), reviews, Long::sum);
+            }
+        }
+        var update = new Update()
+                .set("count", count)
+                .set("ratingCount", ratingCount)
+                .set("ratingSum", ratingSum)
+                .set("histogram", histogram);
+        if (minRating == null) {
+            return update.unset("minRating").unset("maxRating");
+        }
+        return update.set("minRating", minRating).set("maxRating", maxRating);
+    }
+
+    // empty when another write changed the summary since it was read
+    private Mono<ReviewSummary> updateIfUnchanged(ReviewSummary summary, Update update) {
+        var unchanged = query(where("_id").is(summary.getMovieInfoId()).and("revision").is(summary.getRevision()));
+        return reactiveMongoTemplate.findAndModify(unchanged, update.inc("revision", 1),
+                FindAndModifyOptions.options().returnNew(true), ReviewSummary.class);
+    }
+
+    private Mono<ReviewSummary> changedMeanwhile(ReviewSummary stale, int attempts,
+                                                 Function<ReviewSummary, Mono<ReviewSummary>> retry) {
+        var latest = reactiveMongoTemplate.findById(stale.getMovieInfoId(), ReviewSummary.class);
+        if (attempts <= 1) {
+            log.warn("Summary of movie {} kept changing, left as is after {} attempts", stale.getMovieInfoId(), MAX_ATTEMPTS);
+            return latest;
+        }
+        return latest.flatMap(retry);
+    }
+
+}
@@ -3,9 +3,11 @@ package com.reactivespring.router;
 import com.reactivespring.handler.ReviewHandler;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
+import org.springframework.http.MediaType;
 import org.springframework.web.reactive.function.server.RouterFunction;
 import org.springframework.web.reactive.function.server.ServerResponse;
 
+import static org.springframework.web.reactive.function.server.RequestPredicates.contentType;
 import static org.springframework.web.reactive.function.server.RequestPredicates.path;
 import static org.springframework.web.reactive.function.server.RouterFunctions.route;
 
@@ -19,7 +21,11 @@ public class ReviewRouter {
                 .GET("/v1/helloworld", (request -> ServerResponse.ok().bodyValue("helloworld")))
                 .nest(path("/v1/reviews"), builder -> {
                     builder.POST("", reviewHandler::addReview)
+                            .POST("/bulk", contentType(MediaType.APPLICATION_NDJSON), reviewHandler::addReviews)
                             .GET("", reviewHandler::getReviews)
+                            .GET("/grouped", reviewHandler::getReviewsGroupedByMovie)
+                            .GET("/summary/{movieInfoId}", reviewHandler::getReviewSummary)
+                            .POST("/summary/{movieInfoId}/rebuild", reviewHandler::rebuildReviewSummary)
                             .PUT("/{id}", reviewHandler::updateReview)
                             .DELETE("/{id}", reviewHandler::deleteReview)
                             .GET("/stream", reviewHandler::getReviewsStream);
@@ -0,0 +1,195 @@
+package com.reactivespring.stream;
+
+import com.mongodb.MongoServerException;
+import com.mongodb.client.model.changestream.FullDocument;
+import com.reactivespring.domain.EventType;
+import com.reactivespring.domain.Review;
+import com.reactivespring.domain.ReviewEvent;
+import com.reactivespring.domain.StreamResumeToken;
+import com.reactivespring.repository.StreamResumeTokenRepository;
+import lombok.extern.slf4j.Slf4j;
+import org.bson.BsonDocument;
+import org.bson.BsonValue;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.data.mongodb.core.ChangeStreamEvent;
+import org.springframework.data.mongodb.core.ReactiveMongoTemplate;
+import org.springframework.stereotype.Component;
+import reactor.core.Disposable;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.util.retry.Retry;
+
+import javax.annotation.PreDestroy;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Optional;
+
+/**
+ * Feeds {@link ReviewStream} from the MongoDB change stream of the review collection, so every
+ * instance publishes the inserts, updates and deletes written through any instance. The resume token is saved
+ * periodically under this instance's own key and used to resume after a restart; when the oplog no
+ * longer holds it the stream restarts from the current changes.
+ * <p>
+ * Resuming replays the changes since the last saved token. The ones this instance already published
+ * are skipped by document id and version; after a restart nothing is remembered, so the replayed
+ * inserts and updates of the last {@code resumeTokenSaveInterval} are published again, once per
+ * document with its current version, and the replayed deletes too.
+ */
+@Component
+@ConditionalOnProperty(name = "reviewsStream.changeStream.enabled", havingValue = "true")
+@Slf4j
+public class ReviewChangeStreamListener {
+
+    static final String STREAM_NAME = "review";
+
+    // ChangeStreamHistoryLost and ChangeStreamFatalError
+    private static final int HISTORY_LOST = 286;
+    private static final int FATAL_ERROR = 280;
+
+    private ReactiveMongoTemplate reactiveMongoTemplate;
+    private StreamResumeTokenRepository streamResumeTokenRepository;
+    private ReviewStream reviewStream;
+
+    @Value("${reviewsStream.changeStream.resumeTokenSaveInterval}")
+    private Duration resumeTokenSaveInterval;
+
+    @Value("${spring.application.name}")
+    private String applicationName;
+
+    @Value("${reviewsStream.changeStream.instanceId}")
+    private String instanceId;
+
+    @Value("${reviewsStream.changeStream.publishedVersionsSize}")
+    private int publishedVersionsSize;
+
+    // last version published per document id, only touched by the change stream subscription
+    private Map<String, Long> publishedVersions = new LinkedHashMap<>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, Long> eldest) {
+            return size() > publishedVersionsSize;
+        }
+    };
+
+    private Disposable subscription;
+
+    public ReviewChangeStreamListener(ReactiveMongoTemplate reactiveMongoTemplate,
+                                      StreamResumeTokenRepository streamResumeTokenRepository,
+                                      ReviewStream reviewStream) {
+        this.reactiveMongoTemplate = reactiveMongoTemplate;
+        this.streamResumeTokenRepository = streamResumeTokenRepository;
+        this.reviewStream = reviewStream;
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void subscribe() {
+        subscription = Flux.defer(this::followChanges)
+                .onErrorResume(this::isHistoryLost, ex -> {
+                    log.warn("Resume token of the {} change stream is no longer in the oplog, restarting from now", STREAM_NAME);
+                    return streamResumeTokenRepository.deleteById(resumeTokenId()).then(Mono.error(ex));
+                })
+                .doOnError(ex -> log.warn("{} change stream failed, resuming : {}", STREAM_NAME, ex.getMessage()))
+                .retryWhen(Retry.backoff(Long.MAX_VALUE, Duration.ofSeconds(1))
+                        .maxBackoff(Duration.ofSeconds(30)))
+                .subscribe();
+    }
+
+    @PreDestroy
+    public void dispose() {
+        if (subscription != null) {
+            subscription.dispose();
+        }
+    }
+
+    private Flux<StreamResumeToken> followChanges() {
+        return streamResumeTokenRepository.findById(resumeTokenId())
+                .map(resumeToken -> Optional.of(BsonDocument.parse(resumeToken.getToken())))
+                .defaultIfEmpty(Optional.empty())
+                .flatMapMany(resumeToken -> {
+                    log.info("Following the {} change stream {}", STREAM_NAME,
+                            resumeToken.isPresent() ? "from the saved resume token" : "from now");
+                    return reactiveMongoTemplate.changeStream(Review.class)
+                            .withOptions(options -> {
+                                options.fullDocumentLookup(FullDocument.UPDATE_LOOKUP);
+                                resumeToken.ifPresent(options::resumeAfter);
+                            })
+                            .listen();
+                })
+                .doOnNext(this::publish)
+                .map(ChangeStreamEvent::getResumeToken)
+                // at least once : the changes since the last saved token are published again after a restart
+                .sample(resumeTokenSaveInterval)
+                .concatMap(this::saveResumeToken);
+    }
+
+    private void publish(ChangeStreamEvent<Review> event) {
+        switch (event.getOperationType()) {
+            case INSERT:
+                if (!alreadyPublished(event.getBody().getReviewId(), event.getBody().getVersion())) {
+                    reviewStream.publish(ReviewEvent.of(EventType.CREATED, event.getBody()));
+                }
+                break;
+            case UPDATE:
+            case REPLACE:
+                // the looked up document is missing when it was deleted in the meantime, the delete follows
+                if (event.getBody() != null && !alreadyPublished(event.getBody().getReviewId(), event.getBody().getVersion())) {
+                    reviewStream.publish(ReviewEvent.of(EventType.UPDATED, event.getBody()));
+                }
+                break;
+            case DELETE:
+                var reviewId = reviewId(event);
+                // forgotten, a document inserted again under the same id starts over at version 0
+                publishedVersions.remove(reviewId);
+                // only the review id is known, so only the subscribers of all movies receive it, see getReviewsStream
+                reviewStream.publish(new ReviewEvent(EventType.DELETED, reviewId, null, null, Instant.now(), null));
+                break;
+            default:
+                log.debug("Ignoring {} event of the {} change stream", event.getOperationType(), STREAM_NAME);
+        }
+    }
+
+    // the looked up document of an update carries its current version, so the replays of an update
+    // already published, and of the ones before it, come with a version already seen
+    private boolean alreadyPublished(String id, Long version) {
+        if (id == null || version == null) {
+            return false;
+        }
+        var published = publishedVersions.get(id);
+        if (published != null && version <= published) {
+            log.debug("Skipping the replayed change of {} version {} of the {} change stream", id, version, STREAM_NAME);
+            return true;
+        }
+        publishedVersions.put(id, version);
+        return false;
+    }
+
+    private Mono<StreamResumeToken> saveResumeToken(BsonValue resumeToken) {
+        return streamResumeTokenRepository.save(
+                new StreamResumeToken(resumeTokenId(), resumeToken.asDocument().toJson(), Instant.now()));
+    }
+
+    private static String reviewId(ChangeStreamEvent<Review> event) {
+        var id = event.getRaw().getDocumentKey().get("_id");
+        return id.isObjectId() ? id.asObjectId().getValue().toHexString() : id.asString().getValue();
+    }
+
+    // every instance follows the whole stream, so each one resumes from its own token
+    String resumeTokenId() {
+        return applicationName + ":" + STREAM_NAME + ":" + instanceId;
+    }
+
+    private boolean isHistoryLost(Throwable ex) {
+        for (var cause = ex; cause != null; cause = cause.getCause()) {
+            if (cause instanceof MongoServerException) {
+                var code = ((MongoServerException) cause).getCode();
+                return code == HISTORY_LOST || code == FATAL_ERROR;
+            }
+        }
+        return false;
+    }
+
+}
@@ -0,0 +1,181 @@
+package com.reactivespring.stream;
+
+import com.reactivespring.domain.ReviewEvent;
+import com.reactivespring.exception.ReviewStreamLaggedException;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Sinks;
+import reactor.util.concurrent.Queues;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Live review events with a history bounded by size and age. Subscribers watching given movies
+ * are indexed by movieInfoId, so a new review is only handed to the subscribers of its movie
+ * and to the unfiltered ones. Each subscriber has its own bounded buffer and is terminated with
+ * {@link ReviewStreamLaggedException} when it overflows.
+ */
+@Component
+public class ReviewStream {
+
+    private int historySize;
+    private Duration historyAge;
+    private int bufferSize;
+
+    private Deque<HistoryEntry> history = new ArrayDeque<>();
+    private Map<Long, Set<Subscriber>> subscribersByMovie = new HashMap<>();
+    private Set<Subscriber> unfilteredSubscribers = new LinkedHashSet<>();
+
+    public ReviewStream(@Value("${reviewsStream.historySize}") int historySize,
+                        @Value("${reviewsStream.historyAge}") Duration historyAge,
+                        @Value("${reviewsStream.bufferSize}") int bufferSize) {
+        this.historySize = historySize;
+        this.historyAge = historyAge;
+        this.bufferSize = bufferSize;
+    }
+
+    public void publish(ReviewEvent event) {
+        publishAll(List.of(event));
+    }
+
+    /**
+     * Publishes the events in order, routing and delivering the whole batch under a single lock,
+     * so every subscriber sees the batches of concurrent publishers in the order of the history.
+     */
+    public void publishAll(List<ReviewEvent> events) {
+        Map<Subscriber, List<ReviewEvent>> eventsBySubscriber = new LinkedHashMap<>();
+        synchronized (this) {
+            var now = Instant.now();
+            events.forEach(event -> {
+                history.addLast(new HistoryEntry(now, event));
+                unfilteredSubscribers.forEach(subscriber ->
+                        eventsBySubscriber.computeIfAbsent(subscriber, key -> new ArrayList<>()).add(event));
+                if (event.getMovieInfoId() != null) {
+                    subscribersByMovie.getOrDefault(event.getMovieInfoId(), Set.of()).forEach(subscriber ->
+                            eventsBySubscriber.computeIfAbsent(subscriber, key -> new ArrayList<>()).add(event));
+                }
+            });
+            pruneHistory();
+            // delivered once routed, a lagging subscriber unregisters itself from the sets iterated above
+            eventsBySubscriber.forEach((subscriber, subscriberEvents) -> subscriberEvents.forEach(subscriber::offer));
+        }
+    }
+
+    /**
+     * Retained and live review events of the given movies, all movies when empty.
+     * With minRating, reviews rated lower are left out, deletes are always sent.
+     */
+    public Flux<ReviewEvent> subscribe(Collection<Long> movieInfoIds, Double minRating) {
+        return Flux.defer(() -> {
+            var subscriber = register(Set.copyOf(movieInfoIds), minRating);
+            return subscriber.sink.asFlux()
+                    .doFinally(signalType -> unregister(subscriber));
+        });
+    }
+
+    private synchronized Subscriber register(Set<Long> movieInfoIds, Double minRating) {
+        pruneHistory();
+        var retained = new ArrayList<ReviewEvent>();
+        history.forEach(entry -> {
+            if (movieInfoIds.isEmpty() || movieInfoIds.contains(entry.event.getMovieInfoId())) {
+                retained.add(entry.event);
+            }
+        });
+
+        var subscriber = new Subscriber(movieInfoIds, minRating, bufferSize + retained.size());
+        // filled before the subscriber is visible to publish, so the history always precedes the live reviews
+        retained.forEach(subscriber::offer);
+        if (movieInfoIds.isEmpty()) {
+            unfilteredSubscribers.add(subscriber);
+        } else {
+            movieInfoIds.forEach(movieInfoId -> subscribersByMovie
+                    .computeIfAbsent(movieInfoId, id -> new LinkedHashSet<>())
+                    .add(subscriber));
+        }
+        return subscriber;
+    }
+
+    private synchronized void unregister(Subscriber subscriber) {
+        unfilteredSubscribers.remove(subscriber);
+        subscriber.movieInfoIds.forEach(movieInfoId -> {
+            var subscribers = subscribersByMovie.get(movieInfoId);
+            if (subscribers != null && subscribers.remove(subscriber) && subscribers.isEmpty()) {
+                subscribersByMovie.remove(movieInfoId);
+            }
+        });
+    }
+
+    public synchronized int subscriberCount() {
+        var subscribers = new LinkedHashSet<>(unfilteredSubscribers);
+        subscribersByMovie.values().forEach(subscribers::addAll);
+        return subscribers.size();
+    }
+
+    public synchronized int historyCount() {
+        pruneHistory();
+        return history.size();
+    }
+
+    private void pruneHistory() {
+        var oldest = Instant.now().minus(historyAge);
+        while (!history.isEmpty()
+                && (history.size() > historySize || history.peekFirst().timestamp.isBefore(oldest))) {
+            history.removeFirst();
+        }
+    }
+
+    private static class HistoryEntry {
+
+        private Instant timestamp;
+        private ReviewEvent event;
+
+        HistoryEntry(Instant timestamp, ReviewEvent event) {
+            this.timestamp = timestamp;
+            this.event = event;
+        }
+
+    }
+
+    private class Subscriber {
+
+        private Set<Long> movieInfoIds;
+        private Double minRating;
+        private Sinks.Many<ReviewEvent> sink;
+
+        Subscriber(Set<Long> movieInfoIds, Double minRating, int capacity) {
+            this.movieInfoIds = movieInfoIds;
+            this.minRating = minRating;
+            this.sink = Sinks.many().unicast().onBackpressureBuffer(Queues.<ReviewEvent>get(capacity).get());
+        }
+
+        void offer(ReviewEvent event) {
+            var review = event.getReview();
+            if (minRating != null && review != null && (review.getRating() == null || review.getRating() < minRating)) {
+                return;
+            }
+            var result = sink.tryEmitNext(event);
+            while (result == Sinks.EmitResult.FAIL_NON_SERIALIZED) {
+                result = sink.tryEmitNext(event);
+            }
+            if (result == Sinks.EmitResult.FAIL_OVERFLOW) {
+                unregister(this);
+                sink.tryEmitError(new ReviewStreamLaggedException(
+                        "Review stream subscriber fell more than " + bufferSize + " reviews behind"));
+            }
+        }
+
+    }
+
+}
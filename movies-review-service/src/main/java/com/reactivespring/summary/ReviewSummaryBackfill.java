@@ -0,0 +1,47 @@
+package com.reactivespring.summary;
+
+import com.reactivespring.repository.ReviewSummaryRepository;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Component;
+import reactor.core.Disposable;
+
+import javax.annotation.PreDestroy;
+
+/**
+ * Creates at startup the summaries of the movies reviewed before summaries existed, so their
+ * GET /v1/reviews/summary/{movieInfoId} does not answer an empty summary until their next review write.
+ * Runs in the background; a movie written to meanwhile gets its summary from that write instead.
+ */
+@Component
+@ConditionalOnProperty(name = "reviewsSummary.backfillOnStartup", havingValue = "true")
+@Slf4j
+public class ReviewSummaryBackfill {
+
+    private ReviewSummaryRepository reviewSummaryRepository;
+
+    private Disposable subscription;
+
+    public ReviewSummaryBackfill(ReviewSummaryRepository reviewSummaryRepository) {
+        this.reviewSummaryRepository = reviewSummaryRepository;
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void backfill() {
+        subscription = reviewSummaryRepository.rebuildMissing()
+                .count()
+                .subscribe(rebuilt -> log.info("Built the missing summaries of {} movies", rebuilt),
+                        ex -> log.error("Missing summaries not built, POST /v1/reviews/summary/{movieInfoId}/rebuild builds one : {}",
+                                ex.getMessage()));
+    }
+
+    @PreDestroy
+    public void dispose() {
+        if (subscription != null) {
+            subscription.dispose();
+        }
+    }
+
+}
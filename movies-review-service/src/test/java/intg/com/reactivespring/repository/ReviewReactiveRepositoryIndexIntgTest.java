@@ -0,0 +1,116 @@
+package com.reactivespring.repository;
+
+import com.mongodb.event.CommandListener;
+import com.mongodb.event.CommandStartedEvent;
+import com.reactivespring.domain.Review;
+import org.bson.BsonDocument;
+import org.bson.BsonString;
+import org.bson.Document;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.autoconfigure.mongo.MongoClientSettingsBuilderCustomizer;
+import org.springframework.boot.test.autoconfigure.data.mongo.DataMongoTest;
+import org.springframework.boot.test.context.TestConfiguration;
+import org.springframework.context.annotation.Bean;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.mongodb.core.ReactiveMongoTemplate;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.test.context.ActiveProfiles;
+import reactor.core.publisher.Flux;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+
+/**
+ * Runs each repository finder, captures the find command it sent and fails when explain shows
+ * a collection scan for it.
+ */
+@DataMongoTest(properties = "spring.data.mongodb.auto-index-creation=true")
+@ActiveProfiles("test")
+class ReviewReactiveRepositoryIndexIntgTest {
+
+    static List<BsonDocument> findCommands = new CopyOnWriteArrayList<>();
+
+    @TestConfiguration
+    static class FindCommandCapture {
+
+        @Bean
+        MongoClientSettingsBuilderCustomizer findCommandListener() {
+            return builder -> builder.addCommandListener(new CommandListener() {
+                @Override
+                public void commandStarted(CommandStartedEvent event) {
+                    if ("find".equals(event.getCommandName())) {
+                        findCommands.add(event.getCommand().clone());
+                    }
+                }
+            });
+        }
+
+    }
+
+    @Autowired
+    ReviewReactiveRepository reviewReactiveRepository;
+
+    @Autowired
+    ReactiveMongoTemplate reactiveMongoTemplate;
+
+    @BeforeEach
+    void setUp() {
+        // the collection and its indexes must exist for the planner to consider them
+        reviewReactiveRepository.save(new Review(null, 1L, "Awesome Movie", 9.0)).block();
+        findCommands.clear();
+    }
+
+    @AfterEach
+    void tearDown() {
+        reactiveMongoTemplate.remove(new Query(), Review.class).block();
+    }
+
+    @Test
+    void findReviewsByMovieInfoId_usesIndex() {
+        assertNoCollectionScan(reviewReactiveRepository.findReviewsByMovieInfoId(1L));
+    }
+
+    @Test
+    void findReviewsByMovieInfoId_page_usesIndex() {
+        assertNoCollectionScan(reviewReactiveRepository.findReviewsByMovieInfoId(1L,
+                PageRequest.of(0, 10, Sort.by(Sort.Direction.DESC, "rating"))));
+    }
+
+    @Test
+    void findReviewsByMovieInfoIdIn_usesIndex() {
+        assertNoCollectionScan(reviewReactiveRepository.findReviewsByMovieInfoIdIn(List.of(1L, 2L),
+                Sort.by("movieInfoId").and(Sort.by(Sort.Direction.DESC, "rating"))));
+    }
+
+    @Test
+    void findAllAfterId_usesIndex() {
+        assertNoCollectionScan(reviewReactiveRepository.findAllAfterId("abc", 10));
+    }
+
+    private void assertNoCollectionScan(Flux<Review> finder) {
+        finder.blockLast();
+        assertEquals(1, findCommands.size(), "find commands sent : " + findCommands);
+        var find = findCommands.get(0);
+
+        // explain the command as sent, without the session and routing fields the driver added
+        var explained = new BsonDocument();
+        List.of("find", "filter", "sort", "projection", "skip", "limit", "hint").stream()
+                .filter(find::containsKey)
+                .forEach(key -> explained.append(key, find.get(key)));
+        var explain = reactiveMongoTemplate.execute(database -> database.runCommand(
+                        new BsonDocument("explain", explained).append("verbosity", new BsonString("queryPlanner"))))
+                .blockFirst();
+
+        var winningPlan = explain.get("queryPlanner", Document.class).get("winningPlan", Document.class);
+        assertFalse(winningPlan.toJson().contains("\"COLLSCAN\""),
+                "COLLSCAN for " + explained.toJson() + " : " + winningPlan.toJson());
+    }
+
+}
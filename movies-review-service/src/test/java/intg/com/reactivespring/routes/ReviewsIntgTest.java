@@ -1,22 +1,38 @@
 package com.reactivespring.routes;
 
+import com.reactivespring.domain.EventType;
+import com.reactivespring.domain.MovieReviews;
 import com.reactivespring.domain.Review;
+import com.reactivespring.domain.ReviewBulkResult;
+import com.reactivespring.domain.ReviewEvent;
+import com.reactivespring.domain.ReviewSummary;
 import com.reactivespring.repository.ReviewReactiveRepository;
+import com.reactivespring.repository.ReviewSummaryRepository;
 import org.junit.jupiter.api.AfterEach;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.autoconfigure.web.reactive.AutoConfigureWebTestClient;
 import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
 import org.springframework.test.context.ActiveProfiles;
 import org.springframework.test.web.reactive.server.WebTestClient;
+import reactor.test.StepVerifier;
 
+import java.time.Duration;
 import java.util.List;
+import java.util.Map;
+import java.util.function.Consumer;
+import java.util.stream.Collectors;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
 import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
 
-@SpringBootTest(webEnvironment = SpringBootTest.WebEnvironment.RANDOM_PORT)
+// the backfill is called by the tests, not left to run alongside them
+@SpringBootTest(webEnvironment = SpringBootTest.WebEnvironment.RANDOM_PORT, properties = "reviewsSummary.backfillOnStartup=false")
 @ActiveProfiles("test")
 @AutoConfigureWebTestClient
 public class ReviewsIntgTest {
@@ -27,6 +43,9 @@ public class ReviewsIntgTest {
     @Autowired
     ReviewReactiveRepository reviewReactiveRepository;
 
+    @Autowired
+    ReviewSummaryRepository reviewSummaryRepository;
+
     static String REVIEWS_URL = "/v1/reviews";
 
     @BeforeEach
@@ -44,6 +63,7 @@ public class ReviewsIntgTest {
     @AfterEach
     void tearDown() {
         reviewReactiveRepository.deleteAll().block();
+        reviewSummaryRepository.deleteAll().block();
     }
 
     @Test
@@ -64,6 +84,55 @@ public class ReviewsIntgTest {
                 });
     }
 
+    @Test
+    void addReview_existingId() {
+        var review = new Review("1a", 3L, "Test Movie Again", 2.0);
+
+        webTestClient.post()
+                .uri(REVIEWS_URL)
+                .bodyValue(review)
+                .exchange()
+                .expectStatus()
+                .isEqualTo(HttpStatus.CONFLICT);
+
+        StepVerifier.create(reviewReactiveRepository.findById("1a"))
+                .assertNext(saved -> assertEquals(8.5, saved.getRating()))
+                .verifyComplete();
+    }
+
+    @Test
+    void addReviews_bulk() {
+        var body = String.join("\n",
+                "{\"reviewId\": \"1a\", \"movieInfoId\": 3, \"comment\": \"Bulk Update\", \"rating\": 7.5}",
+                "{\"movieInfoId\": 4, \"comment\": \"Bulk Insert\", \"rating\": 9.0}",
+                "{\"comment\": \"Missing movie\", \"rating\": 9.0}") + "\n";
+
+        webTestClient.post()
+                .uri(REVIEWS_URL + "/bulk")
+                .contentType(MediaType.APPLICATION_NDJSON)
+                .bodyValue(body)
+                .exchange()
+                .expectStatus()
+                .isOk()
+                .expectBodyList(ReviewBulkResult.class)
+                .value(results -> {
+                    assertEquals(3, results.size());
+                    assertEquals(EventType.UPDATED, results.get(0).getType());
+                    assertEquals(EventType.CREATED, results.get(1).getType());
+                    assertEquals("rating.movieInfoId : must not be null", results.get(2).getError());
+                });
+
+        StepVerifier.create(reviewReactiveRepository.findById("1a"))
+                .assertNext(review -> {
+                    assertEquals("Bulk Update", review.getComment());
+                    assertEquals(1L, review.getVersion());
+                })
+                .verifyComplete();
+        StepVerifier.create(reviewReactiveRepository.findReviewsByMovieInfoId(4L))
+                .expectNextCount(1)
+                .verifyComplete();
+    }
+
     @Test
     void getReviews() {
         webTestClient.get()
@@ -79,6 +148,38 @@ public class ReviewsIntgTest {
                 });
     }
 
+    @Test
+    void getReviews_pagedAcrossStringAndObjectIds() {
+        var firstPage = webTestClient.get()
+                .uri(REVIEWS_URL + "?limit={limit}", 3)
+                .exchange()
+                .expectStatus()
+                .isOk()
+                .expectBodyList(Review.class)
+                .returnResult();
+
+        // the client supplied string id sorts before the generated ObjectIds
+        var firstIds = firstPage.getResponseBody().stream().map(Review::getReviewId).collect(Collectors.toList());
+        assertEquals(3, firstIds.size());
+        assertEquals("1a", firstIds.get(0));
+        var link = firstPage.getResponseHeaders().getFirst("Link");
+        assertNotNull(link);
+        var nextUri = link.substring(link.indexOf('<') + 1, link.indexOf('>'));
+
+        webTestClient.get()
+                .uri(nextUri)
+                .exchange()
+                .expectStatus()
+                .isOk()
+                .expectHeader()
+                .doesNotExist("Link")
+                .expectBodyList(Review.class)
+                .value(reviews -> {
+                    assertEquals(1, reviews.size());
+                    assertFalse(firstIds.contains(reviews.get(0).getReviewId()));
+                });
+    }
+
     @Test
     void getReviews_ByMovieInfoId() {
         var movieInfoId = 1L;
@@ -116,6 +217,28 @@ public class ReviewsIntgTest {
                 });
     }
 
+    @Test
+    void updateReview_staleVersion() {
+        var reviewId = "1a";
+
+        webTestClient.put()
+                .uri(REVIEWS_URL + "/{id}", reviewId)
+                .bodyValue(new Review(reviewId, 3L, "Update Test Movie 2", 8.8, 0L))
+                .exchange()
+                .expectStatus()
+                .isOk()
+                .expectBody(Review.class)
+                .value(updatedReview -> assertEquals(1L, updatedReview.getVersion()));
+
+        // a second writer still holding version 0 is refused instead of overwriting
+        webTestClient.put()
+                .uri(REVIEWS_URL + "/{id}", reviewId)
+                .bodyValue(new Review(reviewId, 3L, "Concurrent Update", 1.0, 0L))
+                .exchange()
+                .expectStatus()
+                .isEqualTo(HttpStatus.CONFLICT);
+    }
+
     @Test
     void deleteReview() {
         var reviewId = "1a";
@@ -127,4 +250,185 @@ public class ReviewsIntgTest {
                 .isNoContent();
     }
 
+    @Test
+    void deleteReview_notFound() {
+        webTestClient.delete()
+                .uri(REVIEWS_URL + "/{id}", "unknown")
+                .exchange()
+                .expectStatus()
+                .isNotFound();
+    }
+
+    @Test
+    void reviewSummary_followsWrites() {
+        var movieInfoId = 5005L;
+        var first = webTestClient.post()
+                .uri(REVIEWS_URL)
+                .bodyValue(new Review(null, movieInfoId, "Awesome Movie", 9.0))
+                .exchange()
+                .expectStatus()
+                .isCreated()
+                .expectBody(Review.class)
+                .returnResult()
+                .getResponseBody();
+        webTestClient.post()
+                .uri(REVIEWS_URL)
+                .bodyValue(new Review(null, movieInfoId, "Good Movie", 7.0))
+                .exchange()
+                .expectStatus()
+                .isCreated();
+        assertSummary(movieInfoId, summary -> {
+            assertEquals(2, summary.getCount());
+            assertEquals(8.0, summary.getAverageRating());
+            assertEquals(9.0, summary.getMaxRating());
+        });
+
+        // lowering the best rating has to recompute the maximum
+        webTestClient.put()
+                .uri(REVIEWS_URL + "/{id}", first.getReviewId())
+                .bodyValue(new Review(null, movieInfoId, "Awesome Movie", 8.0))
+                .exchange()
+                .expectStatus()
+                .isOk();
+        assertSummary(movieInfoId, summary -> {
+            assertEquals(2, summary.getCount());
+            assertEquals(7.5, summary.getAverageRating());
+            assertEquals(8.0, summary.getMaxRating());
+            assertEquals(0L, summary.getHistogram().get("9"));
+        });
+
+        webTestClient.delete()
+                .uri(REVIEWS_URL + "/{id}", first.getReviewId())
+                .exchange()
+                .expectStatus()
+                .isNoContent();
+        assertSummary(movieInfoId, summary -> {
+            assertEquals(1, summary.getCount());
+            assertEquals(7.0, summary.getMinRating());
+            assertEquals(7.0, summary.getMaxRating());
+        });
+    }
+
+    @Test
+    void reviewSummary_createdFromTheEarlierReviews() {
+        // movie 1 has the two reviews of setUp, written without a summary
+        webTestClient.post()
+                .uri(REVIEWS_URL)
+                .bodyValue(new Review(null, 1L, "Good Movie", 6.0))
+                .exchange()
+                .expectStatus()
+                .isCreated();
+
+        assertSummary(1L, summary -> {
+            assertEquals(3, summary.getCount());
+            assertEquals(8.0, summary.getAverageRating());
+            assertEquals(6.0, summary.getMinRating());
+        });
+    }
+
+    @Test
+    void rebuildMissing_summarizesReviewedMovies() {
+        StepVerifier.create(reviewSummaryRepository.rebuildMissing())
+                .expectNextCount(3)
+                .verifyComplete();
+
+        assertSummary(3L, summary -> assertEquals(8.5, summary.getAverageRating()));
+        // already there, left alone
+        StepVerifier.create(reviewSummaryRepository.rebuildMissing())
+                .verifyComplete();
+    }
+
+    @Test
+    void rebuildReviewSummary_repairsDrift() {
+        var movieInfoId = 5006L;
+        webTestClient.post()
+                .uri(REVIEWS_URL)
+                .bodyValue(new Review(null, movieInfoId, "Awesome Movie", 9.0))
+                .exchange()
+                .expectStatus()
+                .isCreated();
+        // a summary update lost after its review was written
+        reviewSummaryRepository.save(new ReviewSummary(movieInfoId, 3, 3, 20.0, 4.0, 9.0, Map.of("4", 2L, "9", 1L)))
+                .block();
+
+        webTestClient.post()
+                .uri(REVIEWS_URL + "/summary/{id}/rebuild", movieInfoId)
+                .exchange()
+                .expectStatus()
+                .isOk();
+
+        assertSummary(movieInfoId, summary -> {
+            assertEquals(1, summary.getCount());
+            assertEquals(9.0, summary.getAverageRating());
+            assertEquals(9.0, summary.getMinRating());
+            assertEquals(Map.of("9", 1L), summary.getHistogram());
+        });
+    }
+
+    private void assertSummary(Long movieInfoId, Consumer<ReviewSummary> assertions) {
+        webTestClient.get()
+                .uri(REVIEWS_URL + "/summary/{id}", movieInfoId)
+                .exchange()
+                .expectStatus()
+                .isOk()
+                .expectBody(ReviewSummary.class)
+                .value(assertions);
+    }
+
+    @Test
+    void getReviewsGroupedByMovie() {
+        webTestClient.get()
+                .uri(REVIEWS_URL + "/grouped?movieInfoIds={ids}&limitPerMovie={limit}", "1,3,4", 1)
+                .exchange()
+                .expectStatus()
+                .isOk()
+                .expectBodyList(MovieReviews.class)
+                .consumeWith(listEntityExchangeResult -> {
+                    var groups = listEntityExchangeResult.getResponseBody();
+                    assertNotNull(groups);
+                    assertEquals(2, groups.size());
+                    assertEquals(1, groups.get(0).getReviews().size());
+                    assertEquals(3L, groups.get(1).getMovieInfoId());
+                });
+    }
+
+    @Test
+    void updateAndDeleteReview_publishEvents() {
+        reviewReactiveRepository.save(new Review("evt1", 3003L, "Test Movie", 8.5)).block();
+        var events = webTestClient.get()
+                .uri(REVIEWS_URL + "/stream?movieInfoId={id}", 3003)
+                .exchange()
+                .expectStatus()
+                .isOk()
+                .returnResult(ReviewEvent.class)
+                .getResponseBody();
+
+        StepVerifier.create(events)
+                .then(() -> webTestClient.put()
+                        .uri(REVIEWS_URL + "/{id}", "evt1")
+                        .bodyValue(new Review(null, 3003L, "Test Movie Updated", 7.0))
+                        .exchange()
+                        .expectStatus()
+                        .isOk())
+                .assertNext(event -> {
+                    assertEquals(EventType.UPDATED, event.getType());
+                    assertEquals(1L, event.getVersion());
+                    assertEquals(7.0, event.getReview().getRating());
+                })
+                .then(() -> webTestClient.delete()
+                        .uri(REVIEWS_URL + "/{id}", "evt1")
+                        .exchange()
+                        .expectStatus()
+                        .isNoContent())
+                .assertNext(event -> {
+                    assertEquals(EventType.DELETED, event.getType());
+                    assertEquals("evt1", event.getReviewId());
+                    assertEquals(3003L, event.getMovieInfoId());
+                    assertEquals(1L, event.getVersion());
+                    assertNull(event.getReview());
+                })
+                .thenCancel()
+                .verify(Duration.ofSeconds(5));
+    }
+
 }
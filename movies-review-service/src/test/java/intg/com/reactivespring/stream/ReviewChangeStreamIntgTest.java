@@ -0,0 +1,106 @@
+package com.reactivespring.stream;
+
+import com.mongodb.reactivestreams.client.MongoClients;
+import com.reactivespring.domain.EventType;
+import com.reactivespring.domain.Review;
+import com.reactivespring.repository.ReviewReactiveRepository;
+import de.flapdoodle.embed.mongo.MongodExecutable;
+import org.bson.Document;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.config.BeanPostProcessor;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.context.TestConfiguration;
+import org.springframework.context.annotation.Bean;
+import org.springframework.core.env.Environment;
+import org.springframework.test.context.ActiveProfiles;
+import reactor.core.publisher.Mono;
+import reactor.test.StepVerifier;
+
+import java.time.Duration;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+/**
+ * Change streams need a replica set, the embedded mongod runs as a single node one.
+ */
+@SpringBootTest(properties = {
+        "spring.mongodb.embedded.version=4.0.12",
+        "spring.mongodb.embedded.storage.repl-set-name=rs0",
+        "reviewsStream.changeStream.enabled=true"})
+@ActiveProfiles("test")
+class ReviewChangeStreamIntgTest {
+
+    @Autowired
+    ReviewReactiveRepository reviewReactiveRepository;
+
+    @Autowired
+    ReviewStream reviewStream;
+
+    @AfterEach
+    void tearDown() {
+        reviewReactiveRepository.deleteAll().block();
+    }
+
+    @Test
+    void writesOfAnyInstanceReachTheStream() {
+        var review = new Review("cs1", 701L, "Awesome Movie", 9.0);
+
+        StepVerifier.create(reviewStream.subscribe(List.of(701L), null))
+                // lets the listener open its change stream cursor
+                .thenAwait(Duration.ofMillis(500))
+                .then(() -> reviewReactiveRepository.save(review).block())
+                .assertNext(published -> {
+                    assertEquals(EventType.CREATED, published.getType());
+                    assertEquals(9.0, published.getReview().getRating());
+                })
+                .then(() -> {
+                    var saved = reviewReactiveRepository.findById("cs1").block();
+                    saved.setRating(7.0);
+                    reviewReactiveRepository.save(saved).block();
+                })
+                .assertNext(published -> {
+                    assertEquals(EventType.UPDATED, published.getType());
+                    assertEquals(7.0, published.getReview().getRating());
+                    assertEquals(1L, published.getVersion());
+                })
+                .thenCancel()
+                .verify(Duration.ofSeconds(10));
+    }
+
+    /**
+     * The embedded mongod is started with a replica set name, the set still has to be initiated before
+     * the application's client connects, so it is done as soon as the server bean has started.
+     */
+    @TestConfiguration
+    static class EmbeddedReplicaSet {
+
+        @Bean
+        static BeanPostProcessor replicaSetInitiator(Environment environment) {
+            return new BeanPostProcessor() {
+                @Override
+                public Object postProcessAfterInitialization(Object bean, String beanName) {
+                    if (bean instanceof MongodExecutable) {
+                        initiate(environment.getProperty("local.mongo.port"));
+                    }
+                    return bean;
+                }
+            };
+        }
+
+        private static void initiate(String port) {
+            try (var mongoClient = MongoClients.create("mongodb://localhost:" + port)) {
+                var admin = mongoClient.getDatabase("admin");
+                Mono.from(admin.runCommand(new Document("replSetInitiate", new Document())))
+                        .then(Mono.defer(() -> Mono.from(admin.runCommand(new Document("isMaster", 1))))
+                                .filter(isMaster -> isMaster.getBoolean("ismaster", false))
+                                .repeatWhenEmpty(attempts -> attempts.take(100).delayElements(Duration.ofMillis(100))))
+                        .block(Duration.ofSeconds(30));
+            }
+        }
+
+    }
+
+}
@@ -0,0 +1,46 @@
+package com.reactivespring.domain;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class ReviewSummaryChangeUnitTest {
+
+    @Test
+    void addAndRemove() {
+        var change = new ReviewSummaryChange(1L)
+                .add(9.5)
+                .add(null)
+                .remove(7.0);
+
+        assertEquals(1, change.getCount());
+        assertEquals(0, change.getRatingCount());
+        assertEquals(2.5, change.getRatingSum());
+        assertEquals(Map.of("9", 1L, "7", -1L), change.getHistogram());
+        assertEquals(9.5, change.getAddedMax());
+        assertEquals(7.0, change.getRemovedMin());
+    }
+
+    @Test
+    void bucket() {
+        assertEquals("0", ReviewSummaryChange.bucket(0.4));
+        assertEquals("8", ReviewSummaryChange.bucket(8.99));
+        assertEquals("10", ReviewSummaryChange.bucket(12.0));
+    }
+
+    @Test
+    void removesBound() {
+        var summary = new ReviewSummary(1L, 3, 3, 24.0, 7.0, 9.0, Map.of());
+
+        assertFalse(new ReviewSummaryChange(1L).add(8.0).removesBound(summary));
+        assertFalse(new ReviewSummaryChange(1L).remove(null).removesBound(summary));
+        assertFalse(new ReviewSummaryChange(1L).remove(8.0).removesBound(summary));
+        assertTrue(new ReviewSummaryChange(1L).remove(9.0).removesBound(summary));
+        assertTrue(new ReviewSummaryChange(1L).remove(7.0).add(8.0).removesBound(summary));
+    }
+
+}
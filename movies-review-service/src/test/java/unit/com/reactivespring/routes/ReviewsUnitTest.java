@@ -1,32 +1,61 @@
 package com.reactivespring.routes;
 
+import com.reactivespring.domain.EventType;
+import com.reactivespring.domain.MovieReviews;
+import com.mongodb.bulk.BulkWriteResult;
 import com.reactivespring.domain.Review;
+import com.reactivespring.domain.ReviewBulkResult;
+import com.reactivespring.domain.ReviewEvent;
+import com.reactivespring.domain.ReviewSummary;
+import com.reactivespring.domain.ReviewSummaryChange;
 import com.reactivespring.exceptionhandler.MovieReviewGlobalErrorHandler;
 import com.reactivespring.handler.ReviewHandler;
 import com.reactivespring.repository.ReviewReactiveRepository;
+import com.reactivespring.repository.ReviewSummaryRepository;
 import com.reactivespring.router.ReviewRouter;
+import com.reactivespring.stream.ReviewStream;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.autoconfigure.web.reactive.AutoConfigureWebTestClient;
 import org.springframework.boot.test.autoconfigure.web.reactive.WebFluxTest;
 import org.springframework.boot.test.mock.mockito.MockBean;
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Sort;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
 import org.springframework.test.context.ActiveProfiles;
 import org.springframework.test.context.ContextConfiguration;
 import org.springframework.test.web.reactive.server.WebTestClient;
 import reactor.core.publisher.Flux;
 import reactor.core.publisher.Mono;
+import reactor.test.StepVerifier;
 
+import java.time.Duration;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
 import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyCollection;
+import static org.mockito.ArgumentMatchers.anyIterable;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.ArgumentMatchers.argThat;
+import static org.mockito.ArgumentMatchers.eq;
 import static org.mockito.ArgumentMatchers.isA;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
 
 @WebFluxTest
-@ContextConfiguration(classes = { ReviewRouter.class, ReviewHandler.class, MovieReviewGlobalErrorHandler.class })
+@ContextConfiguration(classes = { ReviewRouter.class, ReviewHandler.class, ReviewStream.class, MovieReviewGlobalErrorHandler.class })
 @AutoConfigureWebTestClient
 @ActiveProfiles("test")
 public class ReviewsUnitTest {
@@ -34,11 +63,21 @@ public class ReviewsUnitTest {
     @MockBean
     private ReviewReactiveRepository reviewReactiveRepository;
 
+    @MockBean
+    private ReviewSummaryRepository reviewSummaryRepository;
+
     @Autowired
     private WebTestClient webTestClient;
 
     static String REVIEWS_URL = "/v1/reviews";
 
+    @BeforeEach
+    void setUp() {
+        when(reviewSummaryRepository.apply(any(ReviewSummaryChange.class))).thenReturn(Mono.just(new ReviewSummary()));
+        when(reviewSummaryRepository.rebuild(any())).thenReturn(Mono.just(new ReviewSummary()));
+        when(reviewReactiveRepository.findAllById(anyIterable())).thenReturn(Flux.empty());
+    }
+
     @Test
     void addReview() {
         var review = new Review(null, 1L, "Awesome movie", 9.2);
@@ -60,6 +99,40 @@ public class ReviewsUnitTest {
                 });
     }
 
+    @Test
+    void addReview_summaryFailureRebuildsIt() {
+        when(reviewReactiveRepository.save(isA(Review.class)))
+                .thenReturn(Mono.just(new Review("1a", 7L, "Awesome movie", 9.2)));
+        when(reviewSummaryRepository.apply(any(ReviewSummaryChange.class)))
+                .thenReturn(Mono.error(new IllegalStateException("connection reset")));
+
+        webTestClient.post()
+                .uri(REVIEWS_URL)
+                .bodyValue(new Review(null, 7L, "Awesome movie", 9.2))
+                .exchange()
+                .expectStatus()
+                .isCreated();
+
+        verify(reviewSummaryRepository).rebuild(7L);
+    }
+
+    @Test
+    void addReview_existingId() {
+        var review = new Review("1a", 1L, "Awesome movie", 9.2);
+
+        when(reviewReactiveRepository.save(isA(Review.class)))
+                .thenReturn(Mono.error(new DuplicateKeyException("E11000 duplicate key error collection: review")));
+
+        webTestClient.post()
+                .uri(REVIEWS_URL)
+                .bodyValue(review)
+                .exchange()
+                .expectStatus()
+                .isEqualTo(HttpStatus.CONFLICT)
+                .expectBody(String.class)
+                .isEqualTo("Review already exists, update it with PUT /v1/reviews/{id}");
+    }
+
     @Test
     void addReview_validation() {
         var review = new Review(null, null, "Awesome movie", -9.2);
@@ -77,6 +150,107 @@ public class ReviewsUnitTest {
                 .isEqualTo("rating.movieInfoId : must not be null,rating.negative : please pass a non-negative value");
     }
 
+    @Test
+    void addReviews_bulk() {
+        when(reviewReactiveRepository.bulkWrite(anyList())).thenAnswer(invocation -> {
+            List<Review> reviews = invocation.getArgument(0);
+            reviews.stream()
+                    .filter(review -> review.getReviewId() == null)
+                    .forEach(review -> {
+                        review.setReviewId("b2");
+                        review.setVersion(0L);
+                    });
+            return Mono.just(BulkWriteResult.acknowledged(1, 1, 0, 1, List.of(), List.of()));
+        });
+        var body = String.join("\n",
+                "{\"reviewId\": \"b1\", \"movieInfoId\": 903, \"comment\": \"Excellent Movie\", \"rating\": 8.0}",
+                "{\"movieInfoId\": 903, \"comment\": \"Awesome Movie\", \"rating\": 9.0}",
+                "{\"comment\": \"Missing movie\", \"rating\": -1}",
+                "{not json") + "\n";
+
+        webTestClient.post()
+                .uri(REVIEWS_URL + "/bulk")
+                .contentType(MediaType.APPLICATION_NDJSON)
+                .bodyValue(body)
+                .exchange()
+                .expectStatus()
+                .isOk()
+                .expectBodyList(ReviewBulkResult.class)
+                .value(results -> {
+                    assertEquals(4, results.size());
+                    assertEquals(EventType.UPDATED, results.get(0).getType());
+                    assertEquals("b2", results.get(1).getReviewId());
+                    assertEquals(EventType.CREATED, results.get(1).getType());
+                    assertEquals("rating.movieInfoId : must not be null,rating.negative : please pass a non-negative value",
+                            results.get(2).getError());
+                    assertEquals(4, results.get(3).getLine());
+                    assertFalse(results.get(3).isAccepted());
+                });
+
+        var reviewsStream = webTestClient.get()
+                .uri(REVIEWS_URL + "/stream?movieInfoId={id}", 903)
+                .exchange()
+                .returnResult(ReviewEvent.class)
+                .getResponseBody()
+                .map(ReviewEvent::getReviewId);
+
+        StepVerifier.create(reviewsStream)
+                .expectNext("b1", "b2")
+                .thenCancel()
+                .verify();
+        verify(reviewReactiveRepository, times(1)).bulkWrite(anyList());
+        // b1 replaced a stored review, so movie 903 is rebuilt instead of incremented
+        verify(reviewSummaryRepository).rebuild(903L);
+        verify(reviewSummaryRepository, never()).apply(any(ReviewSummaryChange.class));
+    }
+
+    @Test
+    void addReviews_bulkRebuildsTheMovieAReplacedReviewLeft() {
+        when(reviewReactiveRepository.findAllById(anyIterable()))
+                .thenReturn(Flux.just(new Review("m1", 905L, "Excellent Movie", 8.0)));
+        when(reviewReactiveRepository.bulkWrite(anyList()))
+                .thenReturn(Mono.just(BulkWriteResult.acknowledged(0, 1, 0, 1, List.of(), List.of())));
+        var body = "{\"reviewId\": \"m1\", \"movieInfoId\": 906, \"comment\": \"Excellent Movie\", \"rating\": 8.0}\n";
+
+        webTestClient.post()
+                .uri(REVIEWS_URL + "/bulk")
+                .contentType(MediaType.APPLICATION_NDJSON)
+                .bodyValue(body)
+                .exchange()
+                .expectStatus()
+                .isOk()
+                .expectBodyList(ReviewBulkResult.class)
+                .value(results -> assertEquals(EventType.UPDATED, results.get(0).getType()));
+
+        verify(reviewSummaryRepository).rebuild(905L);
+        verify(reviewSummaryRepository).rebuild(906L);
+    }
+
+    @Test
+    void addReviews_bulkFlushesOnWindowWhileUploadIsOpen() {
+        when(reviewReactiveRepository.bulkWrite(anyList()))
+                .thenReturn(Mono.just(BulkWriteResult.acknowledged(0, 1, 0, 1, List.of(), List.of())));
+        var upload = Flux.concat(
+                Mono.just("{\"reviewId\": \"w1\", \"movieInfoId\": 904, \"rating\": 8.0}\n"),
+                Mono.<String>never());
+
+        var results = webTestClient.post()
+                .uri(REVIEWS_URL + "/bulk")
+                .contentType(MediaType.APPLICATION_NDJSON)
+                .body(upload, String.class)
+                .exchange()
+                .expectStatus()
+                .isOk()
+                .returnResult(ReviewBulkResult.class)
+                .getResponseBody();
+
+        // far from a full batch, only the 1s window commits it
+        StepVerifier.create(results)
+                .assertNext(result -> assertEquals("w1", result.getReviewId()))
+                .thenCancel()
+                .verify(Duration.ofSeconds(5));
+    }
+
     @Test
     void getReviews() {
         var reviews = List.of(
@@ -100,13 +274,77 @@ public class ReviewsUnitTest {
                 });
     }
 
+    @Test
+    void getReviews_tooManyWithoutLimit() {
+        var reviews = Flux.range(0, 1001)
+                .map(i -> new Review(String.valueOf(i), 1L, "Awesome Movie", 9.0));
+
+        when(reviewReactiveRepository.findAll()).thenReturn(reviews);
+
+        webTestClient.get()
+                .uri(REVIEWS_URL)
+                .exchange()
+                .expectStatus()
+                .isBadRequest()
+                .expectBody(String.class)
+                .isEqualTo("More than 1000 reviews, page through them with limit and next");
+    }
+
+    @Test
+    void getReviewsPage() {
+        var reviews = List.of(
+                new Review("1a", 1L, "Awesome Movie", 9.0),
+                new Review("1b", 1L, "Awesome Movie 2", 9.0),
+                new Review("1c", 2L, "Excellent Movie", 8.0));
+
+        // "MWE" is the token of review 1a
+        when(reviewReactiveRepository.findAllAfterId("1a", 3)).thenReturn(Flux.fromIterable(reviews));
+
+        webTestClient.get()
+                .uri(REVIEWS_URL + "?limit={limit}&next={next}", 2, "MWE")
+                .exchange()
+                .expectStatus()
+                .isOk()
+                .expectHeader()
+                .valueEquals("Link", "</v1/reviews?limit=2&next=MWI>; rel=\"next\"")
+                .expectBodyList(Review.class)
+                .hasSize(2);
+    }
+
+    @Test
+    void getReviewsPage_lastPage() {
+        when(reviewReactiveRepository.findAllAfterId(null, 3))
+                .thenReturn(Flux.just(new Review("1a", 1L, "Awesome Movie", 9.0)));
+
+        webTestClient.get()
+                .uri(REVIEWS_URL + "?limit={limit}", 2)
+                .exchange()
+                .expectStatus()
+                .isOk()
+                .expectHeader()
+                .doesNotExist("Link")
+                .expectBodyList(Review.class)
+                .hasSize(1);
+    }
+
+    @Test
+    void getReviewsPage_invalidLimit() {
+        webTestClient.get()
+                .uri(REVIEWS_URL + "?limit={limit}", 0)
+                .exchange()
+                .expectStatus()
+                .isBadRequest()
+                .expectBody(String.class)
+                .isEqualTo("limit must be between 1 and 500, received 0");
+    }
+
     @Test
     void updateReview() {
         var review = new Review("1a", 3L, "Test Movie", 8.5);
         var review2 = new Review("1a", 3L, "New Test Movie", 9.2);
 
-        when(reviewReactiveRepository.findById(isA(String.class))).thenReturn(Mono.just(review));
-        when(reviewReactiveRepository.save(isA(Review.class))).thenReturn(Mono.just(review2));
+        // the previous document comes back, the response carries the new values
+        when(reviewReactiveRepository.findAndUpdate(isA(String.class), isA(Review.class))).thenReturn(Mono.just(review));
 
         webTestClient.put()
                 .uri(REVIEWS_URL + "/{id}", review.getReviewId())
@@ -120,15 +358,52 @@ public class ReviewsUnitTest {
                     assertNotNull(updatedReview);
                     assertEquals("New Test Movie", updatedReview.getComment());
                     assertEquals(9.2, updatedReview.getRating());
+                    assertEquals(1L, updatedReview.getVersion());
                 });
+
+        // the old rating leaves the summary and the new one enters it, the count stays
+        verify(reviewSummaryRepository).apply(argThat(change -> change.getMovieInfoId() == 3L
+                && change.getCount() == 0
+                && change.getRatingCount() == 0
+                && Math.abs(change.getRatingSum() - 0.7) < 1e-9));
+    }
+
+    @Test
+    void updateReview_staleVersion() {
+        var review = new Review("1a", 3L, "New Test Movie", 9.2, 2L);
+
+        when(reviewReactiveRepository.findAndUpdate(isA(String.class), isA(Review.class))).thenReturn(Mono.empty());
+        when(reviewReactiveRepository.existsById("1a")).thenReturn(Mono.just(true));
+
+        webTestClient.put()
+                .uri(REVIEWS_URL + "/{id}", "1a")
+                .bodyValue(review)
+                .exchange()
+                .expectStatus()
+                .isEqualTo(HttpStatus.CONFLICT)
+                .expectBody(String.class)
+                .isEqualTo("Review 1a was modified concurrently, version 2 is stale");
+    }
+
+    @Test
+    void updateReview_notFound() {
+        var review = new Review("1a", 3L, "New Test Movie", 9.2);
+
+        when(reviewReactiveRepository.findAndUpdate(isA(String.class), isA(Review.class))).thenReturn(Mono.empty());
+
+        webTestClient.put()
+                .uri(REVIEWS_URL + "/{id}", "1a")
+                .bodyValue(review)
+                .exchange()
+                .expectStatus()
+                .isNotFound();
     }
 
     @Test
     void deleteReview() {
         var review = new Review("1a", 3L, "Test Movie", 8.5);
 
-        when(reviewReactiveRepository.findById(isA(String.class))).thenReturn(Mono.just(review));
-        when(reviewReactiveRepository.deleteById(isA(String.class))).thenReturn(Mono.empty());
+        when(reviewReactiveRepository.findAndDelete("1a")).thenReturn(Mono.just(review));
 
         webTestClient.delete()
                 .uri(REVIEWS_URL + "/{id}", review.getReviewId())
@@ -137,4 +412,211 @@ public class ReviewsUnitTest {
                 .isNoContent();
     }
 
+    @Test
+    void deleteReview_notFound() {
+        when(reviewReactiveRepository.findAndDelete("1a")).thenReturn(Mono.empty());
+
+        webTestClient.delete()
+                .uri(REVIEWS_URL + "/{id}", "1a")
+                .exchange()
+                .expectStatus()
+                .isNotFound()
+                .expectBody(String.class)
+                .isEqualTo("Review not found for the given id 1a");
+    }
+
+    @Test
+    void getReviewSummary() {
+        var histogram = Map.of("8", 1L, "9", 1L);
+        when(reviewSummaryRepository.findById(1L))
+                .thenReturn(Mono.just(new ReviewSummary(1L, 2, 2, 17.0, 8.0, 9.0, histogram)));
+
+        webTestClient.get()
+                .uri(REVIEWS_URL + "/summary/{id}", 1)
+                .exchange()
+                .expectStatus()
+                .isOk()
+                .expectBody()
+                .jsonPath("$.count").isEqualTo(2)
+                .jsonPath("$.averageRating").isEqualTo(8.5)
+                .jsonPath("$.histogram.9").isEqualTo(1);
+    }
+
+    @Test
+    void rebuildReviewSummary() {
+        when(reviewSummaryRepository.rebuild(1L))
+                .thenReturn(Mono.just(new ReviewSummary(1L, 2, 2, 17.0, 8.0, 9.0, Map.of("8", 1L, "9", 1L))));
+
+        webTestClient.post()
+                .uri(REVIEWS_URL + "/summary/{id}/rebuild", 1)
+                .exchange()
+                .expectStatus()
+                .isOk()
+                .expectBody()
+                .jsonPath("$.count").isEqualTo(2)
+                .jsonPath("$.maxRating").isEqualTo(9.0)
+                .jsonPath("$.revision").doesNotExist();
+    }
+
+    @Test
+    void getReviewSummary_noReviews() {
+        when(reviewSummaryRepository.findById(2L)).thenReturn(Mono.empty());
+
+        webTestClient.get()
+                .uri(REVIEWS_URL + "/summary/{id}", 2)
+                .exchange()
+                .expectStatus()
+                .isOk()
+                .expectBody()
+                .jsonPath("$.movieInfoId").isEqualTo(2)
+                .jsonPath("$.count").isEqualTo(0)
+                .jsonPath("$.topReviews").doesNotExist();
+    }
+
+    @Test
+    void getReviewSummary_withTopReviews() {
+        when(reviewSummaryRepository.findById(1L))
+                .thenReturn(Mono.just(new ReviewSummary(1L, 3, 3, 24.0, 7.0, 9.0, Map.of("7", 1L, "8", 1L, "9", 1L))));
+        when(reviewReactiveRepository.findReviewsByMovieInfoId(eq(1L), isA(Pageable.class)))
+                .thenReturn(Flux.just(new Review("1a", 1L, "Awesome Movie", 9.0),
+                        new Review("1b", 1L, "Good Movie", 8.0)));
+
+        webTestClient.get()
+                .uri(REVIEWS_URL + "/summary/{id}?topReviews={top}", 1, 2)
+                .exchange()
+                .expectStatus()
+                .isOk()
+                .expectBody()
+                .jsonPath("$.count").isEqualTo(3)
+                .jsonPath("$.topReviews.length()").isEqualTo(2)
+                .jsonPath("$.topReviews[0].rating").isEqualTo(9.0);
+
+        verify(reviewReactiveRepository).findReviewsByMovieInfoId(1L, PageRequest.of(0, 2, Sort.by(Sort.Order.desc("rating"))));
+    }
+
+    @Test
+    void getReviewSummary_tooManyTopReviews() {
+        webTestClient.get()
+                .uri(REVIEWS_URL + "/summary/{id}?topReviews={top}", 1, 51)
+                .exchange()
+                .expectStatus()
+                .isBadRequest()
+                .expectBody(String.class)
+                .isEqualTo("topReviews must be between 0 and 50, received 51");
+    }
+
+    @Test
+    void getReviewsGroupedByMovie() {
+        var reviews = List.of(
+                new Review("1", 1L, "Awesome Movie", 9.5),
+                new Review("2", 1L, "Awesome Movie 2", 9.0),
+                new Review("4", 2L, "Excellent Movie", 8.0));
+
+        when(reviewReactiveRepository.findReviewsByMovieInfoIdIn(anyCollection(), isA(Sort.class)))
+                .thenReturn(Flux.fromIterable(reviews));
+
+        webTestClient.get()
+                .uri(REVIEWS_URL + "/grouped?movieInfoIds={ids}", "1,2")
+                .exchange()
+                .expectStatus()
+                .isOk()
+                .expectBodyList(MovieReviews.class)
+                .consumeWith(listEntityExchangeResult -> {
+                    var groups = listEntityExchangeResult.getResponseBody();
+                    assertNotNull(groups);
+                    assertEquals(2, groups.size());
+                    assertEquals(1L, groups.get(0).getMovieInfoId());
+                    assertEquals(2, groups.get(0).getReviews().size());
+                    assertEquals(2L, groups.get(1).getMovieInfoId());
+                    assertEquals(1, groups.get(1).getReviews().size());
+                });
+    }
+
+    @Test
+    void getReviewsGroupedByMovie_limitPerMovie() {
+        when(reviewReactiveRepository.findTopReviewsGroupedByMovie(Set.of(3L, 2L, 1L), 2))
+                .thenReturn(Flux.just(
+                        new MovieReviews(1L, List.of(new Review("1", 1L, "Awesome Movie", 9.5), new Review("2", 1L, "Awesome Movie 2", 9.0))),
+                        new MovieReviews(3L, List.of(new Review("4", 3L, "Excellent Movie", 8.0)))));
+
+        // one aggregation for every movie, the cap is applied inside it
+        webTestClient.get()
+                .uri(REVIEWS_URL + "/grouped?movieInfoIds={ids}&limitPerMovie={limit}", "3,2,1", 2)
+                .exchange()
+                .expectStatus()
+                .isOk()
+                .expectBodyList(MovieReviews.class)
+                .value(groups -> {
+                    assertEquals(2, groups.size());
+                    assertEquals(1L, groups.get(0).getMovieInfoId());
+                    assertEquals(2, groups.get(0).getReviews().size());
+                    assertEquals(3L, groups.get(1).getMovieInfoId());
+                });
+    }
+
+    @Test
+    void getReviewsGroupedByMovie_invalidLimitPerMovie() {
+        webTestClient.get()
+                .uri(REVIEWS_URL + "/grouped?movieInfoIds={ids}&limitPerMovie={limit}", "1", "abc")
+                .exchange()
+                .expectStatus()
+                .isBadRequest()
+                .expectBody(String.class)
+                .isEqualTo("limitPerMovie must be numeric, received abc");
+
+        webTestClient.get()
+                .uri(REVIEWS_URL + "/grouped?movieInfoIds={ids}&limitPerMovie={limit}", "1", 0)
+                .exchange()
+                .expectStatus()
+                .isBadRequest()
+                .expectBody(String.class)
+                .isEqualTo("limitPerMovie must be between 1 and 100, received 0");
+    }
+
+    @Test
+    void getReviewsGroupedByMovie_invalidId() {
+        webTestClient.get()
+                .uri(REVIEWS_URL + "/grouped?movieInfoIds={ids}", "1,abc")
+                .exchange()
+                .expectStatus()
+                .isBadRequest()
+                .expectBody(String.class)
+                .isEqualTo("movieInfoIds must be numeric, received abc");
+    }
+
+    @Test
+    void getReviewsStream_filteredByMovieAndRating() {
+        var reviews = List.of(
+                new Review("s1", 901L, "Awesome Movie", 9.5),
+                new Review("s2", 901L, "Average Movie", 5.0),
+                new Review("s3", 902L, "Excellent Movie", 9.0));
+        reviews.forEach(review -> {
+            when(reviewReactiveRepository.save(isA(Review.class))).thenReturn(Mono.just(review));
+            webTestClient.post()
+                    .uri(REVIEWS_URL)
+                    .bodyValue(review)
+                    .exchange()
+                    .expectStatus()
+                    .isCreated();
+        });
+
+        var reviewsStream = webTestClient.get()
+                .uri(REVIEWS_URL + "/stream?movieInfoId={id}&minRating={minRating}", 901, 8)
+                .exchange()
+                .expectStatus()
+                .isOk()
+                .returnResult(ReviewEvent.class)
+                .getResponseBody();
+
+        StepVerifier.create(reviewsStream)
+                .assertNext(reviewEvent -> {
+                    assertEquals(EventType.CREATED, reviewEvent.getType());
+                    assertEquals("s1", reviewEvent.getReviewId());
+                    assertEquals(9.5, reviewEvent.getReview().getRating());
+                })
+                .expectNoEvent(Duration.ofMillis(200))
+                .thenCancel()
+                .verify();
+    }
+
 }
@@ -0,0 +1,141 @@
+package com.reactivespring.stream;
+
+import com.reactivespring.domain.EventType;
+import com.reactivespring.domain.Review;
+import com.reactivespring.domain.ReviewEvent;
+import com.reactivespring.exception.ReviewStreamLaggedException;
+import org.junit.jupiter.api.Test;
+import reactor.core.publisher.Mono;
+import reactor.test.StepVerifier;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.IntStream;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class ReviewStreamUnitTest {
+
+    @Test
+    void subscribe_replaysBoundedHistoryThenLive() {
+        var reviewStream = new ReviewStream(2, Duration.ofMinutes(1), 16);
+        IntStream.rangeClosed(1, 3).forEach(i -> reviewStream.publish(review("r" + i, 1L, 8.0)));
+
+        StepVerifier.create(reviewStream.subscribe(List.of(), null).map(ReviewEvent::getReviewId))
+                .expectNext("r2", "r3")
+                .then(() -> reviewStream.publish(review("r4", 2L, 8.0)))
+                .expectNext("r4")
+                .thenCancel()
+                .verify();
+    }
+
+    @Test
+    void subscribe_onlyWatchedMovies() {
+        var reviewStream = new ReviewStream(10, Duration.ofMinutes(1), 16);
+
+        StepVerifier.create(reviewStream.subscribe(List.of(1L), null).map(ReviewEvent::getReviewId))
+                .then(() -> {
+                    reviewStream.publish(review("r1", 2L, 8.0));
+                    reviewStream.publish(review("r2", 1L, 8.0));
+                })
+                .expectNext("r2")
+                .then(() -> assertEquals(1, reviewStream.subscriberCount()))
+                .thenCancel()
+                .verify();
+
+        assertEquals(0, reviewStream.subscriberCount());
+    }
+
+    @Test
+    void publishAll_routesBatchInOrder() {
+        var reviewStream = new ReviewStream(10, Duration.ofMinutes(1), 16);
+
+        StepVerifier.create(reviewStream.subscribe(List.of(1L), null).map(ReviewEvent::getReviewId))
+                .then(() -> reviewStream.publishAll(List.of(
+                        review("r1", 1L, 8.0), review("r2", 2L, 8.0), review("r3", 1L, 8.0))))
+                .expectNext("r1", "r3")
+                .then(() -> assertEquals(3, reviewStream.historyCount()))
+                .thenCancel()
+                .verify();
+    }
+
+    @Test
+    void publishAll_concurrentPublishersKeepOrder() throws Exception {
+        var reviewStream = new ReviewStream(10, Duration.ofMinutes(1), 16);
+        var delivering = new CountDownLatch(1);
+        var release = new CountDownLatch(1);
+        // the first subscriber holds the publisher of r1 while it delivers, and filters out r2
+        var blocking = reviewStream.subscribe(List.of(), 8.0).subscribe(event -> {
+            if ("r1".equals(event.getReviewId())) {
+                delivering.countDown();
+                awaitQuietly(release);
+            }
+        });
+        var second = reviewStream.subscribe(List.of(), null).map(ReviewEvent::getReviewId).take(2).collectList().toFuture();
+
+        var first = CompletableFuture.runAsync(() -> reviewStream.publish(review("r1", 1L, 8.0)));
+        delivering.await(1, TimeUnit.SECONDS);
+        var next = CompletableFuture.runAsync(() -> reviewStream.publish(review("r2", 1L, 5.0)));
+        Mono.delay(Duration.ofMillis(100)).block();
+        release.countDown();
+        CompletableFuture.allOf(first, next).get(1, TimeUnit.SECONDS);
+
+        assertEquals(List.of("r1", "r2"), second.get(1, TimeUnit.SECONDS));
+        blocking.dispose();
+    }
+
+    @Test
+    void subscribe_deletesPassRatingFilter() {
+        var reviewStream = new ReviewStream(10, Duration.ofMinutes(1), 16);
+
+        StepVerifier.create(reviewStream.subscribe(List.of(1L), 8.0).map(ReviewEvent::getType))
+                .then(() -> {
+                    reviewStream.publish(review("r1", 1L, 5.0));
+                    reviewStream.publish(ReviewEvent.of(EventType.DELETED, new Review("r1", 1L, "Awesome Movie", 5.0)));
+                })
+                .expectNext(EventType.DELETED)
+                .thenCancel()
+                .verify();
+    }
+
+    @Test
+    void history_expiresByAge() {
+        var reviewStream = new ReviewStream(10, Duration.ofMillis(50), 16);
+        reviewStream.publish(review("r1", 1L, 8.0));
+        assertEquals(1, reviewStream.historyCount());
+
+        Mono.delay(Duration.ofMillis(100)).block();
+
+        assertEquals(0, reviewStream.historyCount());
+    }
+
+    @Test
+    void subscribe_slowSubscriberLags() {
+        var reviewStream = new ReviewStream(0, Duration.ofMinutes(1), 2);
+
+        StepVerifier.create(reviewStream.subscribe(List.of(1L), null), 0)
+                .then(() -> IntStream.rangeClosed(1, 20).forEach(i -> reviewStream.publish(review("r" + i, 1L, 8.0))))
+                .thenRequest(Long.MAX_VALUE)
+                .thenConsumeWhile(review -> true)
+                .expectError(ReviewStreamLaggedException.class)
+                .verify();
+
+        assertEquals(0, reviewStream.subscriberCount());
+    }
+
+    private void awaitQuietly(CountDownLatch latch) {
+        try {
+            latch.await(1, TimeUnit.SECONDS);
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private ReviewEvent review(String reviewId, Long movieInfoId, Double rating) {
+        return ReviewEvent.of(EventType.CREATED, new Review(reviewId, movieInfoId, "Awesome Movie", rating));
+    }
+
+}
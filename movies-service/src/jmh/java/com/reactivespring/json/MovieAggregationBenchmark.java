@@ -0,0 +1,97 @@
+package com.reactivespring.json;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.reactivespring.domain.Movie;
+import com.reactivespring.domain.MovieInfo;
+import com.reactivespring.domain.Review;
+import io.netty.buffer.PooledByteBufAllocator;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.springframework.core.io.buffer.DataBuffer;
+import org.springframework.core.io.buffer.DataBufferUtils;
+import org.springframework.core.io.buffer.NettyDataBufferFactory;
+import org.springframework.http.converter.json.Jackson2ObjectMapperBuilder;
+import reactor.core.publisher.Flux;
+
+import java.time.LocalDate;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+/**
+ * GET /v1/movies/{id} body built from the reviews body of movies-review-service, received in pooled buffers of
+ * chunkSize bytes as from the network: decoded into Reviews and encoded again inside a Movie, as before, against
+ * joined, checked and spliced as received. Run with ./gradlew jmh, the gc profiler reports the allocation rate
+ * per operation (gc.alloc.rate.norm) next to the throughput.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class MovieAggregationBenchmark {
+
+    private static final TypeReference<List<Review>> REVIEWS = new TypeReference<>() {
+    };
+
+    @Param({"10", "1000"})
+    int reviewCount;
+
+    @Param({"8192"})
+    int chunkSize;
+
+    ObjectMapper objectMapper;
+    MovieJsonWriter movieJsonWriter;
+    NettyDataBufferFactory bufferFactory = new NettyDataBufferFactory(PooledByteBufAllocator.DEFAULT);
+    MovieInfo movieInfo;
+    byte[] reviewsJson;
+
+    @Setup
+    public void setUp() throws Exception {
+        objectMapper = Jackson2ObjectMapperBuilder.json().build();
+        movieJsonWriter = new MovieJsonWriter(objectMapper);
+        movieInfo = new MovieInfo("1", "Batman Begins", 2005, List.of("Christian Bale", "Michael Cane"),
+                LocalDate.parse("2005-06-15"));
+        var reviews = IntStream.range(0, reviewCount)
+                .mapToObj(i -> new Review(String.valueOf(i), 1L,
+                        "Review " + i + " of Batman Begins, a dark and grounded take on the character", 5.0 + i % 5))
+                .collect(Collectors.toList());
+        reviewsJson = objectMapper.writeValueAsBytes(reviews);
+    }
+
+    @Benchmark
+    public byte[] objectPath() throws Exception {
+        var body = DataBufferUtils.join(chunks()).block();
+        try {
+            var reviews = objectMapper.readValue(body.asInputStream(), REVIEWS);
+            return objectMapper.writeValueAsBytes(new Movie(movieInfo, reviews));
+        } finally {
+            DataBufferUtils.release(body);
+        }
+    }
+
+    @Benchmark
+    public DataBuffer rawPath() {
+        var reviews = movieJsonWriter.joinJsonArray(chunks(), Integer.MAX_VALUE).block();
+        return movieJsonWriter.write(movieInfo, reviews);
+    }
+
+    // a fresh copy of the body per operation, the buffers are released by the joins
+    private Flux<DataBuffer> chunks() {
+        return Flux.range(0, (reviewsJson.length + chunkSize - 1) / chunkSize)
+                .map(chunk -> {
+                    var offset = chunk * chunkSize;
+                    var length = Math.min(chunkSize, reviewsJson.length - offset);
+                    var buffer = bufferFactory.allocateBuffer(length);
+                    buffer.write(reviewsJson, offset, length);
+                    return buffer;
+                });
+    }
+
+}
@@ -0,0 +1,61 @@
+package com.reactivespring.cache;
+
+import com.github.benmanes.caffeine.cache.AsyncCache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.reactivespring.domain.MovieInfo;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import reactor.core.publisher.Mono;
+
+import java.time.Duration;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Function;
+
+/**
+ * Bounded, TTL based cache of the MovieInfos served by movies-info-service.
+ * Hit, miss and eviction counts are published under the "movieInfoCache" cache metrics.
+ * A load is the cache entry from its start, so an update or delete event applied while it runs
+ * replaces or drops it instead of being overwritten by the older value it brings back.
+ */
+@Component
+public class MovieInfoCache {
+
+    private AsyncCache<String, MovieInfo> cache;
+
+    public MovieInfoCache(@Value("${restClient.moviesInfoCache.maximumSize}") long maximumSize,
+                          @Value("${restClient.moviesInfoCache.timeToLive}") Duration timeToLive,
+                          MeterRegistry meterRegistry) {
+        this.cache = Caffeine.newBuilder()
+                .maximumSize(maximumSize)
+                .expireAfterWrite(timeToLive)
+                .recordStats()
+                .buildAsync();
+        CaffeineCacheMetrics.monitor(meterRegistry, cache, "movieInfoCache");
+    }
+
+    public Mono<MovieInfo> get(String movieId, Function<String, Mono<MovieInfo>> loader) {
+        // callers wait on a copy of the entry, one cancelling does not cancel the load the others share,
+        // and a load completing empty or failed leaves no entry behind
+        return Mono.defer(() -> Mono.fromFuture(cache.get(movieId, (id, executor) -> loader.apply(id).toFuture())
+                .thenApply(Function.identity())));
+    }
+
+    /**
+     * Replaces the cached copy of the movie, or the load still running for it, movies that are not cached are left out.
+     */
+    public void refresh(MovieInfo movieInfo) {
+        cache.asMap().computeIfPresent(movieInfo.getMovieInfoId(),
+                (movieId, cached) -> CompletableFuture.completedFuture(movieInfo));
+    }
+
+    public void evict(String movieId) {
+        cache.synchronous().invalidate(movieId);
+    }
+
+    public void evictAll() {
+        cache.synchronous().invalidateAll();
+    }
+
+}
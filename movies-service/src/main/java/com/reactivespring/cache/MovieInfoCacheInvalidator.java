@@ -0,0 +1,63 @@
+package com.reactivespring.cache;
+
+import com.reactivespring.client.SharedMovieInfoStream;
+import com.reactivespring.domain.EventType;
+import com.reactivespring.domain.MovieInfoEvent;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Component;
+import reactor.core.Disposable;
+import reactor.util.retry.Retry;
+
+import javax.annotation.PreDestroy;
+import java.time.Duration;
+
+/**
+ * Keeps {@link MovieInfoCache} fresh by following the shared movies-info-service stream: updated
+ * movies are refreshed and deleted ones evicted. Resubscribes with backoff when its buffer
+ * overflows with the ERROR strategy.
+ */
+@Component
+@ConditionalOnProperty(name = "restClient.moviesInfoCache.streamInvalidation", havingValue = "true")
+@Slf4j
+public class MovieInfoCacheInvalidator {
+
+    private SharedMovieInfoStream sharedMovieInfoStream;
+    private MovieInfoCache movieInfoCache;
+
+    private Disposable subscription;
+
+    public MovieInfoCacheInvalidator(SharedMovieInfoStream sharedMovieInfoStream, MovieInfoCache movieInfoCache) {
+        this.sharedMovieInfoStream = sharedMovieInfoStream;
+        this.movieInfoCache = movieInfoCache;
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void subscribe() {
+        subscription = sharedMovieInfoStream.stream()
+                .doOnNext(this::apply)
+                .doOnError(ex -> log.warn("MovieInfo stream subscription failed, cache invalidation paused : {}", ex.getMessage()))
+                .repeatWhen(completed -> completed.delayElements(Duration.ofSeconds(1)))
+                .retryWhen(Retry.backoff(Long.MAX_VALUE, Duration.ofSeconds(1))
+                        .maxBackoff(Duration.ofSeconds(30)))
+                .subscribe();
+    }
+
+    private void apply(MovieInfoEvent event) {
+        if (event.getType() == EventType.DELETED) {
+            movieInfoCache.evict(event.getMovieInfoId());
+        } else if (event.getMovieInfo() != null) {
+            movieInfoCache.refresh(event.getMovieInfo());
+        }
+    }
+
+    @PreDestroy
+    public void dispose() {
+        if (subscription != null) {
+            subscription.dispose();
+        }
+    }
+
+}
@@ -1,31 +1,67 @@
 package com.reactivespring.client;
 
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.reactivespring.cache.MovieInfoCache;
+import com.reactivespring.config.HttpClientProperties;
 import com.reactivespring.domain.MovieInfo;
+import com.reactivespring.domain.MovieInfoBatchItem;
+import com.reactivespring.domain.MovieInfoEvent;
 import com.reactivespring.exception.MoviesInfoClientException;
 import com.reactivespring.exception.MoviesInfoServerException;
-import com.reactivespring.utils.RetryUtil;
+import com.reactivespring.resilience.DownstreamResilience;
+import com.reactivespring.resilience.HedgedRequests;
+import com.reactivespring.utils.SingleFlight;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Qualifier;
 import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.io.buffer.DataBuffer;
+import org.springframework.core.io.buffer.DataBufferUtils;
 import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
 import org.springframework.stereotype.Component;
 import org.springframework.web.reactive.function.client.WebClient;
+import org.springframework.web.util.UriComponentsBuilder;
 import reactor.core.publisher.Flux;
 import reactor.core.publisher.Mono;
+import reactor.netty.http.client.HttpClientRequest;
+
+import java.util.List;
+import java.util.Optional;
 
 @Component
 @Slf4j
 public class MoviesInfoRestClient {
 
     private WebClient webClient;
+    private MovieInfoCache movieInfoCache;
+    private DownstreamResilience moviesInfoResilience;
+    private HedgedRequests moviesInfoHedging;
+    private HttpClientProperties httpClientProperties;
+    private ObjectMapper objectMapper;
+    private SingleFlight<String, MovieInfo> movieInfoCalls = new SingleFlight<>();
 
     @Value("${restClient.moviesInfoUrl}")
     private String moviesInfoUrl;
 
-    public MoviesInfoRestClient(WebClient webClient) {
+    public MoviesInfoRestClient(@Qualifier("moviesInfoWebClient") WebClient webClient, MovieInfoCache movieInfoCache,
+                                @Qualifier("moviesInfoResilience") DownstreamResilience moviesInfoResilience,
+                                @Qualifier("moviesInfoHedging") HedgedRequests moviesInfoHedging,
+                                HttpClientProperties httpClientProperties, ObjectMapper objectMapper) {
         this.webClient = webClient;
+        this.movieInfoCache = movieInfoCache;
+        this.moviesInfoResilience = moviesInfoResilience;
+        this.moviesInfoHedging = moviesInfoHedging;
+        this.httpClientProperties = httpClientProperties;
+        this.objectMapper = objectMapper;
     }
 
     public Mono<MovieInfo> retrieveMovieInfo(String movieId) {
+        return movieInfoCache.get(movieId,
+                id -> movieInfoCalls.execute(id, () -> moviesInfoHedging.hedge(() -> fetchMovieInfo(id))));
+    }
+
+    private Mono<MovieInfo> fetchMovieInfo(String movieId) {
         var url  = moviesInfoUrl.concat("/{id}");
 
         return webClient.get()
@@ -53,15 +89,52 @@ public class MoviesInfoRestClient {
                 })
                 .bodyToMono(MovieInfo.class)
 //                .retry(3)
-                .retryWhen(RetryUtil.retrySpec())
+                .transform(moviesInfoResilience::decorate)
+                .log();
+    }
+
+    public Flux<MovieInfoBatchItem> retrieveMovieInfos(List<String> movieIds) {
+        var url  = moviesInfoUrl.concat("/batch");
+
+        return webClient.post()
+                .uri(url)
+                .accept(MediaType.APPLICATION_NDJSON)
+                .bodyValue(movieIds)
+                .retrieve()
+                .onStatus(HttpStatus::is4xxClientError, clientResponse -> {
+                    log.info("Status code is : {}", clientResponse.statusCode().value());
+
+                    return clientResponse.bodyToMono(String.class)
+                            .flatMap(responseMessage -> Mono.error(new MoviesInfoClientException(
+                                    responseMessage, clientResponse.statusCode().value()
+                            )));
+                })
+                .onStatus(HttpStatus::is5xxServerError, clientResponse -> {
+                    log.info("Status code is : {}", clientResponse.statusCode().value());
+
+                    return clientResponse.bodyToMono(String.class)
+                            .flatMap(responseMessage -> Mono.error(new MoviesInfoServerException(
+                                    "Server Exception in MoviesInfoService " + responseMessage)));
+                })
+                .bodyToFlux(MovieInfoBatchItem.class)
+                .transform(moviesInfoResilience::decorate)
                 .log();
     }
 
-    public Flux<MovieInfo> retrieveMovieInfoStream() {
-        var url  = moviesInfoUrl.concat("/stream");
+    /**
+     * Events from the given sequence on, all the retained events first when it is null.
+     */
+    public Flux<MovieInfoEvent> retrieveMovieInfoStream(String epoch, Long fromSequence) {
+        var url = UriComponentsBuilder.fromHttpUrl(moviesInfoUrl)
+                .path("/stream")
+                .queryParamIfPresent("epoch", Optional.ofNullable(epoch))
+                .queryParamIfPresent("from", Optional.ofNullable(fromSequence))
+                .toUriString();
 
         return webClient.get()
                 .uri(url)
+                .httpRequest(httpRequest -> ((HttpClientRequest) httpRequest.getNativeRequest())
+                        .responseTimeout(httpClientProperties.getMoviesInfo().getStreamIdleTimeout()))
                 .retrieve()
                 .onStatus(HttpStatus::is4xxClientError, clientResponse -> {
                     log.info("Status code is : {}", clientResponse.statusCode().value());
@@ -78,10 +151,67 @@ public class MoviesInfoRestClient {
                             .flatMap(responseMessage -> Mono.error(new MoviesInfoServerException(
                                     "Server Exception in MoviesInfoService " + responseMessage)));
                 })
-                .bodyToFlux(MovieInfo.class)
+                // one String per NDJSON line, decoded here so the event keeps its line
+                .bodyToFlux(String.class)
+                .filter(line -> !line.isBlank())
+                .map(this::decodeEvent)
 //                .retry(3)
-                .retryWhen(RetryUtil.retrySpec())
+                .transform(moviesInfoResilience::decorateStream)
                 .log();
 
     }
+
+    private MovieInfoEvent decodeEvent(String line) {
+        try {
+            var event = objectMapper.readValue(line, MovieInfoEvent.class);
+            event.setLine(line);
+            return event;
+        } catch (JsonProcessingException ex) {
+            throw new MoviesInfoServerException("Unreadable event in the MoviesInfoService stream " + ex.getOriginalMessage());
+        }
+    }
+
+    /**
+     * The event stream as received from the given position, NDJSON lines are forwarded in the upstream buffers
+     * without being decoded. The replay comes from the movies-info-service event log, so each resuming caller
+     * gets its own upstream request; a slow reader slows it down instead of dropping events.
+     * Only the wait for the response status is retried, a retry after the first buffer would repeat events.
+     */
+    public Flux<DataBuffer> streamMovieInfoEvents(String epoch, Long fromSequence) {
+        var url = UriComponentsBuilder.fromHttpUrl(moviesInfoUrl)
+                .path("/stream")
+                .queryParamIfPresent("epoch", Optional.ofNullable(epoch))
+                .queryParamIfPresent("from", Optional.ofNullable(fromSequence))
+                .toUriString();
+
+        return webClient.get()
+                .uri(url)
+                .accept(MediaType.APPLICATION_NDJSON)
+                .httpRequest(httpRequest -> ((HttpClientRequest) httpRequest.getNativeRequest())
+                        .responseTimeout(httpClientProperties.getMoviesInfo().getStreamIdleTimeout()))
+                .retrieve()
+                .onStatus(HttpStatus::is4xxClientError, clientResponse -> {
+                    log.info("Status code is : {}", clientResponse.statusCode().value());
+
+                    return clientResponse.bodyToMono(String.class)
+                            .flatMap(responseMessage -> Mono.error(new MoviesInfoClientException(
+                                    responseMessage, clientResponse.statusCode().value()
+                            )));
+                })
+                .onStatus(HttpStatus::is5xxServerError, clientResponse -> {
+                    log.info("Status code is : {}", clientResponse.statusCode().value());
+
+                    return clientResponse.bodyToMono(String.class)
+                            .flatMap(responseMessage -> Mono.error(new MoviesInfoServerException(
+                                    "Server Exception in MoviesInfoService " + responseMessage)));
+                })
+                .toEntityFlux(DataBuffer.class)
+                .transform(moviesInfoResilience::decorate)
+                .flatMapMany(responseEntity -> responseEntity.getBody() == null
+                        ? Flux.<DataBuffer>empty()
+                        : responseEntity.getBody())
+                // buffers read but not written when the client goes away go back to the pool
+                .doOnDiscard(DataBuffer.class, DataBufferUtils::release);
+    }
+
 }
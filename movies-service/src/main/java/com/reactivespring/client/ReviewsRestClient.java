@@ -1,32 +1,63 @@
 package com.reactivespring.client;
 
+import com.reactivespring.domain.MovieReviews;
 import com.reactivespring.domain.Review;
+import com.reactivespring.domain.ReviewSummary;
 import com.reactivespring.exception.ReviewsClientException;
 import com.reactivespring.exception.ReviewsServerException;
-import com.reactivespring.utils.RetryUtil;
+import com.reactivespring.json.MovieJsonWriter;
+import com.reactivespring.resilience.DownstreamResilience;
+import com.reactivespring.utils.SingleFlight;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Qualifier;
 import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.io.buffer.DataBuffer;
 import org.springframework.http.HttpStatus;
 import org.springframework.stereotype.Component;
+import org.springframework.util.unit.DataSize;
 import org.springframework.web.reactive.function.client.WebClient;
 import org.springframework.web.util.UriComponentsBuilder;
 import reactor.core.publisher.Flux;
 import reactor.core.publisher.Mono;
 
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+
 @Component
 @Slf4j
 public class ReviewsRestClient {
 
     private WebClient webClient;
+    private DownstreamResilience reviewsResilience;
+    private MovieJsonWriter movieJsonWriter;
+    private SingleFlight<String, ReviewSummary> reviewSummaryCalls = new SingleFlight<>();
+    private SingleFlight<String, byte[]> reviewsJsonCalls = new SingleFlight<>();
 
     @Value("${restClient.reviewsUrl}")
     private String reviewsUrl;
 
-    public ReviewsRestClient(WebClient webClient) {
+    @Value("${restClient.reviewsJsonMaxSize}")
+    private DataSize reviewsJsonMaxSize;
+
+    public ReviewsRestClient(@Qualifier("reviewsWebClient") WebClient webClient,
+                             @Qualifier("reviewsResilience") DownstreamResilience reviewsResilience,
+                             MovieJsonWriter movieJsonWriter) {
         this.webClient = webClient;
+        this.reviewsResilience = reviewsResilience;
+        this.movieJsonWriter = movieJsonWriter;
     }
 
-    public Flux<Review> retrieveReviews(String movieId) {
+    /**
+     * The reviews array as sent by movies-review-service, not decoded. The body is read as raw buffers, so the
+     * codec's in-memory limit does not apply, and joined up to restClient.reviewsJsonMaxSize while checked to be
+     * one JSON array. A larger or malformed body fails without a retry.
+     */
+    public Mono<byte[]> retrieveReviewsJson(String movieId) {
+        return reviewsJsonCalls.execute(movieId, () -> fetchReviewsJson(movieId));
+    }
+
+    private Mono<byte[]> fetchReviewsJson(String movieId) {
         var url = UriComponentsBuilder.fromHttpUrl(reviewsUrl)
                 .queryParam("movieInfoId", movieId)
                 .buildAndExpand().toUriString();
@@ -49,8 +80,113 @@ public class ReviewsRestClient {
                             .flatMap(responseMessage -> Mono.error(new ReviewsServerException(
                                     "Server Exception in ReviewsService " + responseMessage)));
                 })
-                .bodyToFlux(Review.class)
-                .retryWhen(RetryUtil.retrySpec())
+                .bodyToFlux(DataBuffer.class)
+                .as(body -> movieJsonWriter.joinJsonArray(body, (int) reviewsJsonMaxSize.toBytes()))
+                .transform(reviewsResilience::decorate);
+    }
+
+    /**
+     * Reviews as they are decoded, neither coalesced nor replayed so none of them is kept once written.
+     * Only the wait for the response status is retried, a retry after the first review would repeat it.
+     */
+    public Flux<Review> streamReviews(String movieId) {
+        var url = UriComponentsBuilder.fromHttpUrl(reviewsUrl)
+                .queryParam("movieInfoId", movieId)
+                .buildAndExpand().toUriString();
+        return webClient.get()
+                .uri(url)
+                .retrieve()
+                .onStatus(HttpStatus::is4xxClientError, clientResponse -> {
+                    log.info("Status code is : {}", clientResponse.statusCode().value());
+                    if (clientResponse.statusCode().equals(HttpStatus.NOT_FOUND)) {
+                        return Mono.empty();
+                    }
+
+                    return clientResponse.bodyToMono(String.class)
+                            .flatMap(responseMessage -> Mono.error(new ReviewsClientException(responseMessage)));
+                })
+                .onStatus(HttpStatus::is5xxServerError, clientResponse -> {
+                    log.info("Status code is : {}", clientResponse.statusCode().value());
+
+                    return clientResponse.bodyToMono(String.class)
+                            .flatMap(responseMessage -> Mono.error(new ReviewsServerException(
+                                    "Server Exception in ReviewsService " + responseMessage)));
+                })
+                .toEntityFlux(Review.class)
+                .transform(reviewsResilience::decorate)
+                .flatMapMany(responseEntity -> responseEntity.getBody() == null
+                        ? Flux.empty()
+                        : responseEntity.getBody());
+    }
+
+    public Mono<ReviewSummary> retrieveReviewSummary(String movieId, int topReviews) {
+        // reviews are keyed by a numeric movieInfoId, other ids cannot have any
+        if (movieId.isEmpty() || !movieId.chars().allMatch(Character::isDigit)) {
+            return Mono.just(new ReviewSummary(null, 0, null, null, null, Map.of(), List.of()));
+        }
+        return reviewSummaryCalls.execute(movieId + ":" + topReviews, () -> fetchReviewSummary(movieId, topReviews));
+    }
+
+    private Mono<ReviewSummary> fetchReviewSummary(String movieId, int topReviews) {
+        var url = UriComponentsBuilder.fromHttpUrl(reviewsUrl)
+                .path("/summary/{movieInfoId}")
+                .queryParam("topReviews", topReviews)
+                .buildAndExpand(movieId).toUriString();
+        return webClient.get()
+                .uri(url)
+                .retrieve()
+                .onStatus(HttpStatus::is4xxClientError, clientResponse -> {
+                    log.info("Status code is : {}", clientResponse.statusCode().value());
+
+                    return clientResponse.bodyToMono(String.class)
+                            .flatMap(responseMessage -> Mono.error(new ReviewsClientException(responseMessage)));
+                })
+                .onStatus(HttpStatus::is5xxServerError, clientResponse -> {
+                    log.info("Status code is : {}", clientResponse.statusCode().value());
+
+                    return clientResponse.bodyToMono(String.class)
+                            .flatMap(responseMessage -> Mono.error(new ReviewsServerException(
+                                    "Server Exception in ReviewsService " + responseMessage)));
+                })
+                .bodyToMono(ReviewSummary.class)
+                .transform(reviewsResilience::decorate)
+                .log();
+    }
+
+    public Flux<MovieReviews> retrieveReviewsGroupedByMovie(List<String> movieIds) {
+        // reviews are keyed by a numeric movieInfoId, other ids cannot have any
+        var movieInfoIds = movieIds.stream()
+                .filter(movieId -> !movieId.isEmpty() && movieId.chars().allMatch(Character::isDigit))
+                .collect(Collectors.joining(","));
+        if (movieInfoIds.isEmpty()) {
+            return Flux.empty();
+        }
+
+        var url = UriComponentsBuilder.fromHttpUrl(reviewsUrl)
+                .path("/grouped")
+                .queryParam("movieInfoIds", movieInfoIds)
+                .buildAndExpand().toUriString();
+        return webClient.get()
+                .uri(url)
+                .retrieve()
+                .onStatus(HttpStatus::is4xxClientError, clientResponse -> {
+                    log.info("Status code is : {}", clientResponse.statusCode().value());
+                    if (clientResponse.statusCode().equals(HttpStatus.NOT_FOUND)) {
+                        return Mono.empty();
+                    }
+
+                    return clientResponse.bodyToMono(String.class)
+                            .flatMap(responseMessage -> Mono.error(new ReviewsClientException(responseMessage)));
+                })
+                .onStatus(HttpStatus::is5xxServerError, clientResponse -> {
+                    log.info("Status code is : {}", clientResponse.statusCode().value());
+
+                    return clientResponse.bodyToMono(String.class)
+                            .flatMap(responseMessage -> Mono.error(new ReviewsServerException(
+                                    "Server Exception in ReviewsService " + responseMessage)));
+                })
+                .bodyToFlux(MovieReviews.class)
+                .transform(reviewsResilience::decorate)
                 .log();
     }
 
@@ -0,0 +1,123 @@
+package com.reactivespring.client;
+
+import com.reactivespring.domain.MovieInfoEvent;
+import com.reactivespring.exception.MoviesInfoClientException;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.io.buffer.DataBuffer;
+import org.springframework.core.io.buffer.DefaultDataBufferFactory;
+import org.springframework.http.HttpStatus;
+import org.springframework.stereotype.Component;
+import reactor.core.publisher.BufferOverflowStrategy;
+import reactor.core.publisher.Flux;
+import reactor.util.retry.Retry;
+
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.Objects;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Single upstream subscription to the movies-info-service event stream, multicast to every local subscriber.
+ * Each subscriber gets its own bounded buffer so a slow client never holds back the others,
+ * the upstream is reconnected with backoff when it drops, and it is disconnected once the last
+ * subscriber has been gone for the grace period.
+ * <p>
+ * A reconnect resumes after the last sequence seen, so no event is lost while the upstream was down
+ * unless movies-info-service no longer retains it (410, then the retained events are read again and
+ * the ones already seen skipped). Sequences are numbered per epoch, the in-memory event log of one
+ * movies-info-service instance, so the resume sends the epoch along: an instance that restarted or
+ * another instance behind the same url replays its retained events, and an event of a new epoch
+ * starts the sequence over instead of being skipped as already seen. Events of the old epoch not
+ * retained by the new one are missed, the ones replayed may have been seen already.
+ * A disconnect after the grace period forgets the position.
+ * With {@code restClient.moviesInfoCache.streamInvalidation} on, {@link com.reactivespring.cache.MovieInfoCacheInvalidator}
+ * stays subscribed for the life of the application, so the upstream is always connected and the
+ * grace period never applies.
+ */
+@Component
+@Slf4j
+public class SharedMovieInfoStream {
+
+    private Flux<MovieInfoEvent> upstream;
+    private int bufferSize;
+    private BufferOverflowStrategy overflowStrategy;
+
+    private AtomicInteger subscribers = new AtomicInteger();
+    // epoch and last sequence received from the upstream, null and 0 before the first event
+    private volatile String epoch;
+    private AtomicLong lastSequence = new AtomicLong();
+    private AtomicBoolean resumeFromOldest = new AtomicBoolean();
+    private Counter dropped;
+
+    public SharedMovieInfoStream(MoviesInfoRestClient moviesInfoRestClient,
+                                 @Value("${restClient.moviesInfoStream.bufferSize}") int bufferSize,
+                                 @Value("${restClient.moviesInfoStream.overflowStrategy}") BufferOverflowStrategy overflowStrategy,
+                                 @Value("${restClient.moviesInfoStream.reconnectMinBackoff}") Duration reconnectMinBackoff,
+                                 @Value("${restClient.moviesInfoStream.reconnectMaxBackoff}") Duration reconnectMaxBackoff,
+                                 @Value("${restClient.moviesInfoStream.disconnectGracePeriod}") Duration disconnectGracePeriod,
+                                 MeterRegistry meterRegistry) {
+        this.bufferSize = bufferSize;
+        this.overflowStrategy = overflowStrategy;
+        this.dropped = Counter.builder("movies.stream.dropped")
+                .register(meterRegistry);
+        meterRegistry.gauge("movies.stream.subscribers", subscribers);
+
+        this.upstream = Flux.defer(() -> {
+                    var from = resumeFrom();
+                    return moviesInfoRestClient.retrieveMovieInfoStream(from != null ? epoch : null, from);
+                })
+                // events repeated by a retry or read again after a 410 are skipped, a new epoch counts from 1 again
+                .filter(event -> !Objects.equals(event.getEpoch(), epoch) || event.getSequence() > lastSequence.get())
+                .doOnNext(event -> {
+                    if (!Objects.equals(event.getEpoch(), epoch)) {
+                        log.info("MovieInfo stream switched to epoch {}, sequence {}", event.getEpoch(), event.getSequence());
+                        epoch = event.getEpoch();
+                    }
+                    lastSequence.set(event.getSequence());
+                })
+                .doOnError(ex -> {
+                    if (ex instanceof MoviesInfoClientException
+                            && ((MoviesInfoClientException) ex).getStatusCode() == HttpStatus.GONE.value()) {
+                        log.warn("MovieInfo events after sequence {} are no longer retained, some were missed", lastSequence.get());
+                        resumeFromOldest.set(true);
+                    }
+                    log.warn("MovieInfo stream failed, reconnecting : {}", ex.getMessage());
+                })
+                .repeatWhen(completed -> completed.delayElements(reconnectMinBackoff))
+                .retryWhen(Retry.backoff(Long.MAX_VALUE, reconnectMinBackoff)
+                        .maxBackoff(reconnectMaxBackoff))
+                .doOnCancel(() -> {
+                    epoch = null;
+                    lastSequence.set(0);
+                })
+                .publish()
+                .refCount(1, disconnectGracePeriod);
+    }
+
+    private Long resumeFrom() {
+        var last = lastSequence.get();
+        return last == 0 || resumeFromOldest.getAndSet(false) ? null : last + 1;
+    }
+
+    /**
+     * The events as the NDJSON lines movies-info-service sent, wrapped without being encoded again.
+     * Dropped on overflow like the events of {@link #stream()}, a reader sees the gap in the sequences.
+     */
+    public Flux<DataBuffer> lines() {
+        return stream()
+                .map(event -> DefaultDataBufferFactory.sharedInstance.wrap((event.getLine() + "\n").getBytes(StandardCharsets.UTF_8)));
+    }
+
+    public Flux<MovieInfoEvent> stream() {
+        return upstream
+                .onBackpressureBuffer(bufferSize, event -> dropped.increment(), overflowStrategy)
+                .doOnSubscribe(subscription -> subscribers.incrementAndGet())
+                .doFinally(signalType -> subscribers.decrementAndGet());
+    }
+
+}
@@ -0,0 +1,42 @@
+package com.reactivespring.config;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+import java.time.Duration;
+
+/**
+ * Connection pool and transport settings of the WebClient used for each downstream service.
+ */
+@Data
+@ConfigurationProperties(prefix = "rest-client.http")
+public class HttpClientProperties {
+
+    private Pool moviesInfo = new Pool();
+    private Pool reviews = new Pool();
+
+    @Data
+    public static class Pool {
+
+        private int maxConnections = 200;
+        // requests waiting for a connection once the pool is exhausted
+        private int pendingAcquireMaxCount = 500;
+        private Duration pendingAcquireTimeout = Duration.ofSeconds(5);
+        // idle and old connections are closed before the backend or a proxy silently drops them
+        private Duration maxIdleTime = Duration.ofSeconds(30);
+        private Duration maxLifeTime = Duration.ofMinutes(5);
+        private Duration evictInBackground = Duration.ofSeconds(30);
+
+        private Duration connectTimeout = Duration.ofSeconds(2);
+        private Duration responseTimeout = Duration.ofSeconds(5);
+        // read timeout of long lived streaming responses, which can be silent for a while between events
+        private Duration streamIdleTimeout = Duration.ofMinutes(10);
+
+        // cleartext HTTP/2 (prior knowledge) instead of HTTP/1.1
+        private boolean h2c = false;
+        // advertise gzip and transparently decompress responses
+        private boolean compression = true;
+
+    }
+
+}
@@ -0,0 +1,34 @@
+package com.reactivespring.config;
+
+import com.reactivespring.exception.MoviesInfoServerException;
+import com.reactivespring.exception.ReviewsServerException;
+import com.reactivespring.resilience.DownstreamResilience;
+import com.reactivespring.resilience.HedgedRequests;
+import com.reactivespring.resilience.ResilienceProperties;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.boot.context.properties.EnableConfigurationProperties;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+@Configuration
+@EnableConfigurationProperties(ResilienceProperties.class)
+public class ResilienceConfig {
+
+    @Bean
+    public DownstreamResilience moviesInfoResilience(ResilienceProperties resilienceProperties, MeterRegistry meterRegistry) {
+        return new DownstreamResilience("movies-info", resilienceProperties.getMoviesInfo(), meterRegistry,
+                message -> new MoviesInfoServerException("Server Exception in MoviesInfoService " + message));
+    }
+
+    @Bean
+    public HedgedRequests moviesInfoHedging(ResilienceProperties resilienceProperties, MeterRegistry meterRegistry) {
+        return new HedgedRequests("movies-info", resilienceProperties.getMoviesInfo().getHedging(), meterRegistry);
+    }
+
+    @Bean
+    public DownstreamResilience reviewsResilience(ResilienceProperties resilienceProperties, MeterRegistry meterRegistry) {
+        return new DownstreamResilience("reviews", resilienceProperties.getReviews(), meterRegistry,
+                message -> new ReviewsServerException("Server Exception in ReviewsService " + message));
+    }
+
+}
@@ -1,15 +1,68 @@
 package com.reactivespring.config;
 
+import io.netty.channel.ChannelOption;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.boot.context.properties.EnableConfigurationProperties;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
+import org.springframework.http.client.reactive.ReactorClientHttpConnector;
 import org.springframework.web.reactive.function.client.WebClient;
+import reactor.netty.http.HttpProtocol;
+import reactor.netty.http.client.HttpClient;
+import reactor.netty.resources.ConnectionProvider;
 
 @Configuration
+@EnableConfigurationProperties(HttpClientProperties.class)
 public class WebClientConfig {
 
+    // pools are closed with the context, a refreshed test context does not leave the old ones open
+    @Bean(destroyMethod = "dispose")
+    public ConnectionProvider moviesInfoConnectionProvider(HttpClientProperties httpClientProperties) {
+        return connectionProvider("movies-info", httpClientProperties.getMoviesInfo());
+    }
+
+    @Bean(destroyMethod = "dispose")
+    public ConnectionProvider reviewsConnectionProvider(HttpClientProperties httpClientProperties) {
+        return connectionProvider("reviews", httpClientProperties.getReviews());
+    }
+
+    @Bean
+    public WebClient moviesInfoWebClient(WebClient.Builder builder,
+                                         @Qualifier("moviesInfoConnectionProvider") ConnectionProvider connectionProvider,
+                                         HttpClientProperties httpClientProperties) {
+        return webClient(builder, connectionProvider, httpClientProperties.getMoviesInfo());
+    }
+
     @Bean
-    public WebClient webClient(WebClient.Builder builder) {
-        return builder.build();
+    public WebClient reviewsWebClient(WebClient.Builder builder,
+                                      @Qualifier("reviewsConnectionProvider") ConnectionProvider connectionProvider,
+                                      HttpClientProperties httpClientProperties) {
+        return webClient(builder, connectionProvider, httpClientProperties.getReviews());
+    }
+
+    private ConnectionProvider connectionProvider(String name, HttpClientProperties.Pool pool) {
+        // metrics(true) publishes reactor.netty.connection.provider.* gauges (active, idle, pending) tagged with the pool name
+        return ConnectionProvider.builder(name)
+                .maxConnections(pool.getMaxConnections())
+                .pendingAcquireMaxCount(pool.getPendingAcquireMaxCount())
+                .pendingAcquireTimeout(pool.getPendingAcquireTimeout())
+                .maxIdleTime(pool.getMaxIdleTime())
+                .maxLifeTime(pool.getMaxLifeTime())
+                .evictInBackground(pool.getEvictInBackground())
+                .metrics(true)
+                .build();
+    }
+
+    private WebClient webClient(WebClient.Builder builder, ConnectionProvider connectionProvider, HttpClientProperties.Pool pool) {
+        var httpClient = HttpClient.create(connectionProvider)
+                .option(ChannelOption.CONNECT_TIMEOUT_MILLIS, (int) pool.getConnectTimeout().toMillis())
+                .responseTimeout(pool.getResponseTimeout())
+                .protocol(pool.isH2c() ? HttpProtocol.H2C : HttpProtocol.HTTP11)
+                .compress(pool.isCompression());
+
+        return builder.clone()
+                .clientConnector(new ReactorClientHttpConnector(httpClient))
+                .build();
     }
 
 }
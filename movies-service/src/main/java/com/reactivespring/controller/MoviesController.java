@@ -2,41 +2,208 @@ package com.reactivespring.controller;
 
 import com.reactivespring.client.MoviesInfoRestClient;
 import com.reactivespring.client.ReviewsRestClient;
+import com.reactivespring.client.SharedMovieInfoStream;
 import com.reactivespring.domain.Movie;
+import com.reactivespring.domain.MovieBatchItem;
 import com.reactivespring.domain.MovieInfo;
+import com.reactivespring.domain.MovieInfoBatchItem;
+import com.reactivespring.domain.MovieInfoEvent;
+import com.reactivespring.domain.MovieReviews;
+import com.reactivespring.domain.MovieSummary;
+import com.reactivespring.exception.MoviesDataException;
+import com.reactivespring.exception.MoviesInfoServerException;
+import com.reactivespring.json.MovieJsonWriter;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.io.buffer.DataBuffer;
 import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.GetMapping;
 import org.springframework.web.bind.annotation.PathVariable;
 import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.RestController;
 import reactor.core.publisher.Flux;
 import reactor.core.publisher.Mono;
 
+import java.time.Duration;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Optional;
+import java.util.stream.Collectors;
+
 @RestController
 @RequestMapping("/v1/movies")
+@Slf4j
 public class MoviesController {
 
+    private static final byte[] EMPTY_JSON_ARRAY = {'[', ']'};
+
     private MoviesInfoRestClient moviesInfoRestClient;
     private ReviewsRestClient reviewsRestClient;
+    private SharedMovieInfoStream sharedMovieInfoStream;
+    private MovieJsonWriter movieJsonWriter;
+
+    @Value("${restClient.moviesInfoTimeout}")
+    private Duration moviesInfoTimeout;
+
+    @Value("${restClient.reviewsTimeout}")
+    private Duration reviewsTimeout;
+
+    @Value("${moviesSummary.maxTopReviews}")
+    private int summaryMaxTopReviews;
+
+    @Value("${moviesBatch.maxIds}")
+    private int batchMaxIds;
+
+    @Value("${moviesBatch.chunkSize}")
+    private int batchChunkSize;
+
+    @Value("${moviesBatch.concurrency}")
+    private int batchConcurrency;
 
-    public MoviesController(MoviesInfoRestClient moviesInfoRestClient, ReviewsRestClient reviewsRestClient) {
+    public MoviesController(MoviesInfoRestClient moviesInfoRestClient, ReviewsRestClient reviewsRestClient,
+                            SharedMovieInfoStream sharedMovieInfoStream, MovieJsonWriter movieJsonWriter) {
         this.moviesInfoRestClient = moviesInfoRestClient;
         this.reviewsRestClient = reviewsRestClient;
+        this.sharedMovieInfoStream = sharedMovieInfoStream;
+        this.movieJsonWriter = movieJsonWriter;
     }
 
     @GetMapping("/{id}")
-    public Mono<Movie> retrieveMovieById(@PathVariable("id") String movieId) {
-        return moviesInfoRestClient.retrieveMovieInfo(movieId)
-                .flatMap(movieInfo -> {
-                    var reviewsListMono = reviewsRestClient.retrieveReviews(movieId)
-                            .collectList();
-                    return reviewsListMono.map(reviews -> new Movie(movieInfo, reviews));
+    public Mono<ResponseEntity<DataBuffer>> retrieveMovieById(@PathVariable("id") String movieId) {
+        return aggregateMovie(movieId)
+                .map(movieJson -> ResponseEntity.ok()
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .body(movieJson));
+    }
+
+    /**
+     * Same document as {@link #retrieveMovieById}, written while the reviews arrive instead of after
+     * collecting them, so memory per request does not grow with the number of reviews.
+     */
+    @GetMapping(value = "/{id}", params = "view=stream")
+    public Mono<ResponseEntity<Flux<DataBuffer>>> streamMovieById(@PathVariable("id") String movieId) {
+        // the status depends on the movie info alone, it is known before the first byte is written,
+        // and reviewsTimeout bounds the wait for each review instead of the whole list
+        return withMoviesInfoTimeout(moviesInfoRestClient.retrieveMovieInfo(movieId))
+                .map(movieInfo -> ResponseEntity.ok()
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .body(movieJsonWriter.write(movieInfo,
+                                reviewsRestClient.streamReviews(movieId).timeout(reviewsTimeout))));
+    }
+
+    @GetMapping(value = "/{id}", params = "view=summary")
+    public Mono<MovieSummary> retrieveMovieSummaryById(@PathVariable("id") String movieId,
+                                                       @RequestParam(value = "topReviews",
+                                                               defaultValue = "${moviesSummary.topReviews}") int topReviews) {
+        if (topReviews < 0 || topReviews > summaryMaxTopReviews) {
+            return Mono.error(new MoviesDataException(
+                    "topReviews must be between 0 and " + summaryMaxTopReviews + ", received " + topReviews));
+        }
+
+        var movieInfoMono = withMoviesInfoTimeout(moviesInfoRestClient.retrieveMovieInfo(movieId));
+        var reviewSummaryMono = reviewsRestClient.retrieveReviewSummary(movieId, topReviews);
+
+        return Mono.zip(movieInfoMono, withReviewsFallback(reviewSummaryMono, movieId))
+                .map(tuple -> tuple.getT2()
+                        .map(reviewSummary -> new MovieSummary(tuple.getT1(), reviewSummary, false))
+                        .orElseGet(() -> new MovieSummary(tuple.getT1(), null, true)));
+    }
+
+    /**
+     * One item per distinct id: the movie when found, found=false when movies-info-service has no such id, and
+     * movieInfoUnavailable when the lookup of its chunk failed, so a missing movie is never mistaken for a failed one.
+     */
+    @GetMapping(params = "ids", produces = MediaType.APPLICATION_NDJSON_VALUE)
+    public Flux<MovieBatchItem> retrieveMoviesByIds(@RequestParam("ids") List<String> movieIds) {
+        if (movieIds.size() > batchMaxIds) {
+            return Flux.error(new MoviesDataException(
+                    "At most " + batchMaxIds + " ids can be requested at once, received " + movieIds.size()));
+        }
+
+        // ids are resolved in chunks, one batch call per downstream service and chunk,
+        // and movies are written as soon as their chunk is aggregated
+        return Flux.fromIterable(new LinkedHashSet<>(movieIds))
+                .buffer(batchChunkSize)
+                .flatMap(this::aggregateMovies, batchConcurrency);
+    }
+
+    // the reviews array is spliced into the Movie document as received, nothing here needs its reviews decoded
+    private Mono<DataBuffer> aggregateMovie(String movieId) {
+        var movieInfoMono = withMoviesInfoTimeout(moviesInfoRestClient.retrieveMovieInfo(movieId));
+        var reviewsJsonMono = reviewsRestClient.retrieveReviewsJson(movieId)
+                .defaultIfEmpty(EMPTY_JSON_ARRAY);
+
+        // both legs are subscribed at once, a failing or slow reviews leg only degrades the response
+        return Mono.zip(movieInfoMono, withReviewsFallback(reviewsJsonMono, movieId))
+                .map(tuple -> movieJsonWriter.write(tuple.getT1(), tuple.getT2().orElse(null)));
+    }
+
+    private Flux<MovieBatchItem> aggregateMovies(List<String> movieIds) {
+        var movieInfosMono = withMoviesInfoTimeout(moviesInfoRestClient.retrieveMovieInfos(movieIds)
+                .filter(MovieInfoBatchItem::isFound)
+                .collectMap(MovieInfoBatchItem::getMovieInfoId, MovieInfoBatchItem::getMovieInfo));
+        var reviewsMono = reviewsRestClient.retrieveReviewsGroupedByMovie(movieIds)
+                .collectMap(movieReviews -> String.valueOf(movieReviews.getMovieInfoId()), MovieReviews::getReviews);
+
+        return Mono.zip(movieInfosMono, withReviewsFallback(reviewsMono, movieIds))
+                .flatMapIterable(tuple -> movieIds.stream()
+                        .map(movieId -> {
+                            var movieInfo = tuple.getT1().get(movieId);
+                            if (movieInfo == null) {
+                                return new MovieBatchItem(movieId, false, false, null);
+                            }
+                            var movie = tuple.getT2()
+                                    .map(reviews -> new Movie(movieInfo, reviews.getOrDefault(movieId, List.of())))
+                                    .orElseGet(() -> new Movie(movieInfo, List.of(), true));
+                            return new MovieBatchItem(movieId, true, false, movie);
+                        })
+                        .collect(Collectors.toList()))
+                .onErrorResume(ex -> {
+                    log.warn("Movie infos unavailable for {} in batch lookup : {}", movieIds, ex.getMessage());
+                    return Flux.fromIterable(movieIds)
+                            .map(movieId -> new MovieBatchItem(movieId, false, true, null));
+                });
+    }
+
+    private <T> Mono<T> withMoviesInfoTimeout(Mono<T> movieInfoMono) {
+        return movieInfoMono
+                .timeout(moviesInfoTimeout, Mono.error(() -> new MoviesInfoServerException(
+                        "MoviesInfoService did not respond within " + moviesInfoTimeout.toMillis() + "ms")));
+    }
+
+    private <T> Mono<Optional<T>> withReviewsFallback(Mono<T> reviewsMono, Object movieIds) {
+        return reviewsMono
+                .timeout(reviewsTimeout)
+                .map(Optional::of)
+                .onErrorResume(ex -> {
+                    log.warn("Reviews unavailable for {}, returning partial response : {}", movieIds, ex.getMessage());
+                    return Mono.just(Optional.empty());
                 });
     }
 
     @GetMapping(value = "/stream", produces = MediaType.APPLICATION_NDJSON_VALUE)
     public Flux<MovieInfo> retrieveMovieInfosStream() {
-        return moviesInfoRestClient.retrieveMovieInfoStream();
+        // creations and updates, deletes carry no movie info
+        return sharedMovieInfoStream.stream()
+                .filter(event -> event.getMovieInfo() != null)
+                .map(MovieInfoEvent::getMovieInfo);
+    }
+
+    /**
+     * Movie info events exactly as movies-info-service writes them, envelope included, without re-encoding
+     * each line. Live readers share the single upstream connection of {@link SharedMovieInfoStream}, a slow
+     * one loses events on overflow and resumes with the epoch and sequence of the last event it read, which
+     * replays from the movies-info-service log over a connection of its own.
+     */
+    @GetMapping(value = "/stream/events", produces = MediaType.APPLICATION_NDJSON_VALUE)
+    public Flux<DataBuffer> streamMovieInfoEvents(@RequestParam(value = "epoch", required = false) String epoch,
+                                                  @RequestParam(value = "from", required = false) Long fromSequence) {
+        if (epoch == null && fromSequence == null) {
+            return sharedMovieInfoStream.lines();
+        }
+        return moviesInfoRestClient.streamMovieInfoEvents(epoch, fromSequence);
     }
 
 }
@@ -14,4 +14,12 @@ public class Movie {
     private MovieInfo movieInfo;
     private List<Review> reviewList;
 
+    // true when the reviews leg failed or timed out and reviewList was degraded to empty
+    private boolean reviewsUnavailable;
+
+    public Movie(MovieInfo movieInfo, List<Review> reviewList) {
+        this.movieInfo = movieInfo;
+        this.reviewList = reviewList;
+    }
+
 }
@@ -0,0 +1,19 @@
+package com.reactivespring.domain;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class MovieBatchItem {
+
+    private String movieInfoId;
+    private boolean found;
+
+    // true when the movie info lookup of this id failed or timed out, found is false and movie null
+    private boolean movieInfoUnavailable;
+    private Movie movie;
+
+}
@@ -0,0 +1,45 @@
+package com.reactivespring.domain;
+
+import com.fasterxml.jackson.annotation.JsonIgnore;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.time.Instant;
+
+/**
+ * Envelope of a movie info write, as sent by the movies-info-service stream.
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class MovieInfoEvent {
+
+    // event log of the movies-info-service instance that numbered the event, new after each restart
+    private String epoch;
+
+    // position in the movie info event log, starting at 1 in every epoch
+    private long sequence;
+
+    private EventType type;
+
+    private String movieInfoId;
+
+    // unused by the cache, which refreshes from movieInfo; null for the movie infos replaced by a bulk upload
+    private Long version;
+
+    private Instant timestamp;
+
+    // null for DELETED events
+    private MovieInfo movieInfo;
+
+    // the NDJSON line the event was read from, GET /v1/movies/stream/events forwards it as received
+    @JsonIgnore
+    private String line;
+
+    public MovieInfoEvent(String epoch, long sequence, EventType type, String movieInfoId, Long version,
+                          Instant timestamp, MovieInfo movieInfo) {
+        this(epoch, sequence, type, movieInfoId, version, timestamp, movieInfo, null);
+    }
+
+}
@@ -0,0 +1,21 @@
+package com.reactivespring.domain;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * Compact {@link Movie}, a rating summary and a few top reviews instead of every review.
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class MovieSummary {
+
+    private MovieInfo movieInfo;
+    private ReviewSummary reviewSummary;
+
+    // true when the reviews leg failed or timed out and reviewSummary is null
+    private boolean reviewsUnavailable;
+
+}
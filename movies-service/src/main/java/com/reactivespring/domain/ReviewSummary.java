@@ -0,0 +1,35 @@
+package com.reactivespring.domain;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Rating aggregates of one movie as kept by movies-review-service, with its best rated reviews.
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class ReviewSummary {
+
+    private Long movieInfoId;
+
+    private long count;
+
+    private Double averageRating;
+
+    // null while no review is rated
+    private Double minRating;
+
+    private Double maxRating;
+
+    // rated reviews per whole rating, "0" to "10"
+    private Map<String, Long> histogram;
+
+    // best rating first
+    private List<Review> topReviews;
+
+}
@@ -0,0 +1,15 @@
+package com.reactivespring.exception;
+
+import lombok.Data;
+
+@Data
+public class MoviesDataException extends RuntimeException {
+
+    private String message;
+
+    public MoviesDataException(String message) {
+        super(message);
+        this.message = message;
+    }
+
+}
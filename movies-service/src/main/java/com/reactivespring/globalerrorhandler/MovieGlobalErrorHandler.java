@@ -1,5 +1,6 @@
 package com.reactivespring.globalerrorhandler;
 
+import com.reactivespring.exception.MoviesDataException;
 import com.reactivespring.exception.MoviesInfoClientException;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.http.HttpStatus;
@@ -17,6 +18,12 @@ public class MovieGlobalErrorHandler {
         return ResponseEntity.status(ex.getStatusCode()).body(ex.getMessage());
     }
 
+    @ExceptionHandler(MoviesDataException.class)
+    public ResponseEntity<String> handleDataException(MoviesDataException ex) {
+        log.error("Exception caught in handleDataException : {}", ex.getMessage(), ex);
+        return ResponseEntity.status(HttpStatus.BAD_REQUEST).body(ex.getMessage());
+    }
+
     @ExceptionHandler(RuntimeException.class)
     public ResponseEntity<String> handleRunTimeException(RuntimeException ex) {
         log.error("Exception caught in handleClientException : {}", ex.getMessage(), ex);
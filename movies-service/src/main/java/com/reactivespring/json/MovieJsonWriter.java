@@ -0,0 +1,142 @@
+package com.reactivespring.json;
+
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.reactivespring.domain.MovieInfo;
+import com.reactivespring.domain.Review;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.core.codec.DecodingException;
+import org.springframework.core.io.buffer.DataBuffer;
+import org.springframework.core.io.buffer.DataBufferFactory;
+import org.springframework.core.io.buffer.DataBufferUtils;
+import org.springframework.core.io.buffer.DefaultDataBufferFactory;
+import org.springframework.stereotype.Component;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Writes {@link com.reactivespring.domain.Movie} documents without building the Movie: chunk by chunk with
+ * the movie info first and one chunk per review as it arrives, or in one buffer around the reviews array
+ * exactly as movies-review-service sent it.
+ */
+@Component
+@Slf4j
+public class MovieJsonWriter {
+
+    private ObjectMapper objectMapper;
+    private DataBufferFactory bufferFactory = DefaultDataBufferFactory.sharedInstance;
+
+    public MovieJsonWriter(ObjectMapper objectMapper) {
+        this.objectMapper = objectMapper;
+    }
+
+    /**
+     * The status is already sent when the reviews fail, so the array is closed on what was written
+     * and reviewsUnavailable is set instead, as the buffered response does.
+     */
+    public Flux<DataBuffer> write(MovieInfo movieInfo, Flux<Review> reviews) {
+        return Flux.defer(() -> {
+            var firstReview = new AtomicBoolean(true);
+            var reviewsUnavailable = new AtomicBoolean();
+
+            var head = Mono.fromCallable(() -> {
+                var buffer = bufferFactory.allocateBuffer();
+                buffer.write("{\"movieInfo\":", StandardCharsets.UTF_8);
+                writeValue(buffer, movieInfo);
+                buffer.write(",\"reviewList\":[", StandardCharsets.UTF_8);
+                return buffer;
+            });
+            var reviewList = reviews
+                    .map(review -> {
+                        var buffer = bufferFactory.allocateBuffer();
+                        if (!firstReview.compareAndSet(true, false)) {
+                            buffer.write((byte) ',');
+                        }
+                        writeValue(buffer, review);
+                        return buffer;
+                    })
+                    .onErrorResume(ex -> {
+                        log.warn("Reviews of {} cut short, closing the streamed response : {}",
+                                movieInfo.getMovieInfoId(), ex.getMessage());
+                        reviewsUnavailable.set(true);
+                        return Flux.empty();
+                    });
+            var tail = Mono.fromCallable(() -> bufferFactory.wrap(
+                    ("],\"reviewsUnavailable\":" + reviewsUnavailable.get() + "}").getBytes(StandardCharsets.UTF_8)));
+
+            return Flux.concat(head, reviewList, tail);
+        }).doOnDiscard(DataBuffer.class, DataBufferUtils::release);
+    }
+
+    /**
+     * The reviews bytes are copied in as they are, they must hold a JSON array, see {@link #joinJsonArray}.
+     * Null reviews write an empty reviewList with reviewsUnavailable set.
+     */
+    public DataBuffer write(MovieInfo movieInfo, byte[] reviewsJson) {
+        var buffer = bufferFactory.allocateBuffer(256 + (reviewsJson == null ? 2 : reviewsJson.length));
+        buffer.write("{\"movieInfo\":", StandardCharsets.UTF_8);
+        writeValue(buffer, movieInfo);
+        buffer.write(",\"reviewList\":", StandardCharsets.UTF_8);
+        if (reviewsJson == null) {
+            buffer.write("[],\"reviewsUnavailable\":true}", StandardCharsets.UTF_8);
+        } else {
+            buffer.write(reviewsJson);
+            buffer.write(",\"reviewsUnavailable\":false}", StandardCharsets.UTF_8);
+        }
+        return buffer;
+    }
+
+    /**
+     * Joins the bytes once they all arrived, without copying them for Netty buffers, and checks in place that they
+     * hold one JSON array and nothing else, failing with a DecodingException when they do not and with a
+     * DataBufferLimitException once more than maxBytes arrived. No bytes at all completes empty. The array is
+     * the single copy made, it outlives the buffers and is shared by the callers of the same movie.
+     */
+    public Mono<byte[]> joinJsonArray(Flux<DataBuffer> chunks, int maxBytes) {
+        return DataBufferUtils.join(chunks, maxBytes)
+                .handle((joined, sink) -> {
+                    byte[] json;
+                    try {
+                        json = new byte[joined.readableByteCount()];
+                        joined.read(json);
+                    } finally {
+                        DataBufferUtils.release(joined);
+                    }
+                    if (json.length == 0) {
+                        sink.complete();
+                    } else if (isJsonArray(json)) {
+                        sink.next(json);
+                    } else {
+                        sink.error(new DecodingException("ReviewsService sent malformed reviews : not a single JSON array"));
+                    }
+                });
+    }
+
+    // only tokenizes, no value is built
+    private boolean isJsonArray(byte[] json) {
+        try (var parser = objectMapper.getFactory().createParser(json)) {
+            if (parser.nextToken() != JsonToken.START_ARRAY) {
+                return false;
+            }
+            parser.skipChildren();
+            return parser.nextToken() == null;
+        } catch (IOException ex) {
+            return false;
+        }
+    }
+
+    private void writeValue(DataBuffer buffer, Object value) {
+        try {
+            objectMapper.writeValue(buffer.asOutputStream(), value);
+        } catch (IOException ex) {
+            DataBufferUtils.release(buffer);
+            throw new UncheckedIOException(ex);
+        }
+    }
+
+}
@@ -0,0 +1,136 @@
+package com.reactivespring.resilience;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Tags;
+import lombok.extern.slf4j.Slf4j;
+
+import java.time.Clock;
+import java.time.Instant;
+
+/**
+ * Count based circuit breaker over the outcomes of the last calls.
+ */
+@Slf4j
+public class CircuitBreaker {
+
+    public enum State {
+        CLOSED, OPEN, HALF_OPEN
+    }
+
+    private String downstream;
+    private ResilienceProperties.Policy policy;
+    private MeterRegistry meterRegistry;
+    private Clock clock;
+
+    private State state = State.CLOSED;
+    private Instant openedAt;
+    private boolean[] outcomes;
+    private int recordedCalls;
+    private int failedCalls;
+    private int nextOutcome;
+    private int halfOpenPermits;
+    private int halfOpenSuccesses;
+
+    private Counter rejectedCalls;
+
+    public CircuitBreaker(String downstream, ResilienceProperties.Policy policy, MeterRegistry meterRegistry, Clock clock) {
+        this.downstream = downstream;
+        this.policy = policy;
+        this.meterRegistry = meterRegistry;
+        this.clock = clock;
+        this.outcomes = new boolean[policy.getSlidingWindowSize()];
+        this.rejectedCalls = Counter.builder("resilience.circuitbreaker.rejected")
+                .tag("downstream", downstream)
+                .register(meterRegistry);
+        meterRegistry.gauge("resilience.circuitbreaker.state", Tags.of("downstream", downstream),
+                this, circuitBreaker -> circuitBreaker.getState().ordinal());
+    }
+
+    public synchronized State getState() {
+        if (state == State.OPEN && !clock.instant().isBefore(openedAt.plus(policy.getOpenDuration()))) {
+            transitionTo(State.HALF_OPEN);
+        }
+        return state;
+    }
+
+    public synchronized boolean tryAcquirePermission() {
+        switch (getState()) {
+            case CLOSED:
+                return true;
+            case HALF_OPEN:
+                if (halfOpenPermits < policy.getPermittedCallsInHalfOpen()) {
+                    halfOpenPermits++;
+                    return true;
+                }
+                break;
+            default:
+                break;
+        }
+        rejectedCalls.increment();
+        return false;
+    }
+
+    /**
+     * Gives back a half open trial permission whose call was cancelled before it completed.
+     */
+    public synchronized void releasePermission() {
+        if (state == State.HALF_OPEN && halfOpenPermits > 0) {
+            halfOpenPermits--;
+        }
+    }
+
+    public synchronized void onSuccess() {
+        if (state == State.HALF_OPEN) {
+            halfOpenSuccesses++;
+            if (halfOpenSuccesses >= policy.getPermittedCallsInHalfOpen()) {
+                transitionTo(State.CLOSED);
+            }
+        } else if (state == State.CLOSED) {
+            record(false);
+        }
+    }
+
+    public synchronized void onError() {
+        if (state == State.HALF_OPEN) {
+            transitionTo(State.OPEN);
+        } else if (state == State.CLOSED) {
+            record(true);
+            if (recordedCalls >= policy.getMinimumCalls()
+                    && (double) failedCalls / recordedCalls >= policy.getFailureRateThreshold()) {
+                transitionTo(State.OPEN);
+            }
+        }
+    }
+
+    private void record(boolean failed) {
+        if (recordedCalls == outcomes.length) {
+            if (outcomes[nextOutcome]) {
+                failedCalls--;
+            }
+        } else {
+            recordedCalls++;
+        }
+        outcomes[nextOutcome] = failed;
+        if (failed) {
+            failedCalls++;
+        }
+        nextOutcome = (nextOutcome + 1) % outcomes.length;
+    }
+
+    private void transitionTo(State newState) {
+        log.warn("Circuit breaker for {} transitions from {} to {}", downstream, state, newState);
+        meterRegistry.counter("resilience.circuitbreaker.transitions",
+                "downstream", downstream, "from", state.name(), "to", newState.name()).increment();
+        state = newState;
+        openedAt = newState == State.OPEN ? clock.instant() : null;
+        halfOpenPermits = 0;
+        halfOpenSuccesses = 0;
+        if (newState == State.CLOSED) {
+            recordedCalls = 0;
+            failedCalls = 0;
+            nextOutcome = 0;
+        }
+    }
+
+}
@@ -0,0 +1,113 @@
+package com.reactivespring.resilience;
+
+import com.reactivespring.utils.RetryUtil;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.util.retry.Retry;
+
+import java.time.Clock;
+import java.time.Duration;
+import java.util.function.Function;
+
+/**
+ * Circuit breaker, retry budget, backoff retries and call deadline of one downstream service.
+ * A call still running at its deadline fails with a server error the breaker counts, so a downstream
+ * that slows down opens the breaker like one that fails.
+ */
+public class DownstreamResilience {
+
+    private CircuitBreaker circuitBreaker;
+    private RetryBudget retryBudget;
+    private Retry retrySpec;
+    private Duration timeout;
+    private Function<String, RuntimeException> serverError;
+
+    public DownstreamResilience(String downstream, ResilienceProperties.Policy policy,
+                                MeterRegistry meterRegistry, Function<String, RuntimeException> serverError) {
+        this.circuitBreaker = new CircuitBreaker(downstream, policy, meterRegistry, Clock.systemUTC());
+        this.retryBudget = new RetryBudget(downstream, policy.getRetryBudgetRatio(),
+                policy.getRetryBudgetMaxTokens(), meterRegistry);
+        this.timeout = policy.getTimeout();
+        this.serverError = serverError;
+
+        var retries = Counter.builder("resilience.retry.attempts")
+                .tag("downstream", downstream)
+                .register(meterRegistry);
+        // the budget is only asked once a retry is actually going to happen, not for the final failure
+        this.retrySpec = RetryUtil.retrySpec(policy, ex -> circuitBreaker.getState() == CircuitBreaker.State.CLOSED)
+                .doBeforeRetryAsync(retrySignal -> {
+                    if (!retryBudget.tryWithdraw()) {
+                        return Mono.error(retrySignal.failure());
+                    }
+                    retries.increment();
+                    return Mono.empty();
+                });
+    }
+
+    public <T> Mono<T> decorate(Mono<T> call) {
+        return Mono.defer(() -> {
+            if (!circuitBreaker.tryAcquirePermission()) {
+                return Mono.error(rejection());
+            }
+            retryBudget.deposit();
+            // one breaker outcome per call, whatever the number of attempts
+            return call
+                    .retryWhen(retrySpec)
+                    .timeout(timeout, Mono.error(this::timedOut))
+                    .doOnSuccess(value -> circuitBreaker.onSuccess())
+                    .doOnError(this::recordError)
+                    .doOnCancel(circuitBreaker::releasePermission);
+        });
+    }
+
+    /**
+     * The deadline bounds the whole Flux, last element included.
+     */
+    public <T> Flux<T> decorate(Flux<T> call) {
+        return Flux.defer(() -> {
+            var deadline = Mono.delay(timeout).cache();
+            return decorateStream(call.timeout(deadline, element -> deadline, Flux.error(this::timedOut)));
+        });
+    }
+
+    /**
+     * For long lived streams, which are retried and counted by the breaker but have no deadline.
+     */
+    public <T> Flux<T> decorateStream(Flux<T> call) {
+        return Flux.defer(() -> {
+            if (!circuitBreaker.tryAcquirePermission()) {
+                return Flux.error(rejection());
+            }
+            retryBudget.deposit();
+            return call
+                    .retryWhen(retrySpec)
+                    .doOnComplete(circuitBreaker::onSuccess)
+                    .doOnError(this::recordError)
+                    .doOnCancel(circuitBreaker::releasePermission);
+        });
+    }
+
+    public CircuitBreaker getCircuitBreaker() {
+        return circuitBreaker;
+    }
+
+    private RuntimeException rejection() {
+        return serverError.apply("circuit breaker is open");
+    }
+
+    private RuntimeException timedOut() {
+        return serverError.apply("did not respond within " + timeout.toMillis() + "ms");
+    }
+
+    private void recordError(Throwable ex) {
+        // client errors mean the downstream is healthy and answering
+        if (RetryUtil.isRetryable(ex)) {
+            circuitBreaker.onError();
+        } else {
+            circuitBreaker.onSuccess();
+        }
+    }
+
+}
@@ -0,0 +1,122 @@
+package com.reactivespring.resilience;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Tags;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.Sinks;
+
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.NoSuchElementException;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Supplier;
+
+/**
+ * Hedging of idempotent reads: a second attempt is sent once the first is slower than a percentile of
+ * recent latencies, and the first value wins. Hedges are capped by their own token budget.
+ */
+public class HedgedRequests {
+
+    private ResilienceProperties.Hedging hedging;
+    private RetryBudget hedgeBudget;
+    private long[] latencies;
+    private int samples;
+    private int next;
+    private int recordsSinceRecompute;
+    private int recomputeEvery;
+    private volatile Duration delay;
+
+    private Counter hedges;
+    private Counter hedgeWins;
+
+    public HedgedRequests(String downstream, ResilienceProperties.Hedging hedging, MeterRegistry meterRegistry) {
+        this.hedging = hedging;
+        this.hedgeBudget = new RetryBudget("resilience.hedge.budget", downstream,
+                hedging.getBudgetRatio(), hedging.getBudgetMaxTokens(), meterRegistry);
+        this.latencies = new long[hedging.getLatencyWindowSize()];
+        // the percentile is recomputed every tenth of the window, not on every request
+        this.recomputeEvery = Math.max(1, hedging.getLatencyWindowSize() / 10);
+        this.delay = hedging.getMaxDelay();
+        this.hedges = Counter.builder("resilience.hedge.attempts")
+                .tag("downstream", downstream)
+                .register(meterRegistry);
+        this.hedgeWins = Counter.builder("resilience.hedge.wins")
+                .tag("downstream", downstream)
+                .register(meterRegistry);
+        meterRegistry.gauge("resilience.hedge.delay",
+                Tags.of("downstream", downstream), this, h -> h.hedgeDelay().toMillis());
+    }
+
+    public <T> Mono<T> hedge(Supplier<Mono<T>> call) {
+        if (!hedging.isEnabled()) {
+            return call.get();
+        }
+        return Mono.defer(() -> {
+            hedgeBudget.deposit();
+            var primaryError = new AtomicReference<Throwable>();
+            var primaryFailed = Sinks.empty();
+            var primary = timed(call, true)
+                    .doOnError(ex -> {
+                        primaryError.set(ex);
+                        primaryFailed.tryEmitEmpty();
+                    });
+            // no hedge is sent once the first attempt has failed, its error is then returned right away
+            var hedged = Mono.delay(hedgeDelay())
+                    .flux()
+                    .takeUntilOther(primaryFailed.asMono())
+                    .next()
+                    .flatMap(tick -> {
+                        if (!hedgeBudget.tryWithdraw()) {
+                            return Mono.<T>empty();
+                        }
+                        hedges.increment();
+                        return timed(call, false).doOnNext(value -> hedgeWins.increment());
+                    });
+            // an attempt that fails does not cancel the other one, only a value wins
+            return Mono.firstWithValue(primary, hedged)
+                    .onErrorMap(NoSuchElementException.class,
+                            ex -> primaryError.get() == null ? ex : primaryError.get());
+        });
+    }
+
+    public Duration hedgeDelay() {
+        return delay;
+    }
+
+    private Duration computeDelay() {
+        if (samples < hedging.getMinimumSamples()) {
+            return hedging.getMaxDelay();
+        }
+        var sorted = Arrays.copyOf(latencies, samples);
+        Arrays.sort(sorted);
+        var index = (int) Math.ceil(hedging.getPercentile() * samples) - 1;
+        var percentile = Duration.ofNanos(sorted[Math.max(0, Math.min(index, samples - 1))]);
+        if (percentile.compareTo(hedging.getMinDelay()) < 0) {
+            return hedging.getMinDelay();
+        }
+        return percentile.compareTo(hedging.getMaxDelay()) > 0 ? hedging.getMaxDelay() : percentile;
+    }
+
+    // A cancelled first attempt was at least as slow as the time it was running. A cancelled hedge started
+    // late and says nothing about the latency, recording it would pull the percentile down.
+    private <T> Mono<T> timed(Supplier<Mono<T>> call, boolean recordWhenCancelled) {
+        return Mono.defer(() -> {
+            var start = System.nanoTime();
+            var attempt = call.get()
+                    .doOnNext(value -> record(System.nanoTime() - start));
+            return recordWhenCancelled ? attempt.doOnCancel(() -> record(System.nanoTime() - start)) : attempt;
+        });
+    }
+
+    private synchronized void record(long latencyNanos) {
+        latencies[next] = latencyNanos;
+        next = (next + 1) % latencies.length;
+        samples = Math.min(samples + 1, latencies.length);
+        if (++recordsSinceRecompute >= recomputeEvery || samples == hedging.getMinimumSamples()) {
+            recordsSinceRecompute = 0;
+            delay = computeDelay();
+        }
+    }
+
+}
@@ -0,0 +1,64 @@
+package com.reactivespring.resilience;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+import java.time.Duration;
+
+/**
+ * Retry, retry budget, circuit breaker and hedging settings, one {@link Policy} per downstream service.
+ */
+@Data
+@ConfigurationProperties(prefix = "rest-client.resilience")
+public class ResilienceProperties {
+
+    private Policy moviesInfo = new Policy();
+    private Policy reviews = new Policy();
+
+    @Data
+    public static class Policy {
+
+        // exponential backoff with jitter between attempts
+        private int maxRetries = 3;
+        private Duration minBackoff = Duration.ofMillis(100);
+        private Duration maxBackoff = Duration.ofSeconds(2);
+        private double jitter = 0.5;
+
+        // deadline of one call, retries included, a call timing out counts as failed in the breaker
+        private Duration timeout = Duration.ofSeconds(4);
+
+        // every call deposits retryBudgetRatio tokens, every retry withdraws one
+        private double retryBudgetRatio = 0.1;
+        private double retryBudgetMaxTokens = 10;
+
+        // count based sliding window over the last slidingWindowSize calls, retries included in each call
+        private int slidingWindowSize = 50;
+        private int minimumCalls = 20;
+        private double failureRateThreshold = 0.5;
+        private Duration openDuration = Duration.ofSeconds(10);
+        private int permittedCallsInHalfOpen = 3;
+
+        private Hedging hedging = new Hedging();
+
+    }
+
+    @Data
+    public static class Hedging {
+
+        // opt-in, only idempotent reads are hedged
+        private boolean enabled = false;
+
+        // a second request is sent once the first one is slower than this percentile of recent latencies
+        private double percentile = 0.95;
+        private int latencyWindowSize = 100;
+        private int minimumSamples = 20;
+        private Duration minDelay = Duration.ofMillis(10);
+        private Duration maxDelay = Duration.ofSeconds(1);
+
+        // every call deposits budgetRatio tokens, every hedge withdraws one
+        private double budgetRatio = 0.05;
+        private double budgetMaxTokens = 5;
+
+    }
+
+}
@@ -0,0 +1,50 @@
+package com.reactivespring.resilience;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Tags;
+
+/**
+ * Token bucket capping retries, or hedges, at a fraction of the calls.
+ */
+public class RetryBudget {
+
+    private double ratio;
+    private double maxTokens;
+    private double tokens;
+
+    private Counter rejectedRetries;
+
+    public RetryBudget(String downstream, double ratio, double maxTokens, MeterRegistry meterRegistry) {
+        this("resilience.retry.budget", downstream, ratio, maxTokens, meterRegistry);
+    }
+
+    public RetryBudget(String metricPrefix, String downstream, double ratio, double maxTokens, MeterRegistry meterRegistry) {
+        this.ratio = ratio;
+        this.maxTokens = maxTokens;
+        this.tokens = maxTokens;
+        this.rejectedRetries = Counter.builder(metricPrefix + ".rejected")
+                .tag("downstream", downstream)
+                .register(meterRegistry);
+        meterRegistry.gauge(metricPrefix + ".tokens",
+                Tags.of("downstream", downstream), this, RetryBudget::availableTokens);
+    }
+
+    public synchronized void deposit() {
+        tokens = Math.min(maxTokens, tokens + ratio);
+    }
+
+    public synchronized boolean tryWithdraw() {
+        if (tokens >= 1) {
+            tokens -= 1;
+            return true;
+        }
+        rejectedRetries.increment();
+        return false;
+    }
+
+    public synchronized double availableTokens() {
+        return tokens;
+    }
+
+}
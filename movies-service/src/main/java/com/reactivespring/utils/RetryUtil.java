@@ -2,18 +2,29 @@ package com.reactivespring.utils;
 
 import com.reactivespring.exception.MoviesInfoServerException;
 import com.reactivespring.exception.ReviewsServerException;
+import com.reactivespring.resilience.ResilienceProperties;
+import org.springframework.web.reactive.function.client.WebClientRequestException;
 import reactor.core.Exceptions;
 import reactor.util.retry.Retry;
+import reactor.util.retry.RetryBackoffSpec;
 
-import java.time.Duration;
+import java.util.function.Predicate;
 
 public class RetryUtil {
 
-    public static Retry retrySpec() {
+    // server side failures and connection errors are worth retrying, client errors are not
+    public static boolean isRetryable(Throwable ex) {
+        return ex instanceof MoviesInfoServerException ||
+                ex instanceof ReviewsServerException ||
+                ex instanceof WebClientRequestException;
+    }
+
+    public static RetryBackoffSpec retrySpec(ResilienceProperties.Policy policy, Predicate<Throwable> retryPermitted) {
 
-        return Retry.fixedDelay(3, Duration.ofSeconds(1))
-                .filter(ex -> ex instanceof MoviesInfoServerException ||
-                        ex instanceof ReviewsServerException)
+        return Retry.backoff(policy.getMaxRetries(), policy.getMinBackoff())
+                .maxBackoff(policy.getMaxBackoff())
+                .jitter(policy.getJitter())
+                .filter(ex -> isRetryable(ex) && retryPermitted.test(ex))
                 .onRetryExhaustedThrow((retryBackoffSpec, retrySignal) ->
                         Exceptions.propagate(retrySignal.failure()));
     }
@@ -0,0 +1,36 @@
+package com.reactivespring.utils;
+
+import reactor.core.publisher.Mono;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Supplier;
+
+/**
+ * Coalesces concurrent calls for the same key into a single in-flight call.
+ * Every caller subscribing while the call is running shares its outcome, value or error,
+ * and the key is released before the outcome is delivered so later callers trigger a fresh one.
+ */
+public class SingleFlight<K, V> {
+
+    private ConcurrentMap<K, Mono<V>> inFlightMonos = new ConcurrentHashMap<>();
+
+    /**
+     * The shared call keeps running when one of its subscribers cancels, so the others still get the value.
+     */
+    public Mono<V> execute(K key, Supplier<Mono<V>> call) {
+        return Mono.defer(() -> inFlightMonos.computeIfAbsent(key, k -> {
+            var shared = new AtomicReference<Mono<V>>();
+            shared.set(call.get()
+                    .doOnTerminate(() -> inFlightMonos.remove(k, shared.get()))
+                    .cache());
+            return shared.get();
+        }));
+    }
+
+    public int inFlight() {
+        return inFlightMonos.size();
+    }
+
+}
@@ -1,19 +1,31 @@
 package com.reactivespring.controller;
 
+import com.reactivespring.cache.MovieInfoCache;
 import com.reactivespring.domain.Movie;
+import com.reactivespring.domain.MovieBatchItem;
+import com.reactivespring.domain.MovieSummary;
+import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.autoconfigure.web.reactive.AutoConfigureWebTestClient;
 import org.springframework.boot.test.context.SpringBootTest;
 import org.springframework.cloud.contract.wiremock.AutoConfigureWireMock;
+import org.springframework.core.io.ClassPathResource;
+import org.springframework.http.MediaType;
 import org.springframework.test.context.ActiveProfiles;
 import org.springframework.test.context.TestPropertySource;
 import org.springframework.test.web.reactive.server.WebTestClient;
 
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
 import java.util.Objects;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
 
 import static com.github.tomakehurst.wiremock.client.WireMock.*;
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
 
 @SpringBootTest(webEnvironment = SpringBootTest.WebEnvironment.RANDOM_PORT)
 @ActiveProfiles("test")
@@ -22,7 +34,8 @@ import static org.junit.jupiter.api.Assertions.assertEquals;
 @TestPropertySource(
         properties = {
                 "restClient.moviesInfoUrl=http://localhost:8084/v1/movieinfos",
-                "restClient.reviewsUrl=http://localhost:8084/v1/reviews"
+                "restClient.reviewsUrl=http://localhost:8084/v1/reviews",
+                "restClient.moviesInfoCache.streamInvalidation=false"
         }
 )
 public class MoviesControllerIntgTest {
@@ -30,6 +43,14 @@ public class MoviesControllerIntgTest {
     @Autowired
     WebTestClient webTestClient;
 
+    @Autowired
+    MovieInfoCache movieInfoCache;
+
+    @BeforeEach
+    void setUp() {
+        movieInfoCache.evictAll();
+    }
+
     @Test
     void retrieveMovieById() {
         var movieId = "1";
@@ -56,6 +77,35 @@ public class MoviesControllerIntgTest {
                 });
     }
 
+    @Test
+    void retrieveMovieById_MovieInfoCached() {
+        var movieId = "1c";
+
+        stubFor(get(urlEqualTo("/v1/movieinfos/" + movieId))
+                .willReturn(aResponse()
+                        .withHeader("Content-type", "application/json")
+                        .withBodyFile("movieinfo.json")));
+        stubFor(get(urlPathEqualTo("/v1/reviews"))
+                .willReturn(aResponse()
+                        .withHeader("Content-type", "application/json")
+                        .withBodyFile("reviews.json")));
+
+        for (int i = 0; i < 2; i++) {
+            webTestClient.get()
+                    .uri("/v1/movies/{id}", movieId)
+                    .exchange()
+                    .expectStatus()
+                    .isOk()
+                    .expectBody(Movie.class)
+                    .consumeWith(movieEntityExchangeResult -> assertEquals("Batman Begins",
+                            Objects.requireNonNull(movieEntityExchangeResult.getResponseBody()).getMovieInfo().getName()));
+        }
+
+        verify(1, getRequestedFor(urlEqualTo("/v1/movieinfos/" + movieId)));
+        verify(2, getRequestedFor(urlPathEqualTo("/v1/reviews"))
+                .withQueryParam("movieInfoId", equalTo(movieId)));
+    }
+
     @Test
     void retrieveMovieById_WhenMovieInfoNotFound() {
         var movieId = "1";
@@ -141,11 +191,356 @@ public class MoviesControllerIntgTest {
                 .uri("/v1/movies/{id}", movieId)
                 .exchange()
                 .expectStatus()
-                .is5xxServerError()
+                .isOk()
+                .expectBody(Movie.class)
+                .consumeWith(movieEntityExchangeResult -> {
+                    var movie = movieEntityExchangeResult.getResponseBody();
+                    assert Objects.requireNonNull(movie).getReviewList().isEmpty();
+                    assertTrue(movie.isReviewsUnavailable());
+                    assertEquals("Batman Begins", movie.getMovieInfo().getName());
+                });
+
+        verify(4, getRequestedFor(urlPathMatching("/v1/reviews"))
+                .withQueryParam("movieInfoId", equalTo(movieId)));
+    }
+
+    @Test
+    void retrieveMovieById_WhenReviewsMalformed() {
+        var movieId = "1a2b3c4d";
+
+        stubFor(get(urlEqualTo("/v1/movieinfos/" + movieId))
+                .willReturn(aResponse()
+                        .withHeader("Content-type", "application/json")
+                        .withBodyFile("movieinfo.json")));
+        stubFor(get(urlPathEqualTo("/v1/reviews"))
+                .withQueryParam("movieInfoId", equalTo(movieId))
+                .willReturn(aResponse()
+                        .withHeader("Content-type", "application/json")
+                        .withBody("[{\"reviewId\": \"1\", \"rating\": 9.2}")));
+
+        // a truncated array is never spliced into the response
+        webTestClient.get()
+                .uri("/v1/movies/{id}", movieId)
+                .exchange()
+                .expectStatus()
+                .isOk()
+                .expectBody(Movie.class)
+                .value(movie -> {
+                    assertTrue(movie.getReviewList().isEmpty());
+                    assertTrue(movie.isReviewsUnavailable());
+                    assertEquals("Batman Begins", movie.getMovieInfo().getName());
+                });
+    }
+
+    @Test
+    void retrieveMovieById_ReviewsOverCodecLimit() {
+        var movieId = "2e3f4a5b";
+        // well past the 256KB the WebClient codecs buffer by default
+        var reviewsJson = IntStream.range(0, 3000)
+                .mapToObj(i -> "{\"reviewId\": \"" + i + "\", \"movieInfoId\": 1, \"comment\": \""
+                        + "Awesome movie ".repeat(8) + "\", \"rating\": 9.2}")
+                .collect(Collectors.joining(",", "[", "]"));
+        assertTrue(reviewsJson.length() > 256 * 1024);
+
+        stubFor(get(urlEqualTo("/v1/movieinfos/" + movieId))
+                .willReturn(aResponse()
+                        .withHeader("Content-type", "application/json")
+                        .withBodyFile("movieinfo.json")));
+        stubFor(get(urlPathEqualTo("/v1/reviews"))
+                .withQueryParam("movieInfoId", equalTo(movieId))
+                .willReturn(aResponse()
+                        .withHeader("Content-type", "application/json")
+                        .withBody(reviewsJson)));
+
+        webTestClient.mutate()
+                .codecs(configurer -> configurer.defaultCodecs().maxInMemorySize(1024 * 1024))
+                .build()
+                .get()
+                .uri("/v1/movies/{id}", movieId)
+                .exchange()
+                .expectStatus()
+                .isOk()
+                .expectBody(Movie.class)
+                .value(movie -> {
+                    assertEquals(3000, movie.getReviewList().size());
+                    assertFalse(movie.isReviewsUnavailable());
+                });
+    }
+
+    @Test
+    void retrieveMovieById_WhenReviewsTimeout() {
+        var movieId = "1a2b3c";
+
+        stubFor(get(urlEqualTo("/v1/movieinfos/" + movieId))
+                .willReturn(aResponse()
+                        .withHeader("Content-type", "application/json")
+                        .withBodyFile("movieinfo.json")));
+        stubFor(get(urlPathEqualTo("/v1/reviews"))
+                .willReturn(aResponse()
+                        .withHeader("Content-type", "application/json")
+                        .withBodyFile("reviews.json")
+                        .withFixedDelay(6000)));
+
+        webTestClient.mutate()
+                .responseTimeout(Duration.ofSeconds(10))
+                .build()
+                .get()
+                .uri("/v1/movies/{id}", movieId)
+                .exchange()
+                .expectStatus()
+                .isOk()
+                .expectBody(Movie.class)
+                .consumeWith(movieEntityExchangeResult -> {
+                    var movie = movieEntityExchangeResult.getResponseBody();
+                    assert Objects.requireNonNull(movie).getReviewList().isEmpty();
+                    assertTrue(movie.isReviewsUnavailable());
+                    assertEquals("Batman Begins", movie.getMovieInfo().getName());
+                });
+    }
+
+    @Test
+    void streamMovieById() {
+        var movieId = "7";
+
+        stubFor(get(urlEqualTo("/v1/movieinfos/" + movieId))
+                .willReturn(aResponse()
+                        .withHeader("Content-type", "application/json")
+                        .withBodyFile("movieinfo.json")));
+        stubFor(get(urlPathEqualTo("/v1/reviews"))
+                .withQueryParam("movieInfoId", equalTo(movieId))
+                .willReturn(aResponse()
+                        .withHeader("Content-type", "application/json")
+                        .withBodyFile("reviews.json")));
+
+        webTestClient.get()
+                .uri("/v1/movies/{id}?view=stream", movieId)
+                .exchange()
+                .expectStatus()
+                .isOk()
+                .expectHeader()
+                .contentType(MediaType.APPLICATION_JSON)
+                .expectBody(Movie.class)
+                .value(movie -> {
+                    assertEquals("Batman Begins", movie.getMovieInfo().getName());
+                    assertEquals(2, movie.getReviewList().size());
+                    assertFalse(movie.isReviewsUnavailable());
+                });
+    }
+
+    @Test
+    void streamMovieById_WhenMovieInfoNotFound() {
+        var movieId = "8";
+
+        stubFor(get(urlEqualTo("/v1/movieinfos/" + movieId))
+                .willReturn(aResponse()
+                        .withStatus(404)));
+
+        webTestClient.get()
+                .uri("/v1/movies/{id}?view=stream", movieId)
+                .exchange()
+                .expectStatus()
+                .isNotFound();
+
+        verify(0, getRequestedFor(urlPathEqualTo("/v1/reviews"))
+                .withQueryParam("movieInfoId", equalTo(movieId)));
+    }
+
+    @Test
+    void streamMovieInfoEvents_passesLinesThrough() throws Exception {
+        stubFor(get(urlPathEqualTo("/v1/movieinfos/stream"))
+                .withQueryParam("from", equalTo("1"))
+                .willReturn(aResponse()
+                        .withHeader("Content-type", "application/x-ndjson")
+                        .withBodyFile("movieinfo-events.ndjson")));
+        var upstreamBody = new String(new ClassPathResource("__files/movieinfo-events.ndjson")
+                .getInputStream().readAllBytes(), StandardCharsets.UTF_8);
+
+        webTestClient.get()
+                .uri("/v1/movies/stream/events?from={from}", 1)
+                .exchange()
+                .expectStatus()
+                .isOk()
+                .expectHeader()
+                .contentType(MediaType.APPLICATION_NDJSON)
+                .expectBody(String.class)
+                .isEqualTo(upstreamBody);
+    }
+
+    @Test
+    void streamMovieInfoEvents_liveReadersShareTheUpstream() throws Exception {
+        stubFor(get(urlPathEqualTo("/v1/movieinfos/stream"))
+                .withQueryParam("from", absent())
+                .willReturn(aResponse()
+                        .withHeader("Content-type", "application/x-ndjson")
+                        .withBodyFile("movieinfo-events.ndjson")));
+        var upstreamLines = new String(new ClassPathResource("__files/movieinfo-events.ndjson")
+                .getInputStream().readAllBytes(), StandardCharsets.UTF_8).lines()
+                .collect(Collectors.toList());
+
+        var lines = webTestClient.get()
+                .uri("/v1/movies/stream/events")
+                .exchange()
+                .expectStatus()
+                .isOk()
+                .returnResult(String.class)
+                .getResponseBody()
+                .take(upstreamLines.size())
+                .collectList()
+                .block(Duration.ofSeconds(5));
+
+        assertEquals(upstreamLines, lines);
+    }
+
+    @Test
+    void retrieveMovieSummaryById() {
+        var movieId = "5";
+
+        stubFor(get(urlEqualTo("/v1/movieinfos/" + movieId))
+                .willReturn(aResponse()
+                        .withHeader("Content-type", "application/json")
+                        .withBodyFile("movieinfo.json")));
+        stubFor(get(urlPathEqualTo("/v1/reviews/summary/" + movieId))
+                .willReturn(aResponse()
+                        .withHeader("Content-type", "application/json")
+                        .withBodyFile("review-summary.json")));
+
+        webTestClient.get()
+                .uri("/v1/movies/{id}?view=summary&topReviews={top}", movieId, 1)
+                .exchange()
+                .expectStatus()
+                .isOk()
+                .expectBody(MovieSummary.class)
+                .value(movieSummary -> {
+                    assertEquals("Batman Begins", movieSummary.getMovieInfo().getName());
+                    assertEquals(2, movieSummary.getReviewSummary().getCount());
+                    assertEquals(8.6, movieSummary.getReviewSummary().getAverageRating());
+                    assertEquals(1, movieSummary.getReviewSummary().getTopReviews().size());
+                });
+
+        // only the summary is fetched, never the full review list
+        verify(getRequestedFor(urlPathEqualTo("/v1/reviews/summary/" + movieId))
+                .withQueryParam("topReviews", equalTo("1")));
+        verify(0, getRequestedFor(urlPathEqualTo("/v1/reviews"))
+                .withQueryParam("movieInfoId", equalTo(movieId)));
+    }
+
+    @Test
+    void retrieveMovieSummaryById_WhenReviews5XX() {
+        var movieId = "6";
+
+        stubFor(get(urlEqualTo("/v1/movieinfos/" + movieId))
+                .willReturn(aResponse()
+                        .withHeader("Content-type", "application/json")
+                        .withBodyFile("movieinfo.json")));
+        stubFor(get(urlPathEqualTo("/v1/reviews/summary/" + movieId))
+                .willReturn(aResponse()
+                        .withStatus(500)
+                        .withBody("Review Service Not Available")));
+
+        webTestClient.get()
+                .uri("/v1/movies/{id}?view=summary", movieId)
+                .exchange()
+                .expectStatus()
+                .isOk()
+                .expectBody(MovieSummary.class)
+                .value(movieSummary -> {
+                    assertTrue(movieSummary.isReviewsUnavailable());
+                    assertEquals("Batman Begins", movieSummary.getMovieInfo().getName());
+                });
+    }
+
+    @Test
+    void retrieveMovieSummaryById_TooManyTopReviews() {
+        webTestClient.get()
+                .uri("/v1/movies/{id}?view=summary&topReviews={top}", "5", 51)
+                .exchange()
+                .expectStatus()
+                .isBadRequest()
                 .expectBody(String.class)
-                .isEqualTo("Server Exception in ReviewsService Review Service Not Available");
+                .isEqualTo("topReviews must be between 0 and 50, received 51");
+    }
 
-        verify(4, getRequestedFor(urlPathMatching("/v1/reviews")));
+    @Test
+    void retrieveMoviesByIds() {
+        stubFor(post(urlEqualTo("/v1/movieinfos/batch"))
+                .withRequestBody(equalToJson("[\"101\", \"102\", \"103\"]"))
+                .willReturn(aResponse()
+                        .withHeader("Content-type", "application/x-ndjson")
+                        .withBodyFile("movieinfo-batch.ndjson")));
+        stubFor(get(urlPathEqualTo("/v1/reviews/grouped"))
+                .withQueryParam("movieInfoIds", equalTo("101,102,103"))
+                .willReturn(aResponse()
+                        .withHeader("Content-type", "application/json")
+                        .withBodyFile("reviews-grouped.json")));
+
+        webTestClient.get()
+                .uri("/v1/movies?ids={ids}", "101,102,103,101")
+                .accept(MediaType.APPLICATION_NDJSON)
+                .exchange()
+                .expectStatus()
+                .isOk()
+                .expectBodyList(MovieBatchItem.class)
+                .consumeWith(listEntityExchangeResult -> {
+                    var items = listEntityExchangeResult.getResponseBody();
+                    assertEquals(3, Objects.requireNonNull(items).size());
+                    assertEquals("Batman Begins", items.get(0).getMovie().getMovieInfo().getName());
+                    assertEquals(2, items.get(0).getMovie().getReviewList().size());
+                    assertEquals(1, items.get(1).getMovie().getReviewList().size());
+                    // 103 is unknown to movies-info-service, not failed
+                    assertEquals("103", items.get(2).getMovieInfoId());
+                    assertFalse(items.get(2).isFound());
+                    assertFalse(items.get(2).isMovieInfoUnavailable());
+                });
+
+        verify(1, postRequestedFor(urlEqualTo("/v1/movieinfos/batch"))
+                .withRequestBody(equalToJson("[\"101\", \"102\", \"103\"]")));
+        verify(1, getRequestedFor(urlPathEqualTo("/v1/reviews/grouped"))
+                .withQueryParam("movieInfoIds", equalTo("101,102,103")));
+    }
+
+    @Test
+    void retrieveMoviesByIds_WhenMoviesInfo5XX() {
+        stubFor(post(urlEqualTo("/v1/movieinfos/batch"))
+                .withRequestBody(equalToJson("[\"201\", \"202\"]"))
+                .willReturn(aResponse()
+                        .withStatus(500)
+                        .withBody("MovieInfo Service Unavailable")));
+        stubFor(get(urlPathEqualTo("/v1/reviews/grouped"))
+                .withQueryParam("movieInfoIds", equalTo("201,202"))
+                .willReturn(aResponse()
+                        .withHeader("Content-type", "application/json")
+                        .withBody("[]")));
+
+        // the failed ids are reported instead of silently left out
+        webTestClient.get()
+                .uri("/v1/movies?ids={ids}", "201,202")
+                .accept(MediaType.APPLICATION_NDJSON)
+                .exchange()
+                .expectStatus()
+                .isOk()
+                .expectBodyList(MovieBatchItem.class)
+                .value(items -> {
+                    assertEquals(2, items.size());
+                    assertEquals("201", items.get(0).getMovieInfoId());
+                    assertTrue(items.get(0).isMovieInfoUnavailable());
+                    assertFalse(items.get(0).isFound());
+                    assertTrue(items.get(1).isMovieInfoUnavailable());
+                });
+    }
+
+    @Test
+    void retrieveMoviesByIds_TooManyIds() {
+        var ids = IntStream.rangeClosed(1, 101)
+                .mapToObj(String::valueOf)
+                .collect(Collectors.joining(","));
+
+        webTestClient.get()
+                .uri("/v1/movies?ids={ids}", ids)
+                .exchange()
+                .expectStatus()
+                .isBadRequest()
+                .expectBody(String.class)
+                .isEqualTo("At most 100 ids can be requested at once, received 101");
     }
 
 }
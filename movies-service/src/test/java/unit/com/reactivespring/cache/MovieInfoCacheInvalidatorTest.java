@@ -0,0 +1,47 @@
+package com.reactivespring.cache;
+
+import com.reactivespring.client.SharedMovieInfoStream;
+import com.reactivespring.domain.EventType;
+import com.reactivespring.domain.MovieInfo;
+import com.reactivespring.domain.MovieInfoEvent;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+class MovieInfoCacheInvalidatorTest {
+
+    @Test
+    void appliesUpdatesAndDeletes() {
+        var movieInfoCache = new MovieInfoCache(100, Duration.ofMinutes(1), new SimpleMeterRegistry());
+        movieInfoCache.get("1", id -> Mono.just(movieInfo(id, "Batman Begins"))).block();
+        movieInfoCache.get("2", id -> Mono.just(movieInfo(id, "The Dark Knight"))).block();
+
+        var sharedMovieInfoStream = mock(SharedMovieInfoStream.class);
+        when(sharedMovieInfoStream.stream()).thenReturn(Flux.just(
+                new MovieInfoEvent("epoch-1", 1L, EventType.UPDATED, "1", 1L, Instant.now(), movieInfo("1", "Batman Begins Updated")),
+                new MovieInfoEvent("epoch-1", 2L, EventType.DELETED, "2", null, Instant.now(), null)).concatWith(Flux.never()));
+
+        var invalidator = new MovieInfoCacheInvalidator(sharedMovieInfoStream, movieInfoCache);
+        invalidator.subscribe();
+
+        assertEquals("Batman Begins Updated", movieInfoCache.get("1", id -> Mono.empty()).block().getName());
+        assertNull(movieInfoCache.get("2", id -> Mono.empty()).block());
+        invalidator.dispose();
+    }
+
+    private MovieInfo movieInfo(String movieInfoId, String name) {
+        return new MovieInfo(movieInfoId, name, 2005, List.of("Christian Bale"), LocalDate.parse("2005-06-15"));
+    }
+
+}
@@ -0,0 +1,120 @@
+package com.reactivespring.cache;
+
+import com.reactivespring.domain.MovieInfo;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.Sinks;
+import reactor.test.StepVerifier;
+
+import java.time.Duration;
+import java.time.LocalDate;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class MovieInfoCacheTest {
+
+    SimpleMeterRegistry meterRegistry;
+
+    MovieInfoCache movieInfoCache;
+
+    AtomicInteger loads;
+
+    @BeforeEach
+    void setUp() {
+        meterRegistry = new SimpleMeterRegistry();
+        movieInfoCache = new MovieInfoCache(100, Duration.ofMinutes(1), meterRegistry);
+        loads = new AtomicInteger();
+    }
+
+    @Test
+    void get_loadsOnlyOnMiss() {
+        StepVerifier.create(movieInfoCache.get("1", this::load).then(movieInfoCache.get("1", this::load)))
+                .assertNext(movieInfo -> assertEquals("Batman Begins", movieInfo.getName()))
+                .verifyComplete();
+
+        assertEquals(1, loads.get());
+        assertEquals(1.0, meterRegistry.get("cache.gets").tag("cache", "movieInfoCache").tag("result", "hit")
+                .functionCounter().count());
+        assertEquals(1.0, meterRegistry.get("cache.gets").tag("cache", "movieInfoCache").tag("result", "miss")
+                .functionCounter().count());
+    }
+
+    @Test
+    void refresh() {
+        movieInfoCache.get("1", this::load).block();
+
+        movieInfoCache.refresh(movieInfo("1", "Batman Begins Updated"));
+        movieInfoCache.refresh(movieInfo("2", "The Dark Knight"));
+
+        StepVerifier.create(movieInfoCache.get("1", this::load))
+                .assertNext(movieInfo -> assertEquals("Batman Begins Updated", movieInfo.getName()))
+                .verifyComplete();
+        StepVerifier.create(movieInfoCache.get("2", this::load))
+                .assertNext(movieInfo -> assertEquals("Batman Begins", movieInfo.getName()))
+                .verifyComplete();
+        assertEquals(2, loads.get());
+    }
+
+    @Test
+    void evict() {
+        movieInfoCache.get("1", this::load).block();
+
+        movieInfoCache.evict("1");
+        movieInfoCache.get("1", this::load).block();
+
+        assertEquals(2, loads.get());
+    }
+
+    @Test
+    void refreshDuringLoad() {
+        var slowLoad = Sinks.<MovieInfo>one();
+        var loading = movieInfoCache.get("1", movieId -> slowLoad.asMono()).toFuture();
+
+        // the update event arrives before the load it raced with returns the old movie info
+        movieInfoCache.refresh(movieInfo("1", "Batman Begins Updated"));
+        slowLoad.tryEmitValue(movieInfo("1", "Batman Begins"));
+
+        assertEquals("Batman Begins", loading.join().getName());
+        StepVerifier.create(movieInfoCache.get("1", this::load))
+                .assertNext(movieInfo -> assertEquals("Batman Begins Updated", movieInfo.getName()))
+                .verifyComplete();
+        assertEquals(0, loads.get());
+    }
+
+    @Test
+    void evictDuringLoad() {
+        var slowLoad = Sinks.<MovieInfo>one();
+        movieInfoCache.get("1", movieId -> slowLoad.asMono()).subscribe();
+
+        movieInfoCache.evict("1");
+        slowLoad.tryEmitValue(movieInfo("1", "Batman Begins"));
+
+        movieInfoCache.get("1", this::load).block();
+        assertEquals(1, loads.get());
+    }
+
+    @Test
+    void emptyLoadIsNotCached() {
+        StepVerifier.create(movieInfoCache.get("1", movieId -> Mono.empty()))
+                .verifyComplete();
+
+        movieInfoCache.get("1", this::load).block();
+        assertEquals(1, loads.get());
+    }
+
+    private Mono<MovieInfo> load(String movieId) {
+        return Mono.fromSupplier(() -> {
+            loads.incrementAndGet();
+            return movieInfo(movieId, "Batman Begins");
+        });
+    }
+
+    private MovieInfo movieInfo(String movieId, String name) {
+        return new MovieInfo(movieId, name, 2005, List.of("Christian Bale"), LocalDate.parse("2005-06-15"));
+    }
+
+}
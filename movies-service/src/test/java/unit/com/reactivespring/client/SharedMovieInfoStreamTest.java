@@ -0,0 +1,200 @@
+package com.reactivespring.client;
+
+import com.reactivespring.domain.EventType;
+import com.reactivespring.domain.MovieInfo;
+import com.reactivespring.domain.MovieInfoEvent;
+import com.reactivespring.exception.MoviesInfoClientException;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import reactor.core.publisher.BufferOverflowStrategy;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.Sinks;
+import reactor.test.StepVerifier;
+
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+class SharedMovieInfoStreamTest {
+
+    MoviesInfoRestClient moviesInfoRestClient;
+
+    SimpleMeterRegistry meterRegistry;
+
+    AtomicInteger connects;
+
+    AtomicInteger disconnects;
+
+    Sinks.Many<MovieInfoEvent> upstream;
+
+    @BeforeEach
+    void setUp() {
+        moviesInfoRestClient = mock(MoviesInfoRestClient.class);
+        meterRegistry = new SimpleMeterRegistry();
+        connects = new AtomicInteger();
+        disconnects = new AtomicInteger();
+        upstream = Sinks.many().multicast().directBestEffort();
+        when(moviesInfoRestClient.retrieveMovieInfoStream(any(), any())).thenAnswer(invocation -> upstream.asFlux()
+                .doOnSubscribe(subscription -> connects.incrementAndGet())
+                .doOnCancel(disconnects::incrementAndGet));
+    }
+
+    @Test
+    void subscribersShareOneUpstream() {
+        var sharedStream = sharedStream(16, BufferOverflowStrategy.DROP_OLDEST);
+
+        var first = sharedStream.stream().take(1).collectList().toFuture();
+        var second = sharedStream.stream().take(1).collectList().toFuture();
+        upstream.tryEmitNext(movieInfo("1"));
+
+        assertEquals("1", first.join().get(0).getMovieInfoId());
+        assertEquals("1", second.join().get(0).getMovieInfoId());
+        assertEquals(1, connects.get());
+    }
+
+    @Test
+    void disconnectsWithoutSubscribers() {
+        var sharedStream = sharedStream(16, BufferOverflowStrategy.DROP_OLDEST);
+
+        var subscription = sharedStream.stream().subscribe();
+        assertEquals(1, connects.get());
+        subscription.dispose();
+
+        assertEquals(0, disconnects.get());
+
+        // the upstream is kept for the grace period, then disconnected
+        Mono.delay(Duration.ofMillis(100)).block();
+        assertEquals(1, disconnects.get());
+    }
+
+    @Test
+    void reconnectsWhenUpstreamFails() {
+        var sharedStream = sharedStream(16, BufferOverflowStrategy.DROP_OLDEST);
+        var failing = new AtomicInteger();
+        when(moviesInfoRestClient.retrieveMovieInfoStream(any(), any())).thenAnswer(invocation -> failing.incrementAndGet() == 1
+                ? Flux.error(new RuntimeException("connection reset"))
+                : Flux.just(movieInfo("2")).concatWith(Flux.never()));
+
+        StepVerifier.create(sharedStream.stream().take(1))
+                .assertNext(movieInfo -> assertEquals("2", movieInfo.getMovieInfoId()))
+                .expectComplete()
+                .verify(Duration.ofSeconds(1));
+        assertEquals(2, failing.get());
+    }
+
+    @Test
+    void reconnectResumesAfterLastSequence() {
+        var sharedStream = sharedStream(16, BufferOverflowStrategy.DROP_OLDEST);
+        var froms = new ArrayList<Long>();
+        when(moviesInfoRestClient.retrieveMovieInfoStream(any(), any())).thenAnswer(invocation -> {
+            froms.add(invocation.getArgument(1));
+            return froms.size() == 1
+                    ? Flux.just(movieInfo("1"), movieInfo("2")).concatWith(Flux.error(new RuntimeException("connection reset")))
+                    // a retry inside the client can send events already seen again
+                    : Flux.just(movieInfo("2"), movieInfo("3")).concatWith(Flux.never());
+        });
+
+        StepVerifier.create(sharedStream.stream().map(MovieInfoEvent::getMovieInfoId).take(3))
+                .expectNext("1", "2", "3")
+                .expectComplete()
+                .verify(Duration.ofSeconds(1));
+        assertEquals(Arrays.asList(null, 3L), froms);
+    }
+
+    @Test
+    void restartedUpstreamStartsANewEpoch() {
+        var sharedStream = sharedStream(16, BufferOverflowStrategy.DROP_OLDEST);
+        var resumes = new ArrayList<String>();
+        when(moviesInfoRestClient.retrieveMovieInfoStream(any(), any())).thenAnswer(invocation -> {
+            resumes.add(invocation.getArgument(0) + ":" + invocation.getArgument(1));
+            return resumes.size() == 1
+                    ? Flux.just(movieInfo("epoch-1", 7, "7"), movieInfo("epoch-1", 8, "8"))
+                            .concatWith(Flux.error(new RuntimeException("connection reset")))
+                    // the restarted instance numbers its events from 1 again
+                    : Flux.just(movieInfo("epoch-2", 1, "1"), movieInfo("epoch-2", 2, "2")).concatWith(Flux.never());
+        });
+
+        StepVerifier.create(sharedStream.stream().map(MovieInfoEvent::getMovieInfoId).take(4))
+                .expectNext("7", "8", "1", "2")
+                .expectComplete()
+                .verify(Duration.ofSeconds(1));
+        assertEquals(List.of("null:null", "epoch-1:9"), resumes);
+    }
+
+    @Test
+    void resumesFromOldestWhenEventsAreGone() {
+        var sharedStream = sharedStream(16, BufferOverflowStrategy.DROP_OLDEST);
+        var froms = new ArrayList<Long>();
+        when(moviesInfoRestClient.retrieveMovieInfoStream(any(), any())).thenAnswer(invocation -> {
+            froms.add(invocation.getArgument(1));
+            switch (froms.size()) {
+                case 1:
+                    return Flux.just(movieInfo("1")).concatWith(Flux.error(new RuntimeException("connection reset")));
+                case 2:
+                    return Flux.error(new MoviesInfoClientException("Events before sequence 5 are no longer retained", 410));
+                default:
+                    return Flux.just(movieInfo("5"), movieInfo("6")).concatWith(Flux.never());
+            }
+        });
+
+        StepVerifier.create(sharedStream.stream().map(MovieInfoEvent::getMovieInfoId).take(3))
+                .expectNext("1", "5", "6")
+                .expectComplete()
+                .verify(Duration.ofSeconds(1));
+        assertEquals(Arrays.asList(null, 2L, null), froms);
+    }
+
+    @Test
+    void linesAreForwardedAsReceived() {
+        var sharedStream = sharedStream(16, BufferOverflowStrategy.DROP_OLDEST);
+        var event = movieInfo("1");
+        event.setLine("{\"epoch\":\"epoch-1\",\"sequence\":1}");
+
+        StepVerifier.create(sharedStream.lines().map(buffer -> buffer.toString(StandardCharsets.UTF_8)).take(1))
+                .then(() -> upstream.tryEmitNext(event))
+                .expectNext("{\"epoch\":\"epoch-1\",\"sequence\":1}\n")
+                .expectComplete()
+                .verify(Duration.ofSeconds(1));
+    }
+
+    @Test
+    void slowSubscriberDropsOnOverflow() {
+        var sharedStream = sharedStream(2, BufferOverflowStrategy.DROP_OLDEST);
+
+        StepVerifier.create(sharedStream.stream(), 0)
+                .then(() -> List.of("1", "2", "3", "4", "5").forEach(id -> upstream.tryEmitNext(movieInfo(id))))
+                .thenRequest(2)
+                .assertNext(movieInfo -> assertEquals("4", movieInfo.getMovieInfoId()))
+                .assertNext(movieInfo -> assertEquals("5", movieInfo.getMovieInfoId()))
+                .thenCancel()
+                .verify();
+        assertEquals(3.0, meterRegistry.get("movies.stream.dropped").counter().count());
+    }
+
+    private SharedMovieInfoStream sharedStream(int bufferSize, BufferOverflowStrategy overflowStrategy) {
+        return new SharedMovieInfoStream(moviesInfoRestClient, bufferSize, overflowStrategy,
+                Duration.ofMillis(10), Duration.ofMillis(50), Duration.ofMillis(10), meterRegistry);
+    }
+
+    private MovieInfoEvent movieInfo(String movieInfoId) {
+        return movieInfo("epoch-1", Long.parseLong(movieInfoId), movieInfoId);
+    }
+
+    private MovieInfoEvent movieInfo(String epoch, long sequence, String movieInfoId) {
+        var movieInfo = new MovieInfo(movieInfoId, "Batman Begins", 2005, List.of("Christian Bale"), LocalDate.parse("2005-06-15"));
+        return new MovieInfoEvent(epoch, sequence, EventType.UPDATED, movieInfoId, 1L, Instant.now(), movieInfo);
+    }
+
+}
@@ -0,0 +1,166 @@
+package com.reactivespring.json;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.reactivespring.domain.Movie;
+import com.reactivespring.domain.MovieInfo;
+import com.reactivespring.domain.Review;
+import com.reactivespring.exception.ReviewsServerException;
+import io.netty.buffer.Unpooled;
+import io.netty.buffer.UnpooledByteBufAllocator;
+import org.junit.jupiter.api.Test;
+import org.springframework.core.codec.DecodingException;
+import org.springframework.core.io.buffer.DataBuffer;
+import org.springframework.core.io.buffer.DataBufferLimitException;
+import org.springframework.core.io.buffer.DataBufferUtils;
+import org.springframework.core.io.buffer.DefaultDataBufferFactory;
+import org.springframework.core.io.buffer.NettyDataBufferFactory;
+import org.springframework.http.converter.json.Jackson2ObjectMapperBuilder;
+import reactor.core.publisher.Flux;
+import reactor.test.StepVerifier;
+
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDate;
+import java.util.List;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class MovieJsonWriterTest {
+
+    ObjectMapper objectMapper = Jackson2ObjectMapperBuilder.json().build();
+
+    MovieJsonWriter movieJsonWriter = new MovieJsonWriter(objectMapper);
+
+    MovieInfo movieInfo = new MovieInfo("1", "Batman Begins", 2005, List.of("Christian Bale"), LocalDate.parse("2005-06-15"));
+
+    @Test
+    void write_oneChunkPerReview() throws Exception {
+        var reviews = Flux.just(new Review("1", 1L, "Awesome movie", 9.2), new Review("2", 1L, "Almost awesome movie", 8.0));
+
+        var chunks = movieJsonWriter.write(movieInfo, reviews)
+                .map(this::asString)
+                .collectList()
+                .block();
+
+        assertEquals(4, chunks.size());
+        assertTrue(chunks.get(2).startsWith(","));
+        var movie = objectMapper.readValue(String.join("", chunks), Movie.class);
+        assertEquals(movieInfo, movie.getMovieInfo());
+        assertEquals(2, movie.getReviewList().size());
+        assertFalse(movie.isReviewsUnavailable());
+    }
+
+    @Test
+    void write_noReviews() throws Exception {
+        var json = movieJsonWriter.write(movieInfo, Flux.empty())
+                .map(this::asString)
+                .collect(Collectors.joining())
+                .block();
+
+        var movie = objectMapper.readValue(json, Movie.class);
+        assertTrue(movie.getReviewList().isEmpty());
+        assertFalse(movie.isReviewsUnavailable());
+    }
+
+    @Test
+    void write_reviewsFailingMidway() throws Exception {
+        var reviews = Flux.just(new Review("1", 1L, "Awesome movie", 9.2))
+                .concatWith(Flux.error(new ReviewsServerException("Server Exception in ReviewsService")));
+
+        var json = movieJsonWriter.write(movieInfo, reviews)
+                .map(this::asString)
+                .collect(Collectors.joining())
+                .block();
+
+        // the document stays well-formed and says it is partial
+        var movie = objectMapper.readValue(json, Movie.class);
+        assertEquals(1, movie.getReviewList().size());
+        assertTrue(movie.isReviewsUnavailable());
+    }
+
+    @Test
+    void write_splicesReviewsAsReceived() throws Exception {
+        var reviewsJson = "[{\"reviewId\":\"1\",\"movieInfoId\":1,\"comment\":\"Awesome movie\",\"rating\":9.2,\"version\":3}]";
+
+        var json = asString(movieJsonWriter.write(movieInfo, reviewsJson.getBytes(StandardCharsets.UTF_8)));
+
+        assertTrue(json.contains("\"reviewList\":" + reviewsJson + ","));
+        var movie = objectMapper.readValue(json, Movie.class);
+        assertEquals(movieInfo, movie.getMovieInfo());
+        assertEquals(9.2, movie.getReviewList().get(0).getRating());
+        assertFalse(movie.isReviewsUnavailable());
+    }
+
+    @Test
+    void write_reviewsUnavailable() throws Exception {
+        var movie = objectMapper.readValue(asString(movieJsonWriter.write(movieInfo, (byte[]) null)), Movie.class);
+
+        assertTrue(movie.getReviewList().isEmpty());
+        assertTrue(movie.isReviewsUnavailable());
+    }
+
+    @Test
+    void joinJsonArray() {
+        // chunks split inside a string and a number
+        var joined = movieJsonWriter.joinJsonArray(chunks("[{\"comment\": \"Awe", "some\", \"rating\": 9", ".2}, 2]\n"), 1024)
+                .block();
+
+        assertEquals("[{\"comment\": \"Awesome\", \"rating\": 9.2}, 2]\n", new String(joined, StandardCharsets.UTF_8));
+        assertEquals("[]", new String(movieJsonWriter.joinJsonArray(chunks("[", "]"), 1024).block(), StandardCharsets.UTF_8));
+        assertNull(movieJsonWriter.joinJsonArray(Flux.empty(), 1024).block());
+        assertNull(movieJsonWriter.joinJsonArray(chunks(""), 1024).block());
+    }
+
+    @Test
+    void joinJsonArray_malformed() {
+        List.of(List.of("{\"reviewList\": ", "[]}"), List.of("[{\"a\": ", "1}"), List.of("[1, 2]", "] ,{"),
+                        List.of("[1] ", "[2]"), List.of("[{\"a\": tru}]"))
+                .forEach(json -> StepVerifier.create(movieJsonWriter.joinJsonArray(chunks(json.toArray(String[]::new)), 1024))
+                        .expectError(DecodingException.class)
+                        .verify());
+    }
+
+    @Test
+    void joinJsonArray_releasesTheBuffers() {
+        var bufferFactory = new NettyDataBufferFactory(UnpooledByteBufAllocator.DEFAULT);
+        var valid = List.of(bufferFactory.wrap(Unpooled.wrappedBuffer(bytes("[1, "))),
+                bufferFactory.wrap(Unpooled.wrappedBuffer(bytes("2]"))));
+        var malformed = List.of(bufferFactory.wrap(Unpooled.wrappedBuffer(bytes("[1] "))),
+                bufferFactory.wrap(Unpooled.wrappedBuffer(bytes("[2]"))));
+
+        StepVerifier.create(movieJsonWriter.joinJsonArray(Flux.fromIterable(valid), 1024))
+                .expectNextCount(1)
+                .verifyComplete();
+        StepVerifier.create(movieJsonWriter.joinJsonArray(Flux.fromIterable(malformed), 1024))
+                .expectError(DecodingException.class)
+                .verify();
+
+        valid.forEach(buffer -> assertEquals(0, buffer.getNativeBuffer().refCnt()));
+        malformed.forEach(buffer -> assertEquals(0, buffer.getNativeBuffer().refCnt()));
+    }
+
+    @Test
+    void joinJsonArray_overLimit() {
+        StepVerifier.create(movieJsonWriter.joinJsonArray(chunks("[1, 2, ", "3, 4]"), 8))
+                .expectError(DataBufferLimitException.class)
+                .verify();
+    }
+
+    private Flux<DataBuffer> chunks(String... json) {
+        return Flux.fromArray(json).map(chunk -> DefaultDataBufferFactory.sharedInstance.wrap(bytes(chunk)));
+    }
+
+    private byte[] bytes(String json) {
+        return json.getBytes(StandardCharsets.UTF_8);
+    }
+
+    private String asString(DataBuffer buffer) {
+        var json = buffer.toString(StandardCharsets.UTF_8);
+        DataBufferUtils.release(buffer);
+        return json;
+    }
+
+}
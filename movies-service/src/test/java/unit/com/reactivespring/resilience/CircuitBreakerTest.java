@@ -0,0 +1,129 @@
+package com.reactivespring.resilience;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.ZoneId;
+import java.time.ZoneOffset;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class CircuitBreakerTest {
+
+    SimpleMeterRegistry meterRegistry;
+
+    MutableClock clock;
+
+    CircuitBreaker circuitBreaker;
+
+    @BeforeEach
+    void setUp() {
+        var policy = new ResilienceProperties.Policy();
+        policy.setSlidingWindowSize(4);
+        policy.setMinimumCalls(4);
+        policy.setFailureRateThreshold(0.5);
+        policy.setOpenDuration(Duration.ofSeconds(10));
+        policy.setPermittedCallsInHalfOpen(1);
+
+        meterRegistry = new SimpleMeterRegistry();
+        clock = new MutableClock();
+        circuitBreaker = new CircuitBreaker("movies-info", policy, meterRegistry, clock);
+    }
+
+    @Test
+    void opensWhenFailureRateReachesThreshold() {
+        circuitBreaker.onSuccess();
+        circuitBreaker.onError();
+        circuitBreaker.onSuccess();
+        assertEquals(CircuitBreaker.State.CLOSED, circuitBreaker.getState());
+
+        circuitBreaker.onError();
+
+        assertEquals(CircuitBreaker.State.OPEN, circuitBreaker.getState());
+        assertFalse(circuitBreaker.tryAcquirePermission());
+        assertEquals(1.0, meterRegistry.get("resilience.circuitbreaker.rejected").counter().count());
+        assertEquals(1.0, meterRegistry.get("resilience.circuitbreaker.state").gauge().value());
+    }
+
+    @Test
+    void slidingWindowForgetsOldFailures() {
+        circuitBreaker.onError();
+        circuitBreaker.onSuccess();
+        circuitBreaker.onSuccess();
+        circuitBreaker.onSuccess();
+        circuitBreaker.onSuccess();
+        circuitBreaker.onError();
+
+        assertEquals(CircuitBreaker.State.CLOSED, circuitBreaker.getState());
+    }
+
+    @Test
+    void halfOpenTrialClosesOrReopens() {
+        open();
+        clock.advance(Duration.ofSeconds(10));
+
+        assertTrue(circuitBreaker.tryAcquirePermission());
+        assertEquals(CircuitBreaker.State.HALF_OPEN, circuitBreaker.getState());
+        assertFalse(circuitBreaker.tryAcquirePermission());
+
+        circuitBreaker.onError();
+        assertEquals(CircuitBreaker.State.OPEN, circuitBreaker.getState());
+
+        clock.advance(Duration.ofSeconds(10));
+        assertTrue(circuitBreaker.tryAcquirePermission());
+        circuitBreaker.onSuccess();
+        assertEquals(CircuitBreaker.State.CLOSED, circuitBreaker.getState());
+        assertEquals(1.0, meterRegistry.get("resilience.circuitbreaker.transitions")
+                .tag("from", "HALF_OPEN").tag("to", "CLOSED").counter().count());
+    }
+
+    @Test
+    void cancelledHalfOpenTrialReleasesPermission() {
+        open();
+        clock.advance(Duration.ofSeconds(10));
+
+        assertTrue(circuitBreaker.tryAcquirePermission());
+        circuitBreaker.releasePermission();
+
+        assertTrue(circuitBreaker.tryAcquirePermission());
+    }
+
+    private void open() {
+        for (int i = 0; i < 4; i++) {
+            circuitBreaker.onError();
+        }
+        assertEquals(CircuitBreaker.State.OPEN, circuitBreaker.getState());
+    }
+
+    static class MutableClock extends Clock {
+
+        private Instant instant = Instant.parse("2021-08-01T10:00:00Z");
+
+        void advance(Duration duration) {
+            instant = instant.plus(duration);
+        }
+
+        @Override
+        public ZoneId getZone() {
+            return ZoneOffset.UTC;
+        }
+
+        @Override
+        public Clock withZone(ZoneId zone) {
+            return this;
+        }
+
+        @Override
+        public Instant instant() {
+            return instant;
+        }
+
+    }
+
+}
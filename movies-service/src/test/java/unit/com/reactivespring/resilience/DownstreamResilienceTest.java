@@ -0,0 +1,159 @@
+package com.reactivespring.resilience;
+
+import com.reactivespring.exception.MoviesInfoClientException;
+import com.reactivespring.exception.MoviesInfoServerException;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.test.StepVerifier;
+
+import java.time.Duration;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class DownstreamResilienceTest {
+
+    ResilienceProperties.Policy policy;
+
+    SimpleMeterRegistry meterRegistry;
+
+    AtomicInteger attempts;
+
+    @BeforeEach
+    void setUp() {
+        policy = new ResilienceProperties.Policy();
+        policy.setMinBackoff(Duration.ofMillis(1));
+        policy.setMaxBackoff(Duration.ofMillis(5));
+        meterRegistry = new SimpleMeterRegistry();
+        attempts = new AtomicInteger();
+    }
+
+    @Test
+    void retriesServerErrors() {
+        var resilience = resilience();
+
+        StepVerifier.create(resilience.decorate(failingCall(new MoviesInfoServerException("Server Exception"))))
+                .expectErrorMessage("Server Exception")
+                .verify();
+
+        assertEquals(4, attempts.get());
+        assertEquals(3.0, meterRegistry.get("resilience.retry.attempts").counter().count());
+        // the final failure is not retried and takes no token
+        assertEquals(7.0, meterRegistry.get("resilience.retry.budget.tokens").gauge().value());
+        assertEquals(0.0, meterRegistry.get("resilience.retry.budget.rejected").counter().count());
+    }
+
+    @Test
+    void retriedCallCountsOnceInTheBreaker() {
+        policy.setMinimumCalls(2);
+        policy.setSlidingWindowSize(2);
+        var resilience = resilience();
+
+        StepVerifier.create(resilience.decorate(failingCall(new MoviesInfoServerException("Server Exception"))))
+                .expectError(MoviesInfoServerException.class)
+                .verify();
+
+        assertEquals(4, attempts.get());
+        assertEquals(CircuitBreaker.State.CLOSED, resilience.getCircuitBreaker().getState());
+    }
+
+    @Test
+    void doesNotRetryClientErrors() {
+        var resilience = resilience();
+
+        StepVerifier.create(resilience.decorate(failingCall(new MoviesInfoClientException("Not Found", 404))))
+                .expectError(MoviesInfoClientException.class)
+                .verify();
+
+        assertEquals(1, attempts.get());
+        assertEquals(CircuitBreaker.State.CLOSED, resilience.getCircuitBreaker().getState());
+    }
+
+    @Test
+    void retryBudgetCapsRetries() {
+        policy.setRetryBudgetMaxTokens(2);
+        policy.setRetryBudgetRatio(0);
+        var resilience = resilience();
+
+        StepVerifier.create(resilience.decorate(failingCall(new MoviesInfoServerException("Server Exception"))))
+                .expectError(MoviesInfoServerException.class)
+                .verify();
+
+        assertEquals(3, attempts.get());
+        assertEquals(2.0, meterRegistry.get("resilience.retry.attempts").counter().count());
+        assertEquals(1.0, meterRegistry.get("resilience.retry.budget.rejected").counter().count());
+    }
+
+    @Test
+    void failsFastWhileOpen() {
+        policy.setMaxRetries(0);
+        policy.setMinimumCalls(2);
+        policy.setSlidingWindowSize(2);
+        var resilience = resilience();
+
+        for (int i = 0; i < 2; i++) {
+            StepVerifier.create(resilience.decorate(failingCall(new MoviesInfoServerException("Server Exception"))))
+                    .expectError()
+                    .verify();
+        }
+
+        StepVerifier.create(resilience.decorate(failingCall(new MoviesInfoServerException("Server Exception"))))
+                .expectErrorMessage("circuit breaker is open")
+                .verify();
+        assertEquals(2, attempts.get());
+    }
+
+    @Test
+    void slowCallsOpenTheBreaker() {
+        policy.setTimeout(Duration.ofMillis(20));
+        policy.setMinimumCalls(2);
+        policy.setSlidingWindowSize(2);
+        var resilience = resilience();
+
+        for (int i = 0; i < 2; i++) {
+            StepVerifier.create(resilience.decorate(Mono.never()))
+                    .expectErrorMessage("did not respond within 20ms")
+                    .verify();
+        }
+
+        assertEquals(CircuitBreaker.State.OPEN, resilience.getCircuitBreaker().getState());
+    }
+
+    @Test
+    void deadlineBoundsTheWholeFlux() {
+        policy.setTimeout(Duration.ofMillis(50));
+        var resilience = resilience();
+
+        // every element arrives well within the deadline, the Flux as a whole does not
+        StepVerifier.create(resilience.decorate(Flux.interval(Duration.ofMillis(10))))
+                .thenConsumeWhile(element -> true)
+                .expectErrorMessage("did not respond within 50ms")
+                .verify(Duration.ofSeconds(1));
+    }
+
+    @Test
+    void streamsHaveNoDeadline() {
+        policy.setTimeout(Duration.ofMillis(10));
+        var resilience = resilience();
+
+        StepVerifier.create(resilience.decorateStream(Flux.interval(Duration.ofMillis(10)).take(5)))
+                .expectNextCount(5)
+                .verifyComplete();
+    }
+
+    private DownstreamResilience resilience() {
+        return new DownstreamResilience("movies-info", policy, meterRegistry,
+                MoviesInfoServerException::new);
+    }
+
+    private Mono<String> failingCall(RuntimeException ex) {
+        return Mono.defer(() -> {
+            attempts.incrementAndGet();
+            return Mono.error(ex);
+        });
+    }
+
+}
@@ -0,0 +1,177 @@
+package com.reactivespring.resilience;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import reactor.core.publisher.Mono;
+import reactor.test.StepVerifier;
+
+import java.time.Duration;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class HedgedRequestsTest {
+
+    ResilienceProperties.Hedging hedging;
+
+    SimpleMeterRegistry meterRegistry;
+
+    AtomicInteger attempts;
+
+    @BeforeEach
+    void setUp() {
+        hedging = new ResilienceProperties.Hedging();
+        hedging.setEnabled(true);
+        hedging.setMinDelay(Duration.ofMillis(20));
+        hedging.setMaxDelay(Duration.ofMillis(20));
+        meterRegistry = new SimpleMeterRegistry();
+        attempts = new AtomicInteger();
+    }
+
+    @Test
+    void hedgeWinsOverSlowFirstAttempt() {
+        var hedgedRequests = new HedgedRequests("movies-info", hedging, meterRegistry);
+
+        StepVerifier.create(hedgedRequests.hedge(this::slowFirstAttempt))
+                .expectNext("attempt-2")
+                .expectComplete()
+                .verify(Duration.ofSeconds(1));
+
+        assertEquals(2, attempts.get());
+        assertEquals(1.0, meterRegistry.get("resilience.hedge.attempts").counter().count());
+        assertEquals(1.0, meterRegistry.get("resilience.hedge.wins").counter().count());
+    }
+
+    @Test
+    void fastFirstAttemptIsNotHedged() {
+        var hedgedRequests = new HedgedRequests("movies-info", hedging, meterRegistry);
+
+        StepVerifier.create(hedgedRequests.hedge(() -> Mono.fromSupplier(() -> "attempt-" + attempts.incrementAndGet())))
+                .expectNext("attempt-1")
+                .verifyComplete();
+
+        assertEquals(1, attempts.get());
+    }
+
+    @Test
+    void failingHedgeDoesNotCancelFirstAttempt() {
+        var hedgedRequests = new HedgedRequests("movies-info", hedging, meterRegistry);
+
+        StepVerifier.create(hedgedRequests.hedge(() -> Mono.defer(() -> attempts.incrementAndGet() == 1
+                        ? Mono.just("attempt-1").delayElement(Duration.ofMillis(100))
+                        : Mono.error(new IllegalStateException("attempt-2")))))
+                .expectNext("attempt-1")
+                .expectComplete()
+                .verify(Duration.ofSeconds(1));
+
+        assertEquals(2, attempts.get());
+        assertEquals(0.0, meterRegistry.get("resilience.hedge.wins").counter().count());
+    }
+
+    @Test
+    void bothFailingReturnsFirstAttemptError() {
+        var hedgedRequests = new HedgedRequests("movies-info", hedging, meterRegistry);
+
+        StepVerifier.create(hedgedRequests.hedge(() -> Mono.defer(() -> {
+                    var attempt = attempts.incrementAndGet();
+                    var error = Mono.<String>error(new IllegalStateException("attempt-" + attempt));
+                    return attempt == 1 ? error.delaySubscription(Duration.ofMillis(100)) : error;
+                })))
+                .expectErrorMatches(ex -> ex instanceof IllegalStateException && "attempt-1".equals(ex.getMessage()))
+                .verify(Duration.ofSeconds(1));
+
+        assertEquals(2, attempts.get());
+    }
+
+    @Test
+    void failedFirstAttemptIsNotHedged() {
+        hedging.setMinDelay(Duration.ofMillis(200));
+        hedging.setMaxDelay(Duration.ofMillis(200));
+        var hedgedRequests = new HedgedRequests("movies-info", hedging, meterRegistry);
+
+        StepVerifier.create(hedgedRequests.hedge(() -> Mono.defer(() -> {
+                    attempts.incrementAndGet();
+                    return Mono.<String>error(new IllegalStateException("attempt-1"));
+                })))
+                .expectErrorMessage("attempt-1")
+                .verify(Duration.ofMillis(100));
+
+        assertEquals(1, attempts.get());
+    }
+
+    @Test
+    void budgetCapsHedges() {
+        hedging.setBudgetMaxTokens(0);
+        hedging.setBudgetRatio(0);
+        var hedgedRequests = new HedgedRequests("movies-info", hedging, meterRegistry);
+
+        StepVerifier.create(hedgedRequests.hedge(this::slowFirstAttempt))
+                .expectNext("attempt-1")
+                .verifyComplete();
+
+        assertEquals(1, attempts.get());
+        assertEquals(1.0, meterRegistry.get("resilience.hedge.budget.rejected").counter().count());
+    }
+
+    @Test
+    void disabledPassesThrough() {
+        hedging.setEnabled(false);
+        var hedgedRequests = new HedgedRequests("movies-info", hedging, meterRegistry);
+
+        StepVerifier.create(hedgedRequests.hedge(this::slowFirstAttempt))
+                .expectNext("attempt-1")
+                .verifyComplete();
+
+        assertEquals(1, attempts.get());
+    }
+
+    @Test
+    void hedgeDelayFollowsPercentile() {
+        hedging.setMinimumSamples(10);
+        hedging.setPercentile(0.9);
+        hedging.setMinDelay(Duration.ofMillis(1));
+        hedging.setMaxDelay(Duration.ofSeconds(1));
+        var hedgedRequests = new HedgedRequests("movies-info", hedging, meterRegistry);
+        assertEquals(Duration.ofSeconds(1), hedgedRequests.hedgeDelay());
+
+        for (int i = 0; i < 10; i++) {
+            hedgedRequests.hedge(() -> Mono.just("value")).block();
+        }
+
+        assertTrue(hedgedRequests.hedgeDelay().compareTo(Duration.ofMillis(1)) >= 0);
+        assertTrue(hedgedRequests.hedgeDelay().compareTo(Duration.ofMillis(100)) < 0);
+    }
+
+    @Test
+    void cancelledHedgeIsNotRecorded() {
+        // the delay follows the last latency alone
+        hedging.setLatencyWindowSize(1);
+        hedging.setMinimumSamples(1);
+        hedging.setMaxDelay(Duration.ofSeconds(1));
+        var hedgedRequests = new HedgedRequests("movies-info", hedging, meterRegistry);
+        hedgedRequests.hedge(() -> Mono.just("value")).block();
+        assertEquals(Duration.ofMillis(20), hedgedRequests.hedgeDelay());
+
+        // the first attempt wins after 100ms, the hedge sent at 20ms is cancelled after running about 80ms
+        StepVerifier.create(hedgedRequests.hedge(() -> Mono.defer(() -> attempts.incrementAndGet() == 1
+                        ? Mono.just("attempt-1").delayElement(Duration.ofMillis(100))
+                        : Mono.just("attempt-2").delayElement(Duration.ofMillis(300)))))
+                .expectNext("attempt-1")
+                .expectComplete()
+                .verify(Duration.ofSeconds(1));
+
+        assertEquals(2, attempts.get());
+        assertTrue(hedgedRequests.hedgeDelay().compareTo(Duration.ofMillis(100)) >= 0);
+    }
+
+    private Mono<String> slowFirstAttempt() {
+        return Mono.defer(() -> {
+            var attempt = attempts.incrementAndGet();
+            var value = Mono.just("attempt-" + attempt);
+            return attempt == 1 ? value.delayElement(Duration.ofMillis(300)) : value;
+        });
+    }
+
+}
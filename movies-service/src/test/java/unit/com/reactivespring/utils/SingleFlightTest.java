@@ -0,0 +1,67 @@
+package com.reactivespring.utils;
+
+import org.junit.jupiter.api.Test;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.Sinks;
+import reactor.test.StepVerifier;
+
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+
+class SingleFlightTest {
+
+    SingleFlight<String, String> singleFlight = new SingleFlight<>();
+
+    AtomicInteger calls = new AtomicInteger();
+
+    @Test
+    void execute_sharesInFlightCall() {
+        var result = Sinks.<String>one();
+
+        var first = singleFlight.execute("1", () -> call(result.asMono())).toFuture();
+        var second = singleFlight.execute("1", () -> call(result.asMono())).toFuture();
+        result.tryEmitValue("movie");
+
+        assertEquals("movie", first.join());
+        assertEquals("movie", second.join());
+        assertEquals(1, calls.get());
+        assertEquals(0, singleFlight.inFlight());
+    }
+
+    @Test
+    void execute_releasesKeyAfterError() {
+        StepVerifier.create(singleFlight.execute("1", () -> call(Mono.error(new RuntimeException("boom")))))
+                .expectErrorMessage("boom")
+                .verify();
+
+        StepVerifier.create(singleFlight.execute("1", () -> call(Mono.just("movie"))))
+                .expectNext("movie")
+                .verifyComplete();
+        assertEquals(2, calls.get());
+    }
+
+    @Test
+    void execute_cancelledSubscriberDoesNotCancelSharedCall() {
+        var result = Sinks.<String>one();
+        var cancelled = new AtomicBoolean();
+        var source = result.asMono().doOnCancel(() -> cancelled.set(true));
+
+        var first = singleFlight.execute("1", () -> call(source)).subscribe();
+        var second = singleFlight.execute("1", () -> call(source)).toFuture();
+        first.dispose();
+        result.tryEmitValue("movie");
+
+        assertEquals("movie", second.join());
+        assertFalse(cancelled.get());
+        assertEquals(1, calls.get());
+    }
+
+    private Mono<String> call(Mono<String> source) {
+        calls.incrementAndGet();
+        return source;
+    }
+
+}